@@ -0,0 +1,113 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * State of the files of a directory as it was when we crawled it for the last time.
+ * Files are indexed by their name. Sub directories are stored with their full path.
+ * The modification date of the directory is only known when all its files have been processed.
+ */
+public class DirectoryState {
+
+    private String path;
+    private Map<String, FileState> files;
+    private Set<String> directories;
+    private LocalDateTime lastModified;
+
+    public DirectoryState() {
+        this.files = new HashMap<>();
+        this.directories = new HashSet<>();
+    }
+
+    public DirectoryState(String path, Map<String, FileState> files, Set<String> directories) {
+        this(path, files, directories, null);
+    }
+
+    public DirectoryState(String path, Map<String, FileState> files, Set<String> directories, LocalDateTime lastModified) {
+        this.path = path;
+        this.files = files;
+        this.directories = directories;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Map<String, FileState> getFiles() {
+        return files;
+    }
+
+    public void setFiles(Map<String, FileState> files) {
+        this.files = files;
+    }
+
+    public Set<String> getDirectories() {
+        return directories;
+    }
+
+    public void setDirectories(Set<String> directories) {
+        this.directories = directories;
+    }
+
+    public LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(LocalDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DirectoryState that = (DirectoryState) o;
+        return Objects.equals(path, that.path) &&
+                Objects.equals(files, that.files) &&
+                Objects.equals(directories, that.directories) &&
+                Objects.equals(lastModified, that.lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, files, directories, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryState{" + "path='" + path + '\'' +
+                ", files=" + files +
+                ", directories=" + directories +
+                ", lastModified=" + lastModified +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Provides utility methods to read and write the state of the crawled directories.
+ * Each directory has its own file in ~/.fscrawler/{job_name}/_state/{xx}/{id}.json where
+ * {id} is the signature of the directory path and {xx} the 2 first chars of it.
+ */
+public class DirectoryStateFileHandler extends MetaFileHandler {
+
+    public static final String DIRNAME = "_state";
+
+    public DirectoryStateFileHandler(Path root) {
+        super(root);
+    }
+
+    /**
+     * We read the directory state in ~/.fscrawler/{job_name}/_state/{xx}/{id}.json
+     * @param jobname is the job_name
+     * @param directory the directory full path
+     * @return the directory state or null if we never saw this directory before
+     * @throws IOException in case of error while reading
+     */
+    public DirectoryState read(String jobname, String directory) throws IOException {
+        String id = sign(directory);
+        try {
+            return DirectoryStateParser.fromJson(readFile(subdir(jobname, id), id + ".json"));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * We write the directory state to ~/.fscrawler/{job_name}/_state/{xx}/{id}.json
+     * @param jobname is the job_name
+     * @param state the directory state to write
+     * @throws IOException in case of error while writing
+     */
+    public void write(String jobname, DirectoryState state) throws IOException {
+        String id = sign(state.getPath());
+        writeFile(subdir(jobname, id), id + ".json", DirectoryStateParser.toJson(state));
+    }
+
+    /**
+     * We remove the directory state from ~/.fscrawler/{job_name}/_state/{xx}/{id}.json
+     * @param jobname is the job_name
+     * @param directory the directory full path
+     * @throws IOException in case of error while removing
+     */
+    public void remove(String jobname, String directory) throws IOException {
+        String id = sign(directory);
+        removeFile(subdir(jobname, id), id + ".json");
+    }
+
+    /**
+     * We clean all the existing states in ~/.fscrawler/{job_name}/_state
+     * @param jobname is the job_name
+     * @throws IOException in case of error while removing
+     */
+    public void clean(String jobname) throws IOException {
+        removeDir(jobname + "/" + DIRNAME);
+    }
+
+    private static String subdir(String jobname, String id) {
+        return jobname + "/" + DIRNAME + "/" + id.substring(0, 2);
+    }
+
+    private static String sign(String directory) throws IOException {
+        try {
+            return SignTool.sign(directory);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+
+/**
+ * Writes a {@link Doc} as compact JSON directly into a {@link JsonBuffer}, without going through
+ * Jackson bean introspection. The output is the same as {@code MetaParser.mapper.writeValueAsString(doc)}:
+ * same field order, empty values are skipped and dates are formatted like Jackson does.
+ * Any new field added to the beans must be added here as well.
+ */
+class DocJsonWriter {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+            .withZone(ZoneOffset.UTC);
+
+    private static final byte[] UTC_OFFSET = "+0000\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] TEN_POWERS = { 1, 10, 100, 1000 };
+
+    private final JsonBuffer json;
+    private boolean first;
+
+    private DocJsonWriter(JsonBuffer json, boolean first) {
+        this.json = json;
+        this.first = first;
+    }
+
+    /**
+     * Write a document.
+     * @param doc the document
+     * @param json where to write
+     * @param streamedContent true if the buffer already starts with the document and its content, in which case
+     *                        only the other fields are written followed by the closing brace.
+     */
+    static void write(Doc doc, JsonBuffer json, boolean streamedContent) throws JsonProcessingException {
+        DocJsonWriter writer = new DocJsonWriter(json, !streamedContent);
+        if (!streamedContent) {
+            json.writeRaw('{');
+            writer.field(Doc.FIELD_NAMES.CONTENT, doc.getContent());
+        }
+        writer.field(Doc.FIELD_NAMES.ATTACHMENT, doc.getAttachment());
+        writer.meta(doc.getMeta());
+        writer.file(doc.getFile());
+        writer.path(doc.getPath());
+        writer.attributes(doc.getAttributes());
+        writer.field("object", doc.getObject());
+        writer.field("external", doc.getExternal());
+        json.writeRaw('}');
+    }
+
+    private void meta(Meta meta) {
+        if (meta == null) {
+            return;
+        }
+        startObject(Doc.FIELD_NAMES.META);
+        field(Meta.FIELD_NAMES.AUTHOR, meta.getAuthor());
+        field(Meta.FIELD_NAMES.TITLE, meta.getTitle());
+        field(Meta.FIELD_NAMES.DATE, meta.getDate());
+        field(Meta.FIELD_NAMES.KEYWORDS, meta.getKeywords());
+        field(Meta.FIELD_NAMES.LANGUAGE, meta.getLanguage());
+        field(Meta.FIELD_NAMES.FORMAT, meta.getFormat());
+        field(Meta.FIELD_NAMES.IDENTIFIER, meta.getIdentifier());
+        field(Meta.FIELD_NAMES.CONTRIBUTOR, meta.getContributor());
+        field(Meta.FIELD_NAMES.COVERAGE, meta.getCoverage());
+        field(Meta.FIELD_NAMES.MODIFIER, meta.getModifier());
+        field(Meta.FIELD_NAMES.CREATOR_TOOL, meta.getCreatorTool());
+        field(Meta.FIELD_NAMES.PUBLISHER, meta.getPublisher());
+        field(Meta.FIELD_NAMES.RELATION, meta.getRelation());
+        field(Meta.FIELD_NAMES.RIGHTS, meta.getRights());
+        field(Meta.FIELD_NAMES.SOURCE, meta.getSource());
+        field(Meta.FIELD_NAMES.TYPE, meta.getType());
+        field(Meta.FIELD_NAMES.DESCRIPTION, meta.getDescription());
+        field(Meta.FIELD_NAMES.CREATED, meta.getCreated());
+        field(Meta.FIELD_NAMES.PRINT_DATE, meta.getPrintDate());
+        field(Meta.FIELD_NAMES.METADATA_DATE, meta.getMetadataDate());
+        field(Meta.FIELD_NAMES.LATITUDE, meta.getLatitude());
+        field(Meta.FIELD_NAMES.LONGITUDE, meta.getLongitude());
+        field(Meta.FIELD_NAMES.ALTITUDE, meta.getAltitude());
+        field(Meta.FIELD_NAMES.RATING, meta.getRating());
+        field(Meta.FIELD_NAMES.COMMENTS, meta.getComments());
+        raw(meta.getRaw());
+        endObject();
+    }
+
+    private void file(File file) {
+        if (file == null) {
+            return;
+        }
+        startObject(Doc.FIELD_NAMES.FILE);
+        field(File.FIELD_NAMES.EXTENSION, file.getExtension());
+        field(File.FIELD_NAMES.CONTENT_TYPE, file.getContentType());
+        field(File.FIELD_NAMES.CREATED, file.getCreated());
+        field(File.FIELD_NAMES.LAST_MODIFIED, file.getLastModified());
+        field(File.FIELD_NAMES.LAST_ACCESSED, file.getLastAccessed());
+        field(File.FIELD_NAMES.INDEXING_DATE, file.getIndexingDate());
+        field(File.FIELD_NAMES.FILESIZE, file.getFilesize());
+        field(File.FIELD_NAMES.FILENAME, file.getFilename());
+        field(File.FIELD_NAMES.URL, file.getUrl());
+        field(File.FIELD_NAMES.INDEXED_CHARS, file.getIndexedChars());
+        field(File.FIELD_NAMES.CHECKSUM, file.getChecksum());
+        endObject();
+    }
+
+    private void path(Path path) {
+        if (path == null) {
+            return;
+        }
+        startObject(Doc.FIELD_NAMES.PATH);
+        field(Path.FIELD_NAMES.ROOT, path.getRoot());
+        field(Path.FIELD_NAMES.VIRTUAL, path.getVirtual());
+        field(Path.FIELD_NAMES.REAL, path.getReal());
+        endObject();
+    }
+
+    private void attributes(Attributes attributes) {
+        if (attributes == null) {
+            return;
+        }
+        startObject(Doc.FIELD_NAMES.ATTRIBUTES);
+        field(Attributes.FIELD_NAMES.OWNER, attributes.getOwner());
+        field(Attributes.FIELD_NAMES.GROUP, attributes.getGroup());
+        field(Attributes.FIELD_NAMES.PERMISSIONS, attributes.getPermissions());
+        endObject();
+    }
+
+    /**
+     * Raw metadata is the biggest part of the metadata, so we write it by hand too.
+     * Like Jackson does with NON_EMPTY, entries without a value are skipped.
+     */
+    private void raw(Map<String, String> raw) {
+        if (raw == null) {
+            return;
+        }
+        boolean started = false;
+        for (Map.Entry<String, String> entry : raw.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            if (!started) {
+                startObject("raw");
+                started = true;
+            }
+            field(entry.getKey(), entry.getValue());
+        }
+        if (started) {
+            endObject();
+        }
+    }
+
+    private void startObject(String name) {
+        name(name);
+        json.writeRaw('{');
+        first = true;
+    }
+
+    private void endObject() {
+        json.writeRaw('}');
+        first = false;
+    }
+
+    private void name(String name) {
+        if (!first) {
+            json.writeRaw(',');
+        }
+        first = false;
+        json.writeRaw('"');
+        json.write(name);
+        json.writeRaw('"');
+        json.writeRaw(':');
+    }
+
+    private void string(String value) {
+        json.writeRaw('"');
+        json.write(value);
+        json.writeRaw('"');
+    }
+
+    private void field(String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            name(name);
+            string(value);
+        }
+    }
+
+    private void field(String name, Date value) {
+        if (value != null) {
+            name(name);
+            date(value);
+        }
+    }
+
+    /**
+     * Write a date like Jackson StdDateFormat does: 2019-01-31T13:45:10.123+0000. DateTimeFormatter is
+     * quite slow so we write the digits by hand for the usual years.
+     */
+    private void date(Date value) {
+        LocalDateTime time = LocalDateTime.ofInstant(value.toInstant(), ZoneOffset.UTC);
+        if (time.getYear() < 0 || time.getYear() > 9999) {
+            string(DATE_FORMAT.format(value.toInstant()));
+            return;
+        }
+        json.writeRaw('"');
+        digits(time.getYear(), 4);
+        json.writeRaw('-');
+        digits(time.getMonthValue(), 2);
+        json.writeRaw('-');
+        digits(time.getDayOfMonth(), 2);
+        json.writeRaw('T');
+        digits(time.getHour(), 2);
+        json.writeRaw(':');
+        digits(time.getMinute(), 2);
+        json.writeRaw(':');
+        digits(time.getSecond(), 2);
+        json.writeRaw('.');
+        digits(time.getNano() / 1000000, 3);
+        json.writeRaw(UTC_OFFSET, 0, UTC_OFFSET.length);
+    }
+
+    private void digits(int value, int length) {
+        for (int divider = TEN_POWERS[length - 1]; divider > 0; divider /= 10) {
+            json.writeRaw((char) ('0' + (value / divider) % 10));
+        }
+    }
+
+    private void field(String name, Number value) {
+        if (value != null) {
+            name(name);
+            json.writeRaw(value.toString());
+        }
+    }
+
+    private void field(String name, List<String> values) {
+        if (values != null && !values.isEmpty()) {
+            name(name);
+            json.writeRaw('[');
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    json.writeRaw(',');
+                }
+                String value = values.get(i);
+                if (value == null) {
+                    json.writeRaw("null");
+                } else {
+                    string(value);
+                }
+            }
+            json.writeRaw(']');
+        }
+    }
+
+    /**
+     * Free form maps (json or xml documents, external tags) are not on the hot path: we let Jackson write them.
+     */
+    private void field(String name, Map<?, ?> value) throws JsonProcessingException {
+        if (value != null && !value.isEmpty()) {
+            // We don't use writeValueAsBytes() as it escapes supplementary characters
+            String map = mapper.writeValueAsString(value);
+            // All the values might have been skipped
+            if (map.length() > 2) {
+                name(name);
+                json.writeRaw(map);
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package fr.pilato.elasticsearch.crawler.fs.beans;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
 
 import java.io.IOException;
 import java.util.Map;
@@ -28,10 +29,54 @@ import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.prettyMapp
 
 public class DocParser {
 
+    /**
+     * Usual size of a serialized document without its content
+     */
+    public static final int JSON_FIELDS_SIZE = 4096;
+
+    private static final String CONTENT_START = "{\"" + Doc.FIELD_NAMES.CONTENT + "\":\"";
+
     public static String toJson(Doc doc) throws JsonProcessingException {
         return prettyMapper.writeValueAsString(doc);
     }
 
+    /**
+     * Start a document whose content is streamed: the text written to the buffer after this call
+     * is the content of the document until {@link #writeContentEnd(JsonBuffer)} is called.
+     */
+    public static void writeContentStart(JsonBuffer json) {
+        json.writeRaw(CONTENT_START);
+    }
+
+    /**
+     * End the streamed content. If it is empty, the buffer is emptied as empty fields are not generated.
+     */
+    public static void writeContentEnd(JsonBuffer json) {
+        if (json.size() <= CONTENT_START.length()) {
+            json.truncate(0);
+        } else {
+            json.writeRaw("\"");
+        }
+    }
+
+    /**
+     * Write a document in compact JSON. If the buffer is not empty, it must hold the streamed content
+     * of the document (see {@link #writeContentStart(JsonBuffer)}) and only the other fields are added.
+     */
+    public static void toJson(Doc doc, JsonBuffer json) throws JsonProcessingException {
+        DocJsonWriter.write(doc, json, json.size() > 0);
+    }
+
+    /**
+     * Generate the compact JSON document which is sent to elasticsearch
+     */
+    public static JsonBuffer toCompactJson(Doc doc) throws JsonProcessingException {
+        int contentLength = doc.getContent() == null ? 0 : doc.getContent().length();
+        JsonBuffer json = new JsonBuffer(contentLength + JSON_FIELDS_SIZE);
+        toJson(doc, json);
+        return json;
+    }
+
     public static Doc fromJson(String json) throws IOException {
         return prettyMapper.readValue(json, Doc.class);
     }
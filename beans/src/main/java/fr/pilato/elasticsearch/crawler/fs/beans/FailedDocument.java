@@ -0,0 +1,204 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A document elasticsearch did not acknowledge and which must be sent again
+ */
+public class FailedDocument {
+
+    private String index;
+    private String id;
+    private String path;
+    private boolean delete;
+    private int attempts;
+    private String failure;
+    private LocalDateTime retryAfter;
+
+    public static class Builder {
+        private String index;
+        private String id;
+        private String path;
+        private boolean delete;
+        private int attempts;
+        private String failure;
+        private LocalDateTime retryAfter;
+
+        public Builder setIndex(String index) {
+            this.index = index;
+            return this;
+        }
+
+        public Builder setId(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder setPath(String path) {
+            this.path = path;
+            return this;
+        }
+
+        public Builder setDelete(boolean delete) {
+            this.delete = delete;
+            return this;
+        }
+
+        public Builder setAttempts(int attempts) {
+            this.attempts = attempts;
+            return this;
+        }
+
+        public Builder setFailure(String failure) {
+            this.failure = failure;
+            return this;
+        }
+
+        public Builder setRetryAfter(LocalDateTime retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public FailedDocument build() {
+            return new FailedDocument(index, id, path, delete, attempts, failure, retryAfter);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public FailedDocument() {
+
+    }
+
+    private FailedDocument(String index, String id, String path, boolean delete, int attempts, String failure,
+                           LocalDateTime retryAfter) {
+        this.index = index;
+        this.id = id;
+        this.path = path;
+        this.delete = delete;
+        this.attempts = attempts;
+        this.failure = failure;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the full path of the file or of the directory, null if unknown
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return true if we failed to remove the document, false if we failed to index it
+     */
+    public boolean isDelete() {
+        return delete;
+    }
+
+    public void setDelete(boolean delete) {
+        this.delete = delete;
+    }
+
+    /**
+     * @return how many times we already tried to send this document
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @return the date after which we can try again
+     */
+    public LocalDateTime getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(LocalDateTime retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FailedDocument that = (FailedDocument) o;
+        return delete == that.delete &&
+                attempts == that.attempts &&
+                Objects.equals(index, that.index) &&
+                Objects.equals(id, that.id) &&
+                Objects.equals(path, that.path) &&
+                Objects.equals(failure, that.failure) &&
+                Objects.equals(retryAfter, that.retryAfter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, id, path, delete, attempts, failure, retryAfter);
+    }
+
+    @Override
+    public String toString() {
+        return "FailedDocument{" + "index='" + index + '\'' +
+                ", id='" + id + '\'' +
+                ", path='" + path + '\'' +
+                ", delete=" + delete +
+                ", attempts=" + attempts +
+                ", failure='" + failure + '\'' +
+                ", retryAfter=" + retryAfter +
+                '}';
+    }
+}
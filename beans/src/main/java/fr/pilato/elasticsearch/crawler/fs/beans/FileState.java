@@ -0,0 +1,137 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * What we know about a file the last time we crawled it
+ */
+public class FileState {
+
+    private long size;
+    private LocalDateTime lastModified;
+    private String inode;
+    private String checksum;
+
+    public static class Builder {
+        private long size;
+        private LocalDateTime lastModified;
+        private String inode;
+        private String checksum;
+
+        public Builder setSize(long size) {
+            this.size = size;
+            return this;
+        }
+
+        public Builder setLastModified(LocalDateTime lastModified) {
+            this.lastModified = lastModified;
+            return this;
+        }
+
+        public Builder setInode(String inode) {
+            this.inode = inode;
+            return this;
+        }
+
+        public Builder setChecksum(String checksum) {
+            this.checksum = checksum;
+            return this;
+        }
+
+        public FileState build() {
+            return new FileState(size, lastModified, inode, checksum);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public FileState() {
+
+    }
+
+    public FileState(long size, LocalDateTime lastModified, String inode, String checksum) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.inode = inode;
+        this.checksum = checksum;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(LocalDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getInode() {
+        return inode;
+    }
+
+    public void setInode(String inode) {
+        this.inode = inode;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileState fileState = (FileState) o;
+        return size == fileState.size &&
+                Objects.equals(lastModified, fileState.lastModified) &&
+                Objects.equals(inode, fileState.inode) &&
+                Objects.equals(checksum, fileState.checksum);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModified, inode, checksum);
+    }
+
+    @Override
+    public String toString() {
+        return "FileState{" + "size=" + size +
+                ", lastModified=" + lastModified +
+                ", inode='" + inode + '\'' +
+                ", checksum='" + checksum + '\'' +
+                '}';
+    }
+}
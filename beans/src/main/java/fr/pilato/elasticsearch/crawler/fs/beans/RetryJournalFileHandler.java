@@ -0,0 +1,115 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+
+/**
+ * Provides utility methods to read and write the documents elasticsearch did not acknowledge.
+ * They are stored in ~/.fscrawler/{job_name}/_retry.ndjson, one json document per line, so
+ * a failure can be recorded by appending a single line to the file.
+ */
+public class RetryJournalFileHandler extends MetaFileHandler {
+
+    private static final Logger logger = LogManager.getLogger(RetryJournalFileHandler.class);
+
+    public static final String FILENAME = "_retry.ndjson";
+
+    public RetryJournalFileHandler(Path root) {
+        super(root);
+    }
+
+    /**
+     * We read the failed documents from ~/.fscrawler/{job_name}/_retry.ndjson
+     * @param jobname is the job_name
+     * @return the failed documents in the order they have been recorded. Empty if none.
+     * @throws IOException in case of error while reading
+     */
+    public List<FailedDocument> read(String jobname) throws IOException {
+        List<FailedDocument> documents = new ArrayList<>();
+        String content;
+        try {
+            content = readFile(jobname, FILENAME);
+        } catch (NoSuchFileException e) {
+            return documents;
+        }
+        for (String line : content.split("\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                documents.add(mapper.readValue(line, FailedDocument.class));
+            } catch (JsonProcessingException e) {
+                // The process might have been killed while appending a line
+                logger.warn("Ignoring a corrupted line in [{}]: {}", FILENAME, e.getMessage());
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * We append a failed document to ~/.fscrawler/{job_name}/_retry.ndjson
+     * @param jobname is the job_name
+     * @param document the failed document
+     * @throws IOException in case of error while writing
+     */
+    public void append(String jobname, FailedDocument document) throws IOException {
+        appendFile(jobname, FILENAME, mapper.writeValueAsString(document) + "\n");
+    }
+
+    /**
+     * We replace all the failed documents in ~/.fscrawler/{job_name}/_retry.ndjson
+     * @param jobname is the job_name
+     * @param documents the failed documents to keep. The file is removed if empty.
+     * @throws IOException in case of error while writing
+     */
+    public void write(String jobname, Collection<FailedDocument> documents) throws IOException {
+        if (documents.isEmpty()) {
+            clean(jobname);
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        for (FailedDocument document : documents) {
+            content.append(mapper.writeValueAsString(document)).append('\n');
+        }
+        writeFile(jobname, FILENAME, content.toString());
+    }
+
+    /**
+     * We remove ~/.fscrawler/{job_name}/_retry.ndjson
+     * @param jobname is the job_name
+     * @throws IOException in case of error while removing
+     */
+    public void clean(String jobname) throws IOException {
+        removeFile(jobname, FILENAME);
+    }
+}
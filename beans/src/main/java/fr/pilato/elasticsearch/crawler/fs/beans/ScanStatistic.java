@@ -20,7 +20,7 @@
 package fr.pilato.elasticsearch.crawler.fs.beans;
 
 /**
- * Provide Scan Statistics
+ * Provide Scan Statistics. Counters can be updated from several extraction threads.
  *
  * @author David Pilato (aka dadoonet)
  */
@@ -45,28 +45,28 @@ public class ScanStatistic {
     /**
      * @return the nbDocScan
      */
-    public int getNbDocScan() {
+    public synchronized int getNbDocScan() {
         return nbDocScan;
     }
 
     /**
      * @param nbDocScan the nbDocScan to set
      */
-    public void setNbDocScan(int nbDocScan) {
+    public synchronized void setNbDocScan(int nbDocScan) {
         this.nbDocScan = nbDocScan;
     }
 
     /**
      * @return the nbDocDeleted
      */
-    public int getNbDocDeleted() {
+    public synchronized int getNbDocDeleted() {
         return nbDocDeleted;
     }
 
     /**
      * @param nbDocDeleted the nbDocDeleted to set
      */
-    public void setNbDocDeleted(int nbDocDeleted) {
+    public synchronized void setNbDocDeleted(int nbDocDeleted) {
         this.nbDocDeleted = nbDocDeleted;
     }
 
@@ -101,14 +101,14 @@ public class ScanStatistic {
     /**
      * Increment statistic for new files
      */
-    public void addFile() {
+    public synchronized void addFile() {
         this.nbDocScan++;
     }
 
     /**
      * Increment statistic for deleted files
      */
-    public void removeFile() {
+    public synchronized void removeFile() {
         this.nbDocDeleted++;
     }
 
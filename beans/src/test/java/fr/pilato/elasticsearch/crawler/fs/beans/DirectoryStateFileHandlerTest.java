@@ -0,0 +1,71 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DirectoryStateFileHandlerTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testWriteReadAndRemove() throws IOException {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        DirectoryStateFileHandler handler = new DirectoryStateFileHandler(config);
+        String jobName = "job";
+
+        assertThat(handler.read(jobName, "/tmp/foo"), nullValue());
+
+        Map<String, FileState> files = new HashMap<>();
+        files.put("foo.txt", FileState.builder()
+                .setSize(12)
+                .setLastModified(LocalDateTime.now())
+                .setInode("(dev=803,ino=1234)")
+                .setChecksum("5eb63bbbe01eeed093cb22bb8f5acdc3")
+                .build());
+        files.put("bar.txt", FileState.builder().setSize(0).setLastModified(LocalDateTime.now()).build());
+        DirectoryState state = new DirectoryState("/tmp/foo", files, Collections.singleton("/tmp/foo/bar"),
+                LocalDateTime.now().minusHours(1));
+        handler.write(jobName, state);
+
+        assertThat(handler.read(jobName, "/tmp/foo"), is(state));
+        assertThat(handler.read(jobName, "/tmp/bar"), nullValue());
+
+        handler.remove(jobName, "/tmp/foo");
+        assertThat(handler.read(jobName, "/tmp/foo"), nullValue());
+
+        handler.write(jobName, state);
+        handler.clean(jobName);
+        assertThat(handler.read(jobName, "/tmp/foo"), nullValue());
+        assertThat(Files.exists(config.resolve(jobName).resolve(DirectoryStateFileHandler.DIRNAME)), is(false));
+    }
+}
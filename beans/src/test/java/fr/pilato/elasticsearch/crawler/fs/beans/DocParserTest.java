@@ -0,0 +1,165 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomBoolean;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomLongBetween;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomRealisticUnicodeOfLengthBetween;
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DocParserTest extends AbstractFSCrawlerTestCase {
+
+    private static String randomString() {
+        return randomBoolean() ? null : randomRealisticUnicodeOfLengthBetween(0, 20);
+    }
+
+    private static Date randomDate() {
+        return randomBoolean() ? null : new Date(randomLongBetween(0, 4102444800000L));
+    }
+
+    private static Doc randomDoc() {
+        Doc doc = new Doc();
+        doc.setContent(randomString());
+        doc.setAttachment(randomString());
+
+        if (randomBoolean()) {
+            doc.setMeta(null);
+        } else {
+            Meta meta = doc.getMeta();
+            meta.setAuthor(randomString());
+            meta.setTitle(randomString());
+            meta.setDate(randomDate());
+            if (randomBoolean()) {
+                List<String> keywords = new ArrayList<>();
+                int size = randomIntBetween(0, 3);
+                for (int i = 0; i < size; i++) {
+                    keywords.add(randomString());
+                }
+                meta.setKeywords(keywords);
+            }
+            meta.setLanguage(randomString());
+            meta.setFormat(randomString());
+            meta.setIdentifier(randomString());
+            meta.setContributor(randomString());
+            meta.setCoverage(randomString());
+            meta.setModifier(randomString());
+            meta.setCreatorTool(randomString());
+            meta.setPublisher(randomString());
+            meta.setRelation(randomString());
+            meta.setRights(randomString());
+            meta.setSource(randomString());
+            meta.setType(randomString());
+            meta.setDescription(randomString());
+            meta.setCreated(randomDate());
+            meta.setPrintDate(randomDate());
+            meta.setMetadataDate(randomDate());
+            meta.setLatitude(randomString());
+            meta.setLongitude(randomString());
+            meta.setAltitude(randomString());
+            meta.setRating(randomBoolean() ? null : randomIntBetween(0, 5));
+            meta.setComments(randomString());
+            int raw = randomIntBetween(0, 5);
+            for (int i = 0; i < raw; i++) {
+                meta.addRaw(randomRealisticUnicodeOfLengthBetween(1, 10), randomString());
+            }
+        }
+
+        File file = doc.getFile();
+        file.setExtension(randomString());
+        file.setContentType(randomString());
+        file.setCreated(randomDate());
+        file.setLastModified(randomDate());
+        file.setLastAccessed(randomDate());
+        file.setIndexingDate(randomDate());
+        file.setFilesize(randomBoolean() ? null : randomLongBetween(0, Long.MAX_VALUE));
+        file.setFilename(randomString());
+        file.setUrl(randomString());
+        file.setIndexedChars(randomBoolean() ? null : randomIntBetween(-1, 100000));
+        file.setChecksum(randomString());
+
+        Path path = doc.getPath();
+        path.setRoot(randomString());
+        path.setVirtual(randomString());
+        path.setReal(randomString());
+
+        if (randomBoolean()) {
+            Attributes attributes = new Attributes();
+            attributes.setOwner(randomString());
+            attributes.setGroup(randomString());
+            attributes.setPermissions(randomIntBetween(0, 777));
+            doc.setAttributes(attributes);
+        }
+
+        if (randomBoolean()) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("foo", randomString());
+            object.put("bar", randomBoolean() ? null : randomIntBetween(0, 10));
+            doc.setObject(object);
+        }
+        if (randomBoolean()) {
+            Map<String, Object> external = new HashMap<>();
+            external.put("tenant", randomString());
+            doc.setExternal(external);
+        }
+        return doc;
+    }
+
+    @Test
+    public void testCompactJsonIsTheSameAsJackson() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            Doc doc = randomDoc();
+            JsonBuffer json = DocParser.toCompactJson(doc);
+            assertThat(json.toString(), is(mapper.writeValueAsString(doc)));
+        }
+    }
+
+    @Test
+    public void testCompactJsonWithStreamedContent() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            Doc doc = randomDoc();
+            // When the content is streamed, it is never set on the document
+            doc.setContent(null);
+            String content = randomRealisticUnicodeOfLengthBetween(0, 100);
+
+            JsonBuffer json = new JsonBuffer(16);
+            DocParser.writeContentStart(json);
+            json.write(content);
+            DocParser.writeContentEnd(json);
+            DocParser.toJson(doc, json);
+
+            doc.setContent(content);
+            assertThat(json.toString(), is(mapper.writeValueAsString(doc)));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.beans;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class RetryJournalFileHandlerTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testAppendReadAndWrite() throws IOException {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        RetryJournalFileHandler handler = new RetryJournalFileHandler(config);
+        String jobName = "job";
+
+        assertThat(handler.read(jobName), empty());
+
+        FailedDocument file = FailedDocument.builder()
+                .setIndex("docs")
+                .setId("5eb63bbbe01eeed093cb22bb8f5acdc3")
+                .setPath("/tmp/foo/bar.txt")
+                .setAttempts(1)
+                .setFailure("mapper_parsing_exception")
+                .setRetryAfter(LocalDateTime.now())
+                .build();
+        FailedDocument delete = FailedDocument.builder()
+                .setIndex("docs_folder")
+                .setId("3cb22bb8f5acdc35eb63bbbe01eeed09")
+                .setDelete(true)
+                .setAttempts(3)
+                .setRetryAfter(LocalDateTime.now())
+                .build();
+        handler.append(jobName, file);
+        handler.append(jobName, delete);
+        assertThat(handler.read(jobName), contains(file, delete));
+
+        // A line which has been partially written is ignored
+        Files.write(config.resolve(jobName).resolve(RetryJournalFileHandler.FILENAME),
+                "{\"index\":\"docs\",\"id\":\"12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertThat(handler.read(jobName), contains(file, delete));
+
+        handler.write(jobName, Collections.singletonList(delete));
+        assertThat(handler.read(jobName), contains(delete));
+
+        handler.write(jobName, Arrays.asList(delete, file));
+        assertThat(handler.read(jobName), contains(delete, file));
+
+        handler.write(jobName, Collections.emptyList());
+        assertThat(handler.read(jobName), empty());
+        assertThat(Files.exists(config.resolve(jobName).resolve(RetryJournalFileHandler.FILENAME)), is(false));
+
+        handler.append(jobName, file);
+        handler.clean(jobName);
+        assertThat(handler.read(jobName), empty());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.DocParser;
+import fr.pilato.elasticsearch.crawler.fs.client.v6.ElasticsearchClientV6;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import fr.pilato.elasticsearch.crawler.fs.settings.Elasticsearch;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code ElasticsearchClient.index()}: adding the documents to the bulk processor, building the bulk
+ * requests and sending them. Elasticsearch is mocked by a local HTTP server which reads the bulk requests and
+ * answers that everything went fine, so we measure the client side only.
+ * <ul>
+ *     <li>{@link #indexString()}: the document is given as a String like we used to do</li>
+ *     <li>{@link #indexBytes()}: the document is given as the bytes of a {@link JsonBuffer}</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkIndexBenchmark {
+
+    private static final byte[] INFO_RESPONSE = ("{\"name\":\"benchmark\",\"cluster_name\":\"benchmark\"," +
+            "\"cluster_uuid\":\"benchmark\",\"version\":{\"number\":\"6.8.0\",\"build_flavor\":\"default\"," +
+            "\"build_type\":\"tar\",\"build_hash\":\"65b6179\",\"build_date\":\"2019-05-15T20:06:13.172855Z\"," +
+            "\"build_snapshot\":false,\"lucene_version\":\"7.7.0\",\"minimum_wire_compatibility_version\":\"5.6.0\"," +
+            "\"minimum_index_compatibility_version\":\"5.0.0\"},\"tagline\":\"You Know, for Search\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BULK_RESPONSE = "{\"took\":1,\"errors\":false,\"items\":[]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1000", "100000"})
+    private int contentLength;
+
+    private HttpServer node;
+    private ElasticsearchClientV6 client;
+    private String json;
+    private JsonBuffer jsonBuffer;
+    private long id;
+
+    @Setup(Level.Trial)
+    public void startClient() throws IOException {
+        node = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        node.createContext("/", exchange -> {
+            try (OutputStream out = NullOutputStream.NULL_OUTPUT_STREAM) {
+                // We read the whole request like elasticsearch would do
+                IOUtils.copy(exchange.getRequestBody(), out);
+            }
+            respond(exchange, exchange.getRequestURI().getPath().endsWith("/_bulk") ? BULK_RESPONSE : INFO_RESPONSE);
+        });
+        node.start();
+
+        FsSettings fsSettings = FsSettings.builder("benchmark")
+                .setElasticsearch(Elasticsearch.builder()
+                        .addNode(new Elasticsearch.Node("http://127.0.0.1:" + node.getAddress().getPort()))
+                        .build())
+                .build();
+        client = new ElasticsearchClientV6(null, fsSettings);
+        client.start();
+
+        StringBuilder content = new StringBuilder(contentLength);
+        while (content.length() < contentLength) {
+            content.append("Lorem ipsum dolor sit amet, élément \"cité\"\n");
+        }
+        content.setLength(contentLength);
+        Doc doc = new Doc();
+        doc.setContent(content.toString());
+        doc.getFile().setFilename("test.txt");
+        doc.getPath().setReal("/tmp/test.txt");
+        jsonBuffer = DocParser.toCompactJson(doc);
+        json = jsonBuffer.toString();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] response) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopClient() throws IOException {
+        client.close();
+        node.stop(0);
+    }
+
+    @Benchmark
+    public void indexString() {
+        client.index("benchmark", client.getDefaultTypeName(), Long.toString(id++), json, null);
+    }
+
+    @Benchmark
+    public void indexBytes() {
+        client.index("benchmark", client.getDefaultTypeName(), Long.toString(id++), jsonBuffer.bytes(),
+                jsonBuffer.size(), null);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.isIndexable;
+
+/**
+ * Measures the {@code fs.filters} rules which are checked against the content of every document.
+ * The content is made of {@link #chars} chars of text and the filters are found at its beginning.
+ * <ul>
+ *     <li>{@link #isIndexableContent()}: the filters are compiled for every document</li>
+ *     <li>{@link #isIndexableContentCompiled()}: the filters are compiled once with {@link ContentFilter}</li>
+ *     <li>{@link #streaming()}: the filters are checked while the content is written like the crawler does</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentFilterBenchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"100000"})
+    private int chars;
+
+    private final List<String> filters = Arrays.asList(".*foo.*", "^4\\d{3}([\\ \\-]?)\\d{4}\\1\\d{4}\\1\\d{4}$");
+    private final ContentFilter compiled = ContentFilter.compile(filters);
+    private String content;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("This is containing foo as one of the words.\n4012 8888 8888 1881\n");
+        while (sb.length() < chars) {
+            sb.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.\n");
+        }
+        content = sb.toString();
+    }
+
+    @Benchmark
+    public boolean isIndexableContent() {
+        return isIndexable(content, filters);
+    }
+
+    @Benchmark
+    public boolean isIndexableContentCompiled() {
+        return isIndexable(content, compiled);
+    }
+
+    @Benchmark
+    public boolean streaming() throws IOException {
+        ContentFilter.StreamingFilter writer = compiled.writer(NullWriter.NULL_WRITER);
+        for (int i = 0; i < content.length(); i += CHUNK_SIZE) {
+            writer.write(content, i, Math.min(CHUNK_SIZE, content.length() - i));
+        }
+        return writer.matches();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.Attributes;
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.DocParser;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+
+/**
+ * Compares the cost of generating the JSON document which is sent to elasticsearch.
+ * <ul>
+ *     <li>{@link #prettyString()} is what we used to do: {@code DocParser.toJson(doc)} with the pretty mapper,
+ *     then the String is encoded to UTF-8 by the elasticsearch client.</li>
+ *     <li>{@link #compactJackson()} is the same with the compact mapper, written to bytes.</li>
+ *     <li>{@link #compactJsonBuffer()} is what we do now: {@code DocParser.toCompactJson(doc)} which writes
+ *     the fields by hand in a {@link JsonBuffer}.</li>
+ * </ul>
+ * The document looks like one generated for an office document: a content, around 30 raw metadata and the file,
+ * path and attributes fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    private int contentLength;
+
+    private Doc doc;
+
+    @Setup(Level.Trial)
+    public void createDoc() {
+        StringBuilder content = new StringBuilder(contentLength);
+        while (content.length() < contentLength) {
+            content.append("Lorem ipsum dolor sit amet, élément \"cité\"\n");
+        }
+        content.setLength(contentLength);
+
+        doc = new Doc();
+        doc.setContent(content.toString());
+        doc.getMeta().setAuthor("David Pilato");
+        doc.getMeta().setTitle("Test Tika title");
+        doc.getMeta().setDate(new Date());
+        doc.getMeta().setKeywords(Arrays.asList("keyword1", "keyword2"));
+        doc.getMeta().setLanguage("fr");
+        doc.getMeta().setCreatorTool("Microsoft Office Word");
+        doc.getMeta().setCreated(new Date());
+        for (int i = 0; i < 30; i++) {
+            doc.getMeta().addRaw("meta:raw-" + i, "value of the raw metadata " + i);
+        }
+        doc.getFile().setExtension("docx");
+        doc.getFile().setContentType("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        doc.getFile().setCreated(new Date());
+        doc.getFile().setLastModified(new Date());
+        doc.getFile().setLastAccessed(new Date());
+        doc.getFile().setIndexingDate(new Date());
+        doc.getFile().setFilesize(123456L);
+        doc.getFile().setFilename("test.docx");
+        doc.getFile().setUrl("file:///tmp/documents/test.docx");
+        doc.getFile().setIndexedChars(100000);
+        doc.getFile().setChecksum("d41d8cd98f00b204e9800998ecf8427e");
+        doc.getPath().setRoot("9e3a2c4f1b5a8d7e6f0c1b2a3d4e5f60");
+        doc.getPath().setVirtual("/documents/test.docx");
+        doc.getPath().setReal("/tmp/documents/test.docx");
+        doc.setAttributes(new Attributes());
+        doc.getAttributes().setOwner("david");
+        doc.getAttributes().setGroup("staff");
+        doc.getAttributes().setPermissions(644);
+    }
+
+    @Benchmark
+    public byte[] prettyString() throws IOException {
+        return DocParser.toJson(doc).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] compactJackson() throws IOException {
+        return mapper.writeValueAsBytes(doc);
+    }
+
+    @Benchmark
+    public JsonBuffer compactJsonBuffer() throws IOException {
+        return DocParser.toCompactJson(doc);
+    }
+}
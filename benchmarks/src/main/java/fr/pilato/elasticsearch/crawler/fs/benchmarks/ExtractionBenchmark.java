@@ -0,0 +1,121 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.tika.TikaDocParser;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the extraction of the documents from the test-documents module. They are read from memory
+ * so we mostly measure the parsing.
+ * <ul>
+ *     <li>{@link #generate()}: {@code TikaDocParser.generate()} which sets the content on the document</li>
+ *     <li>{@link #generateJson()}: the same but the content is written to a {@link JsonBuffer} like the crawler does
+ *     when no fs.filters are defined</li>
+ * </ul>
+ * Run a single document with {@code -p document=test.pdf}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"test.txt", "test.html", "test.rtf", "test.pdf", "test.doc", "test.docx", "test.odt"})
+    private String document;
+
+    private byte[] bytes;
+    private Path dir;
+    private Path file;
+    private FsSettings fsSettings;
+
+    @Setup(Level.Trial)
+    public void readDocument() throws IOException {
+        bytes = readTestDocument(document);
+        // TikaDocParser also opens the file itself (custom OCR) so it must exist on disk
+        dir = Files.createTempDirectory("fscrawler-benchmark");
+        file = dir.resolve(document);
+        Files.write(file, bytes);
+        fsSettings = FsSettings.builder("benchmark").setFs(Fs.builder().build()).build();
+    }
+
+    static byte[] readTestDocument(String document) throws IOException {
+        try (InputStream stream = ExtractionBenchmark.class.getResourceAsStream("/documents/" + document)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("Document [" + document + "] does not exist in test-documents");
+            }
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void removeDocument() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private Doc newDoc() {
+        // The crawler always sets the url before extracting the content
+        Doc doc = new Doc();
+        doc.getFile().setUrl("file://" + file.toString());
+        return doc;
+    }
+
+    @Benchmark
+    public Doc generate() throws IOException {
+        Doc doc = newDoc();
+        TikaDocParser.generate(fsSettings, new ByteArrayInputStream(bytes), document, doc, null, bytes.length);
+        return doc;
+    }
+
+    @Benchmark
+    public JsonBuffer generateJson() throws IOException {
+        JsonBuffer json = new JsonBuffer(bytes.length + 4096);
+        TikaDocParser.generate(fsSettings, new ByteArrayInputStream(bytes), document, newDoc(), null, bytes.length, json, ContentFilter.compile(null));
+        return json;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.GlobMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.isExcluded;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.isIndexable;
+
+/**
+ * Measures the include and exclude rules which are checked for every file and directory we crawl.
+ * Each operation checks a batch of {@link #FILENAMES} with rules like the ones users usually define.
+ * The {@code Compiled} benchmarks use rules compiled once with {@link GlobMatcher} like the crawler does. The
+ * other ones compile the rules for every check, like a caller which does not keep the compiled rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileFilterBenchmark {
+
+    static final String[] FILENAMES = {
+            "/test.txt",
+            "/documents/2019/Report Q1.pdf",
+            "/documents/2019/Report Q1.docx",
+            "/documents/2019/~$Report Q1.docx",
+            "/documents/images/scan-0001.TIFF",
+            "/projects/fscrawler/node_modules/jackson/index.js",
+            "/projects/fscrawler/target/classes/Foo.class",
+            "/archives/backup.tmp",
+    };
+
+    private final List<String> includes = Arrays.asList("*.pdf", "*.doc", "*.docx", "*.txt", "*.tiff");
+    private final List<String> excludes = Arrays.asList("*/~*", "*.tmp", "*/node_modules/*", "*/target/*");
+    private final GlobMatcher compiledIncludes = GlobMatcher.compile(includes);
+    private final GlobMatcher compiledExcludes = GlobMatcher.compile(excludes);
+
+    @Benchmark
+    public int isIndexableFile() {
+        int indexable = 0;
+        for (String filename : FILENAMES) {
+            if (isIndexable(false, filename, GlobMatcher.compile(includes), GlobMatcher.compile(excludes))) {
+                indexable++;
+            }
+        }
+        return indexable;
+    }
+
+    @Benchmark
+    public int isIndexableDirectory() {
+        int indexable = 0;
+        for (String filename : FILENAMES) {
+            if (isIndexable(true, filename, GlobMatcher.compile(includes), GlobMatcher.compile(excludes))) {
+                indexable++;
+            }
+        }
+        return indexable;
+    }
+
+    @Benchmark
+    public int isExcludedFile() {
+        int excluded = 0;
+        for (String filename : FILENAMES) {
+            if (isExcluded(filename, GlobMatcher.compile(excludes))) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+
+    @Benchmark
+    public int isIndexableFileCompiled() {
+        int indexable = 0;
+        for (String filename : FILENAMES) {
+            if (isIndexable(false, filename, compiledIncludes, compiledExcludes)) {
+                indexable++;
+            }
+        }
+        return indexable;
+    }
+
+    @Benchmark
+    public int isExcludedFileCompiled() {
+        int excluded = 0;
+        for (String filename : FILENAMES) {
+            if (isExcluded(filename, compiledExcludes)) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
+import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileAbstractorFile;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getCreationTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFileExtension;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFilePermissions;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getGroupName;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getLastAccessTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getModificationTime;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getOwnerName;
+
+/**
+ * Compares the cost of listing a local directory.
+ * <ul>
+ *     <li>{@link #listFilesWithOneCallPerAttribute()} is what FileAbstractorFile used to do: {@code File.listFiles()}
+ *     then one call per attribute. That's 8 stat calls per file: {@code isFile}, {@code length}, 3 basic attributes
+ *     reads for the dates, the owner and 2 posix attributes reads for the group and the permissions.</li>
+ *     <li>{@link #listFilesWithDirectoryStream()} is what FileAbstractorFile does now: a directory stream then a single
+ *     posix attributes read per file (1 stat call).</li>
+ *     <li>{@link #listFilesWithDirectoryStreamWithoutAttributes()} is the same with {@code fs.attributes_support}
+ *     set to false: a single basic attributes read per file (1 stat call) and no owner or group name lookup.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileListingBenchmark {
+
+    @Param({"100", "10000"})
+    private int files;
+
+    private Path dir;
+    private FileAbstractorFile withAttributes;
+    private FileAbstractorFile withoutAttributes;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("fscrawler-benchmark");
+        for (int i = 0; i < files; i++) {
+            Files.write(dir.resolve("file-" + i + ".txt"), ("This is file " + i).getBytes());
+        }
+        withAttributes = new FileAbstractorFile(FsSettings.builder("benchmark")
+                .setFs(Fs.builder().setAttributesSupport(true).build())
+                .build());
+        withoutAttributes = new FileAbstractorFile(FsSettings.builder("benchmark")
+                .setFs(Fs.builder().setAttributesSupport(false).build())
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Benchmark
+    public Collection<FileAbstractModel> listFilesWithOneCallPerAttribute() {
+        String path = dir.toString();
+        File[] list = dir.toFile().listFiles();
+        Collection<FileAbstractModel> result = new ArrayList<>(list.length);
+        for (File file : list) {
+            result.add(new FileAbstractModel(
+                    file.getName(),
+                    file.isFile(),
+                    getModificationTime(file),
+                    getCreationTime(file),
+                    getLastAccessTime(file),
+                    getFileExtension(file),
+                    path,
+                    file.getAbsolutePath(),
+                    file.length(),
+                    getOwnerName(file),
+                    getGroupName(file),
+                    getFilePermissions(file)));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Collection<FileAbstractModel> listFilesWithDirectoryStream() {
+        return withAttributes.getFiles(dir.toString());
+    }
+
+    @Benchmark
+    public Collection<FileAbstractModel> listFilesWithDirectoryStreamWithoutAttributes() {
+        return withoutAttributes.getFiles(dir.toString());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.benchmarks;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.computeVirtualPathName;
+
+/**
+ * Measures what we compute from the path of every file and directory we crawl:
+ * <ul>
+ *     <li>{@link #sign()}: the document id (and the folder id) with {@link SignTool#sign(String)}</li>
+ *     <li>{@link #signMurmur3()}: the same with {@code fs.id_hash: murmur3}</li>
+ *     <li>{@link #computeVirtualPath()}: the virtual path with {@code FsCrawlerUtil.computeVirtualPathName()}</li>
+ * </ul>
+ * Each operation works on a batch of {@link FileFilterBenchmark#FILENAMES}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    private static final String ROOT = "/home/fscrawler/data";
+
+    private final String[] paths = new String[FileFilterBenchmark.FILENAMES.length];
+
+    public PathBenchmark() {
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = ROOT + FileFilterBenchmark.FILENAMES[i];
+        }
+    }
+
+    @Benchmark
+    public int sign() throws NoSuchAlgorithmException {
+        int length = 0;
+        for (String path : paths) {
+            length += SignTool.sign(path).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int signMurmur3() {
+        int length = 0;
+        for (String path : paths) {
+            length += SignTool.murmur3(path).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int computeVirtualPath() {
+        int length = 0;
+        for (String path : paths) {
+            length += computeVirtualPathName(ROOT, path).length();
+        }
+        return length;
+    }
+}
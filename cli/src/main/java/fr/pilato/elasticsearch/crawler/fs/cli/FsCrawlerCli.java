@@ -22,7 +22,9 @@ package fr.pilato.elasticsearch.crawler.fs.cli;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import fr.pilato.elasticsearch.crawler.fs.FsCrawlerImpl;
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryStateFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.RetryJournalFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.client.ESVersion;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.MetaFileHandler;
@@ -86,6 +88,10 @@ public class FsCrawlerCli {
         @Parameter(names = "--upgrade", description = "Upgrade elasticsearch indices from one old version to the last version.")
         private boolean upgrade = false;
 
+        @Parameter(names = "--replay", description = "Index again the documents kept in the extraction result store " +
+                "without reading the files. fs.result_store must have been activated.")
+        private boolean replay = false;
+
         @Parameter(names = "--debug", description = "Debug mode")
         private boolean debug = false;
 
@@ -196,6 +202,8 @@ public class FsCrawlerCli {
         if (commands.restart) {
             logger.debug("Cleaning existing status for job [{}]...", jobName);
             new FsJobFileHandler(configDir).clean(jobName);
+            new DirectoryStateFileHandler(configDir).clean(jobName);
+            new RetryJournalFileHandler(configDir).clean(jobName);
         }
 
         try {
@@ -264,6 +272,10 @@ public class FsCrawlerCli {
                     logger.info("Updating fscrawler setting file");
                     fsSettingsFileHandler.write(fsSettings);
                 }
+            } else if (commands.replay) {
+                logger.info("Replaying job [{}]", jobName);
+                long documents = fsCrawler.replay();
+                logger.info("[{}] documents have been replayed", documents);
             } else {
                 try {
                     fsCrawler.getEsClient().start();
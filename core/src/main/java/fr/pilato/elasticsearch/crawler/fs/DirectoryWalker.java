@@ -0,0 +1,149 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Visit sibling directories concurrently using a {@link ForkJoinPool}. Each directory is
+ * a task which can fork new tasks for its own sub directories.
+ * The number of directories waiting to be visited is bounded: when the limit is reached,
+ * sub directories are visited by the current thread instead of being forked.
+ */
+class DirectoryWalker {
+    private static final Logger logger = LogManager.getLogger(DirectoryWalker.class);
+
+    /**
+     * Visit a single directory. The visitor is expected to call {@link #walk(Collection, Visitor)}
+     * for the sub directories it finds.
+     */
+    interface Visitor {
+        void visit(String directory) throws Exception;
+    }
+
+    private final ForkJoinPool pool;
+    private final Semaphore pending;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    DirectoryWalker(String name, int parallelism, int maxPendingDirectories) {
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("fs-crawler-" + name + "-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.pending = new Semaphore(maxPendingDirectories);
+        logger.debug("Directory walker started with a parallelism of [{}] and up to [{}] pending directories",
+                parallelism, maxPendingDirectories);
+    }
+
+    /**
+     * Visit all the directories and wait for them to be fully visited (including sub directories).
+     * @param directories directories to visit
+     * @param visitor what to do with each directory
+     * @throws Exception the first failure reported by a visitor, if any
+     */
+    void walk(Collection<String> directories, Visitor visitor) throws Exception {
+        if (ForkJoinTask.getPool() == pool) {
+            // We are already running within the walker, so we can fork sub tasks
+            List<DirectoryTask> forked = new ArrayList<>(directories.size());
+            for (String directory : directories) {
+                if (failure.get() != null) {
+                    break;
+                }
+                if (pending.tryAcquire()) {
+                    DirectoryTask task = new DirectoryTask(directory, visitor);
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    // Too many directories are waiting already, so let's visit this one ourselves
+                    logger.trace("Max pending directories reached. Visiting [{}] in the current thread", directory);
+                    visit(directory, visitor);
+                }
+            }
+            for (DirectoryTask task : forked) {
+                task.join();
+            }
+        } else {
+            // This is the entry point: we run everything within the pool, one top level directory after the other.
+            // The permit is released when the task is done, so we never wait for more than one top level directory.
+            for (String directory : directories) {
+                pending.acquire();
+                pool.invoke(new DirectoryTask(directory, visitor));
+            }
+        }
+
+        Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the walker threads
+     */
+    void close() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void visit(String directory, Visitor visitor) {
+        if (failure.get() != null) {
+            return;
+        }
+        try {
+            visitor.visit(directory);
+        } catch (Exception e) {
+            logger.debug("Failed to visit [{}]", directory, e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final String directory;
+        private final Visitor visitor;
+
+        private DirectoryTask(String directory, Visitor visitor) {
+            this.directory = directory;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                visit(directory, visitor);
+            } finally {
+                pending.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a local directory and all its sub directories for changes, so we only need to crawl again
+ * the directories where something happened.
+ * Events are debounced: once something changed, we wait until nothing happens during the debounce delay
+ * (but no more than {@link #MAX_DEBOUNCE_FACTOR} times this delay) before reporting the changes.
+ */
+class DirectoryWatcher implements Closeable {
+    private static final Logger logger = LogManager.getLogger(DirectoryWatcher.class);
+
+    static final int MAX_DEBOUNCE_FACTOR = 10;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final long debounceMillis;
+
+    /**
+     * Register a directory and all its sub directories
+     * @param root           the directory to watch
+     * @param debounceMillis how long we wait for other events once something changed
+     * @throws IOException if a directory can not be watched, for example when we reached the maximum number
+     * of watches allowed by the operating system
+     */
+    DirectoryWatcher(Path root, long debounceMillis) throws IOException {
+        this.watchService = root.getFileSystem().newWatchService();
+        this.debounceMillis = debounceMillis;
+        try {
+            register(root);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        logger.debug("Watching [{}] directories in [{}]", directories.size(), root);
+    }
+
+    private void register(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                logger.debug("Can not watch [{}]: {}", file, exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Wait for something to change
+     * @param timeout how long we wait for a first change
+     * @param unit    the unit of the timeout
+     * @return the changes or null if nothing changed before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Changes awaitChanges(long timeout, TimeUnit unit) throws InterruptedException {
+        WatchKey key = watchService.poll(timeout, unit);
+        if (key == null) {
+            return null;
+        }
+        Changes changes = new Changes();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounceMillis * MAX_DEBOUNCE_FACTOR);
+        while (key != null) {
+            process(key, changes);
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                logger.debug("Files are still changing after [{}] ms. We don't wait anymore.", debounceMillis * MAX_DEBOUNCE_FACTOR);
+                break;
+            }
+            key = watchService.poll(Math.min(debounceMillis, remaining), TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    private void process(WatchKey key, Changes changes) {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // We lost some events so we don't know what changed in this directory and below
+                logger.debug("Too many changes in [{}]. We need to crawl it again with its sub directories.", directory);
+                changes.trees.add(directory);
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            logger.trace("[{}] on [{}]", event.kind(), child);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // The directory might already have files when we start watching it so we crawl it entirely
+                try {
+                    register(child);
+                } catch (IOException e) {
+                    logger.warn("Can not watch [{}]: {}", child, e.getMessage());
+                }
+                changes.trees.add(child);
+            }
+            changes.directories.add(directory);
+        }
+        if (!key.reset()) {
+            // The directory has been removed. Its parent directory reported it.
+            directories.remove(key);
+        }
+    }
+
+    int getWatchedDirectories() {
+        return directories.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        directories.clear();
+        watchService.close();
+    }
+
+    /**
+     * What changed since the last time we asked
+     */
+    static class Changes {
+        // Directories whose content changed. Only their files need to be checked again.
+        private final Set<Path> directories = new TreeSet<>();
+        // Directories we need to crawl again with all their sub directories
+        private final Set<Path> trees = new TreeSet<>();
+
+        /**
+         * @return the directories we need to crawl again without their sub directories
+         */
+        Collection<String> getDirectories() {
+            return directories.stream()
+                    .filter(directory -> !isInTree(directory))
+                    .map(Path::toString)
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * @return the directories we need to crawl again with their sub directories
+         */
+        Collection<String> getTrees() {
+            return trees.stream()
+                    .filter(tree -> trees.stream().noneMatch(other -> !other.equals(tree) && tree.startsWith(other)))
+                    .map(Path::toString)
+                    .collect(Collectors.toList());
+        }
+
+        private boolean isInTree(Path directory) {
+            return trees.stream().anyMatch(directory::startsWith);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed pool of workers which runs the extraction (Tika, Doc generation and indexing) of files
+ * found by the crawler thread. The number of files waiting to be processed is bounded: when
+ * the queue is full, {@link #submit(Task)} blocks the crawler until a worker is available.
+ */
+class ExtractionPool {
+    private static final Logger logger = LogManager.getLogger(ExtractionPool.class);
+
+    /**
+     * A unit of work which can fail
+     */
+    interface Task {
+        void run() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    ExtractionPool(String name, int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "fs-crawler-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(threads + queueSize);
+        logger.debug("Extraction pool started with [{}] threads and a queue of [{}] files", threads, queueSize);
+    }
+
+    /**
+     * Submit a task. This call blocks if too many tasks are already waiting.
+     * @param task the task to run
+     * @throws Exception the first failure reported by a task, if any. No more task is accepted then.
+     * An {@link Error} is wrapped in an {@link ExecutionException}.
+     */
+    void submit(Task task) throws Exception {
+        checkFailure();
+        slots.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (failure.get() == null) {
+                        task.run();
+                    }
+                } catch (Throwable t) {
+                    // Errors thrown by a parser (OutOfMemoryError, StackOverflowError...) must also fail the run
+                    // so the last run date is not moved after a file which has not been indexed
+                    logger.debug("Extraction failed", t);
+                    failure.compareAndSet(null, t);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for all the submitted tasks to be processed and stop the workers.
+     * @throws Exception the first failure reported by a task, if any. An {@link Error} is wrapped in an
+     * {@link ExecutionException}.
+     */
+    void awaitCompletion() throws Exception {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            logger.trace("Waiting for extraction workers to finish");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop the pool without waiting for the pending tasks.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void checkFailure() throws Exception {
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t != null) {
+            throw new ExecutionException("Extraction failed with " + t, t);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps on disk the final JSON of every document sent to elasticsearch, so an index can be rebuilt without reading
+ * the files and extracting them again. Every change is appended as one line to compressed NDJSON segments
+ * stored in {@code ~/.fscrawler/{job_name}/_extraction_results}. A new segment is started when the current one
+ * is bigger than the segment size and at the end of every run.
+ * When we replay the segments, only the last version of the documents which have not been removed is sent.
+ * When we compact the store, only those entries are written again to new segments and the old segments are removed.
+ * Both read one segment at a time, from the newest to the oldest one.
+ */
+public class ExtractionResultStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ExtractionResultStore.class);
+
+    public static final String DIRNAME = "_extraction_results";
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d+)\\.ndjson\\.gz");
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final String OP = "op";
+    private static final String FOLDER = "folder";
+    private static final String ID = "id";
+    private static final String PATH = "path";
+    private static final String DOC = "doc";
+    private static final String OP_INDEX = "index";
+    private static final String OP_DELETE = "delete";
+    private static final String OP_DELETE_PREFIX = "delete_prefix";
+
+    /**
+     * Receives the documents to index when we replay the store
+     */
+    public interface Handler {
+        void index(boolean folder, String id, String json) throws IOException;
+    }
+
+    private final Path dir;
+    private final long segmentSize;
+    private int nextSegment;
+    private OutputStream segment;
+    private long segmentWritten;
+    private long written;
+    private long live;
+    // Only one compaction can run at a time but entries can still be written in the meantime
+    private final Object compaction = new Object();
+
+    /**
+     * Open the store of a job. New entries are written after the existing segments.
+     * @param jobDir        the job directory
+     * @param segmentSize   the uncompressed size after which we start a new segment
+     * @throws IOException if the store directory can not be read
+     */
+    public ExtractionResultStore(Path jobDir, ByteSizeValue segmentSize) throws IOException {
+        this.dir = jobDir.resolve(DIRNAME);
+        this.segmentSize = segmentSize.getBytes();
+        Files.createDirectories(dir);
+        List<Path> segments = segments();
+        if (!segments.isEmpty()) {
+            nextSegment = segmentNumber(segments.get(segments.size() - 1)) + 1;
+        }
+        logger.debug("Extraction result store [{}] opened with [{}] segments", dir, segments.size());
+    }
+
+    /**
+     * Record that a document has been indexed
+     * @param folder    true if this is a folder document
+     * @param id        the document id
+     * @param path      the real path of the file or of the folder
+     * @param json      UTF-8 encoded JSON document
+     * @param length    the length of the JSON document
+     * @throws IOException if the entry can not be written
+     */
+    public void index(boolean folder, String id, String path, byte[] json, int length) throws IOException {
+        try (JsonParser parser = JSON.createParser(json, 0, length)) {
+            write(OP_INDEX, folder, id, path, parser);
+        }
+    }
+
+    /**
+     * Record that a document has been indexed
+     * @param folder    true if this is a folder document
+     * @param id        the document id
+     * @param path      the real path of the file or of the folder
+     * @param json      JSON document
+     * @throws IOException if the entry can not be written
+     */
+    public void index(boolean folder, String id, String path, String json) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            write(OP_INDEX, folder, id, path, parser);
+        }
+    }
+
+    /**
+     * Record that a document has been removed
+     * @param folder    true if this is a folder document
+     * @param id        the document id
+     * @param path      the real path of the file or of the folder
+     * @throws IOException if the entry can not be written
+     */
+    public void delete(boolean folder, String id, String path) throws IOException {
+        write(OP_DELETE, folder, id, path, null);
+    }
+
+    /**
+     * Record that all the documents under a path have been removed
+     * @param folder    true if this applies to the folder documents
+     * @param prefix    the prefix of the real path of the removed documents
+     * @throws IOException if the entry can not be written
+     */
+    public void deletePrefix(boolean folder, String prefix) throws IOException {
+        write(OP_DELETE_PREFIX, folder, null, prefix, null);
+    }
+
+    private void write(String op, boolean folder, String id, String path, JsonParser doc) throws IOException {
+        // The line is built before taking the lock so the documents are copied in parallel
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        // The document is written last so we don't have to read it when we replay an entry we don't need
+        try (JsonGenerator generator = JSON.createGenerator(line)) {
+            generator.writeStartObject();
+            generator.writeStringField(OP, op);
+            generator.writeBooleanField(FOLDER, folder);
+            if (id != null) {
+                generator.writeStringField(ID, id);
+            }
+            if (path != null) {
+                generator.writeStringField(PATH, path);
+            }
+            if (doc != null) {
+                // The source document might be pretty printed so we copy it to have it on a single line
+                doc.nextToken();
+                generator.writeFieldName(DOC);
+                generator.copyCurrentStructure(doc);
+            }
+            generator.writeEndObject();
+        }
+        line.write('\n');
+        append(line);
+    }
+
+    private synchronized void append(ByteArrayOutputStream line) throws IOException {
+        if (segment == null) {
+            Path file = dir.resolve(String.format(Locale.ROOT, "segment-%06d.ndjson.gz", nextSegment++));
+            logger.debug("Starting extraction result segment [{}]", file);
+            segment = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            segmentWritten = 0;
+        }
+        line.writeTo(segment);
+        segmentWritten += line.size();
+        written++;
+        if (segmentWritten >= segmentSize) {
+            close();
+        }
+    }
+
+    /**
+     * Finish the current segment. The next entry will start a new one.
+     * @throws IOException if the segment can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            try {
+                segment.close();
+            } finally {
+                segment = null;
+            }
+        }
+    }
+
+    /**
+     * Send the last version of every document which has not been removed
+     * @param handler   what we do with the documents
+     * @return the number of documents which have been replayed
+     * @throws IOException if the store can not be read or if the handler fails
+     */
+    public long replay(Handler handler) throws IOException {
+        List<Path> segments;
+        synchronized (this) {
+            close();
+            segments = segments();
+        }
+        logger.debug("Replaying [{}] extraction result segments from [{}]", segments.size(), dir);
+
+        long[] replayed = new long[1];
+        lastEntries(segments, (file, live) -> read(file, live, (line, op, folder, id, path, json, parser) -> {
+            StringWriter doc = new StringWriter();
+            try (JsonGenerator generator = JSON.createGenerator(doc)) {
+                generator.copyCurrentStructure(parser);
+            }
+            handler.index(folder, id, doc.toString());
+            replayed[0]++;
+        }));
+        logger.debug("[{}] documents replayed", replayed[0]);
+        return replayed[0];
+    }
+
+    /**
+     * Tell if the segments have been written enough since the last compaction to be worth compacting. This is the
+     * case when more entries have been written than there were documents after the last compaction, so compacting
+     * costs at most twice what has been written. As we don't know what the segments contain when we open the store,
+     * the first compaction only depends on new entries being written.
+     * @return true if {@link #compact()} should be called
+     */
+    public synchronized boolean needsCompaction() {
+        return written > live;
+    }
+
+    /**
+     * Write again the last version of every document which has not been removed to new segments and remove the
+     * old segments. Entries can be written while the store is compacted: they go to the segments which come after
+     * the compacted ones.
+     * If FSCrawler stops while compacting, the next replay reads both the old segments and the new ones, which gives
+     * the same documents.
+     * @return the number of documents which have been kept
+     * @throws IOException if the store can not be read or written
+     */
+    public long compact() throws IOException {
+        synchronized (compaction) {
+            List<Path> segments;
+            long compacted;
+            CompactedSegments output;
+            synchronized (this) {
+                close();
+                segments = segments();
+                compacted = written;
+                // We never write more segments than we read so we keep their numbers for the compacted segments
+                output = new CompactedSegments(nextSegment);
+                nextSegment += segments.size();
+            }
+            logger.debug("Compacting [{}] extraction result segments from [{}]", segments.size(), dir);
+
+            try {
+                lastEntries(segments, output::copy);
+            } finally {
+                output.close();
+            }
+
+            // Oldest first so a document removed in a later segment can never come back if we stop in the middle
+            for (Path file : segments) {
+                Files.delete(file);
+            }
+            synchronized (this) {
+                written -= compacted;
+                live = output.kept;
+            }
+            logger.debug("Extraction result store [{}] compacted to [{}] documents", dir, output.kept);
+            return output.kept;
+        }
+    }
+
+    private interface SegmentReader {
+        /**
+         * Called for each segment with the lines which hold the last version of a document which has not been removed
+         */
+        void read(Path file, BitSet live) throws IOException;
+    }
+
+    /**
+     * Find the last version of every document which has not been removed. We read the segments from the newest to
+     * the oldest one, so an entry is the last version of a document if we did not see this document yet and if it
+     * is not under a path which has been removed later. We only keep in memory the ids of the documents and the
+     * removed paths, never the documents themselves or their positions.
+     */
+    private static void lastEntries(List<Path> segments, SegmentReader reader) throws IOException {
+        Set<String> seen = new HashSet<>();
+        Tombstones tombstones = new Tombstones();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Path file = segments.get(i);
+            List<Entry> entries = new ArrayList<>();
+            read(file, null, (line, op, folder, id, path, json, parser) -> {
+                entries.add(new Entry(line, op, folder, id, path));
+                parser.skipChildren();
+            });
+
+            BitSet live = new BitSet();
+            for (int j = entries.size() - 1; j >= 0; j--) {
+                Entry entry = entries.get(j);
+                if (OP_INDEX.equals(entry.op)) {
+                    if (seen.add(key(entry.folder, entry.id)) && !tombstones.removed(entry.folder, entry.path)) {
+                        live.set(entry.line);
+                    }
+                } else if (OP_DELETE.equals(entry.op)) {
+                    seen.add(key(entry.folder, entry.id));
+                } else if (OP_DELETE_PREFIX.equals(entry.op)) {
+                    tombstones.add(entry.folder, entry.path);
+                }
+            }
+            reader.read(file, live);
+        }
+    }
+
+    private interface EntryReader {
+        /**
+         * Called for each entry with the whole line. When the entry has a document, the parser is on the start
+         * of the document.
+         */
+        void read(int line, String op, boolean folder, String id, String path, String json, JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Read the entries of a segment
+     * @param file      the segment
+     * @param lines     the lines we want to read or null to read all of them
+     * @param reader    what we do with the entries
+     */
+    private static void read(Path file, BitSet lines, EntryReader reader) throws IOException {
+        try (BufferedReader segment = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String json;
+            for (int line = 0; (json = segment.readLine()) != null; line++) {
+                if (lines == null || lines.get(line)) {
+                    try {
+                        readEntry(line, json, reader);
+                    } catch (JsonProcessingException e) {
+                        logger.warn("Ignoring a broken entry in extraction result segment [{}]: {}", file, e.getMessage());
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // This happens when FSCrawler stopped while writing the segment
+            if (lines == null) {
+                logger.warn("Extraction result segment [{}] is incomplete. We keep what could be read.", file);
+            }
+        }
+    }
+
+    private static void readEntry(int line, String json, EntryReader reader) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "an entry must be an object");
+            }
+            String op = null;
+            boolean folder = false;
+            String id = null;
+            String path = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case OP:
+                        op = parser.getText();
+                        break;
+                    case FOLDER:
+                        folder = parser.getBooleanValue();
+                        break;
+                    case ID:
+                        id = parser.getText();
+                        break;
+                    case PATH:
+                        path = parser.getText();
+                        break;
+                    case DOC:
+                        reader.read(line, op, folder, id, path, json, parser);
+                        return;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            reader.read(line, op, folder, id, path, json, parser);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(file -> SEGMENT.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingInt(ExtractionResultStore::segmentNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int segmentNumber(Path segment) {
+        Matcher matcher = SEGMENT.matcher(segment.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private static String key(boolean folder, String id) {
+        return (folder ? FOLDER : DOC) + "/" + id;
+    }
+
+    private static class Entry {
+        private final int line;
+        private final String op;
+        private final boolean folder;
+        private final String id;
+        private final String path;
+
+        private Entry(int line, String op, boolean folder, String id, String path) {
+            this.line = line;
+            this.op = op;
+            this.folder = folder;
+            this.id = id;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The path prefixes which have been removed, for the files and for the folders
+     */
+    private static class Tombstones {
+        private final TreeSet<String> files = new TreeSet<>();
+        private final TreeSet<String> folders = new TreeSet<>();
+
+        private void add(boolean folder, String prefix) {
+            if (prefix != null) {
+                (folder ? folders : files).add(prefix);
+            }
+        }
+
+        /**
+         * Tell if the path starts with one of the removed prefixes. The only prefix which can match is the
+         * greatest one which is not after the path. If it does not match, a matching prefix can only be shorter
+         * than what it has in common with the path, so we look again with that.
+         */
+        private boolean removed(boolean folder, String path) {
+            TreeSet<String> prefixes = folder ? folders : files;
+            while (path != null && !prefixes.isEmpty()) {
+                String prefix = prefixes.floor(path);
+                if (prefix == null) {
+                    return false;
+                }
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+                int common = 0;
+                while (common < prefix.length() && common < path.length() && prefix.charAt(common) == path.charAt(common)) {
+                    common++;
+                }
+                path = path.substring(0, common);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes the entries we keep when compacting. We only start a new segment between two segments we read, so we
+     * never need more segments than we read.
+     */
+    private class CompactedSegments implements Closeable {
+        private int next;
+        private OutputStream output;
+        private long outputWritten;
+        private long kept;
+
+        private CompactedSegments(int firstSegment) {
+            this.next = firstSegment;
+        }
+
+        private void copy(Path file, BitSet live) throws IOException {
+            if (output != null && outputWritten >= segmentSize) {
+                close();
+            }
+            read(file, live, (line, op, folder, id, path, json, parser) -> {
+                if (output == null) {
+                    Path compacted = dir.resolve(String.format(Locale.ROOT, "segment-%06d.ndjson.gz", next++));
+                    logger.debug("Starting compacted extraction result segment [{}]", compacted);
+                    output = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)));
+                    outputWritten = 0;
+                }
+                byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+                output.write(bytes);
+                output.write('\n');
+                outputWritten += bytes.length + 1;
+                kept++;
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (output != null) {
+                try {
+                    output.close();
+                } finally {
+                    output = null;
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsCrawlerValidator;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.settings.Server;
+import fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -146,6 +147,46 @@ public class FsCrawlerImpl {
         return false;
     }
 
+    /**
+     * Index again the documents kept in the extraction result store, without reading the files
+     * @return the number of documents which have been sent to elasticsearch
+     * @throws Exception In case of error
+     */
+    public long replay() throws Exception {
+        Path jobSettingsFolder = config.resolve(settings.getName());
+        if (!Files.isDirectory(jobSettingsFolder.resolve(ExtractionResultStore.DIRNAME))) {
+            logger.warn("No extraction result has been stored for job [{}]. Set fs.result_store to true and run " +
+                    "the job before replaying it.", settings.getName());
+            return 0;
+        }
+
+        startEsClient();
+
+        String index = settings.getElasticsearch().getIndex();
+        String indexFolder = settings.getElasticsearch().getIndexFolder();
+        String pipeline = settings.getElasticsearch().getPipeline();
+        String typeName = esClient.getDefaultTypeName();
+        boolean indexFolders = settings.getFs().isIndexFolders();
+        try (ExtractionResultStore store = new ExtractionResultStore(jobSettingsFolder,
+                settings.getFs().getResultStoreSegmentSize())) {
+            // Documents are sent with the bulk processor so we use the concurrent requests it has been set up with
+            long[] documents = new long[1];
+            store.replay((folder, id, json) -> {
+                if (!folder) {
+                    esClient.index(index, typeName, id, json, pipeline);
+                    documents[0]++;
+                } else if (indexFolders) {
+                    esClient.index(indexFolder, typeName, id, json, null);
+                    documents[0]++;
+                }
+            });
+            esClient.flush();
+            // We just read all the segments so it's a good time to remove what is not needed anymore
+            store.compact();
+            return documents[0];
+        }
+    }
+
     public void start() throws Exception {
         logger.info("Starting FS crawler");
         if (loop < 0) {
@@ -157,8 +198,7 @@ public class FsCrawlerImpl {
             return;
         }
 
-        esClient.start();
-        esClient.createIndices();
+        startEsClient();
 
         // Start the crawler thread - but not if only in rest mode
         if (loop != 0) {
@@ -183,6 +223,15 @@ public class FsCrawlerImpl {
         fsCrawlerThread.start();
     }
 
+    /**
+     * Start the elasticsearch client and create the indices if needed
+     * @throws Exception In case of error
+     */
+    private void startEsClient() throws Exception {
+        esClient.start();
+        esClient.createIndices();
+    }
+
     public void close() throws InterruptedException, IOException {
         logger.debug("Closing FS crawler [{}]", settings.getName());
 
@@ -206,6 +255,9 @@ public class FsCrawlerImpl {
             logger.debug("FS crawler thread is now stopped");
         }
 
+        // Stop the tika child JVMs if any
+        TikaInstance.close();
+
         esClient.close();
         logger.debug("ES Client Manager stopped");
 
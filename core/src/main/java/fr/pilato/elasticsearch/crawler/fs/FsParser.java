@@ -24,7 +24,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public abstract class FsParser implements Runnable {
     static final Object semaphore = new Object();
     final AtomicInteger runNumber = new AtomicInteger(0);
-    boolean closed;
+    volatile boolean closed;
 
     void close() {
         this.closed = true;
@@ -20,22 +20,34 @@
 package fr.pilato.elasticsearch.crawler.fs;
 
 import fr.pilato.elasticsearch.crawler.fs.beans.Attributes;
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryState;
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryStateFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
 import fr.pilato.elasticsearch.crawler.fs.beans.DocParser;
+import fr.pilato.elasticsearch.crawler.fs.beans.FailedDocument;
+import fr.pilato.elasticsearch.crawler.fs.beans.FileState;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJob;
 import fr.pilato.elasticsearch.crawler.fs.beans.FsJobFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.PathParser;
+import fr.pilato.elasticsearch.crawler.fs.beans.RetryJournalFileHandler;
 import fr.pilato.elasticsearch.crawler.fs.beans.ScanStatistic;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.client.ESPrefixQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHit;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHitIterator;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
-import fr.pilato.elasticsearch.crawler.fs.client.ESSearchResponse;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermQuery;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
+import fr.pilato.elasticsearch.crawler.fs.framework.GlobMatcher;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import fr.pilato.elasticsearch.crawler.fs.framework.LruCache;
 import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.tika.ExtractionCache;
 import fr.pilato.elasticsearch.crawler.fs.tika.XmlDocParser;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -53,8 +65,13 @@ import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.computeVirtualPathName;
@@ -67,17 +84,44 @@ public abstract class FsParserAbstract extends FsParser {
     private static final Logger logger = LogManager.getLogger(FsParserAbstract.class);
 
     private static final String PATH_ROOT = Doc.FIELD_NAMES.PATH + "." + fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.ROOT;
+    private static final String PATH_REAL = Doc.FIELD_NAMES.PATH + "." + fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.REAL;
     private static final String FILE_FILENAME = Doc.FIELD_NAMES.FILE + "." + fr.pilato.elasticsearch.crawler.fs.beans.File.FIELD_NAMES.FILENAME;
 
     private static final String FSCRAWLER_IGNORE_FILENAME = ".fscrawlerignore";
 
-    private static final int REQUEST_SIZE = 10000;
+    private static final int SCROLL_SIZE = 1000;
+    private static final int PATH_CACHE_SIZE = 10000;
+    private static final long ACKNOWLEDGEMENT_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    // How often we check if the crawler has been closed while waiting for changes
+    private static final long WATCH_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * The JSON buffer of a document starts with the size of the file (up to 1mb) as most of the time,
+     * the text is smaller than the file, plus some room for the other fields
+     */
+    private static final long JSON_BUFFER_MAX_INITIAL_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).getBytes();
 
     final FsSettings fsSettings;
     private final FsJobFileHandler fsJobFileHandler;
+    private final DirectoryStateFileHandler directoryStateFileHandler;
+    private final RetryJournal retryJournal;
+    private final ExtractionCache extractionCache;
+    private final ExtractionResultStore resultStore;
     private final ElasticsearchClient esClient;
     private final Integer loop;
-    private final MessageDigest messageDigest;
+    private final ThreadLocal<MessageDigest> messageDigest;
+    // fs.includes, fs.excludes and the custom OCR includes are checked for every file so we compile them once
+    private final GlobMatcher includes;
+    private final GlobMatcher excludes;
+    private final GlobMatcher customOcrIncludes;
+    // fs.filters are checked against the content of every file
+    private final ContentFilter filters;
+    // When we migrate to another id hash, everything is indexed again and the documents with the previous ids are removed
+    private final boolean idHashMigration;
+    // The signature and the virtual path of a directory are needed for each of its files, so we keep the last ones
+    // we computed during a run
+    private final LruCache<String, String> directorySignatures = new LruCache<>(PATH_CACHE_SIZE);
+    private final LruCache<String, String> directoryVirtualPaths = new LruCache<>(PATH_CACHE_SIZE);
 
     /**
      * This is a temporary value we need to support both v5 and newer versions.
@@ -86,23 +130,40 @@ public abstract class FsParserAbstract extends FsParser {
     private final String typeName;
 
     private ScanStatistic stats;
+    private ExtractionPool extractionPool;
+    private DirectoryWalker directoryWalker;
+    private DirectoryWatcher directoryWatcher;
+    private boolean watchFailed;
+    private Thread compaction;
 
     FsParserAbstract(FsSettings fsSettings, Path config, ElasticsearchClient esClient, Integer loop) {
         this.fsSettings = fsSettings;
         this.fsJobFileHandler = new FsJobFileHandler(config);
+        this.directoryStateFileHandler = new DirectoryStateFileHandler(config);
+        this.retryJournal = new RetryJournal(new RetryJournalFileHandler(config), fsSettings.getName());
         this.esClient = esClient;
+        this.esClient.setBulkItemListener(retryJournal);
         this.loop = loop;
+        this.includes = GlobMatcher.compile(fsSettings.getFs().getIncludes());
+        this.excludes = GlobMatcher.compile(fsSettings.getFs().getExcludes());
+        this.customOcrIncludes = GlobMatcher.compile(fsSettings.getFs().getCustomOcrIncludes());
+        this.filters = ContentFilter.compile(fsSettings.getFs().getFilters());
+        this.idHashMigration = fsSettings.getFs().isIdHashMigration();
+        this.extractionCache = buildExtractionCache(config);
+        this.resultStore = buildResultStore(config);
         logger.debug("creating fs crawler thread [{}] for [{}] every [{}]", fsSettings.getName(),
                 fsSettings.getFs().getUrl(),
                 fsSettings.getFs().getUpdateRate());
 
-        // Create MessageDigest instance
+        // Create MessageDigest instances (one per extraction thread as they are not thread safe)
         if (fsSettings.getFs().getChecksum() != null) {
-            try {
-                messageDigest = MessageDigest.getInstance(fsSettings.getFs().getChecksum());
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException("This should never happen as we checked that previously");
-            }
+            messageDigest = ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(fsSettings.getFs().getChecksum());
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException("This should never happen as we checked that previously");
+                }
+            });
         } else {
             messageDigest = null;
         }
@@ -112,15 +173,63 @@ public abstract class FsParserAbstract extends FsParser {
 
     protected abstract FileAbstractor buildFileAbstractor();
 
+    private ExtractionCache buildExtractionCache(Path config) {
+        if (!fsSettings.getFs().isExtractionCache()) {
+            return null;
+        }
+        try {
+            return new ExtractionCache(config.resolve(fsSettings.getName()), fsSettings.getFs().getExtractionCacheSize());
+        } catch (IOException e) {
+            logger.warn("Can not open the extraction cache: {}. All the files will be extracted.", e.getMessage());
+            return null;
+        }
+    }
+
+    private ExtractionResultStore buildResultStore(Path config) {
+        if (!fsSettings.getFs().isResultStore()) {
+            return null;
+        }
+        try {
+            return new ExtractionResultStore(config.resolve(fsSettings.getName()), fsSettings.getFs().getResultStoreSegmentSize());
+        } catch (IOException e) {
+            logger.warn("Can not open the extraction result store: {}. Documents will not be stored.", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Build a watcher for the directory we are crawling if the implementation supports it
+     * @return the watcher or null if we can only crawl every update_rate
+     * @throws IOException if the directories can not be watched
+     */
+    DirectoryWatcher buildDirectoryWatcher() throws IOException {
+        return null;
+    }
+
+    /**
+     * Open a file we want to index. The stream is read only once: if its content is needed again, it is read
+     * from a temporary copy unless the implementation gives a stream which is backed by a local file.
+     * @param path  the file abstractor
+     * @param child the file
+     * @return the content of the file
+     * @throws Exception if the file can not be opened
+     */
+    InputStream getInputStream(FileAbstractor<?> path, FileAbstractModel child) throws Exception {
+        return path.getInputStream(child);
+    }
+
     @Override
     public void run() {
         logger.info("FS crawler started for [{}] for [{}] every [{}]", fsSettings.getName(),
                 fsSettings.getFs().getUrl(),
                 fsSettings.getFs().getUpdateRate());
         closed = false;
+        DirectoryWatcher.Changes changes = null;
         while (true) {
             if (closed) {
                 logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
+                stopWatching();
+                awaitCompaction();
                 return;
             }
 
@@ -138,15 +247,28 @@ public abstract class FsParserAbstract extends FsParser {
                     throw new RuntimeException(fsSettings.getFs().getUrl() + " doesn't exists.");
                 }
 
-                String rootPathId = SignTool.sign(fsSettings.getFs().getUrl());
+                // We start watching before crawling so we don't miss what changes in the meantime
+                if (fsSettings.getFs().isWatch() && directoryWatcher == null && !watchFailed) {
+                    startWatching();
+                }
+
+                if (idHashMigration) {
+                    logger.info("Migrating the ids to [{}]: all the files are indexed again. Set id_hash_migration to false once " +
+                            "this run is done.", fsSettings.getFs().getIdHash());
+                }
+
+                directorySignatures.clear();
+                directoryVirtualPaths.clear();
+                String rootPathId = signDirectory(fsSettings.getFs().getUrl());
                 stats.setRootPathId(rootPathId);
 
                 LocalDateTime scanDatenew = LocalDateTime.now();
-                LocalDateTime scanDate = getLastDateFromMeta(fsSettings.getName());
+                LocalDateTime lastrun = getLastDateFromMeta(fsSettings.getName());
+                LocalDateTime scanDate = lastrun;
 
                 // We only index the root directory once (first run)
                 // That means that we don't have a scanDate yet
-                if (scanDate == null && fsSettings.getFs().isIndexFolders()) {
+                if ((scanDate == null || idHashMigration) && fsSettings.getFs().isIndexFolders()) {
                     indexDirectory(fsSettings.getFs().getUrl());
                 }
 
@@ -154,15 +276,66 @@ public abstract class FsParserAbstract extends FsParser {
                     scanDate = LocalDateTime.MIN;
                 }
 
-                addFilesRecursively(path, fsSettings.getFs().getUrl(), scanDate);
+                replayFailedDocuments(path);
+
+                extractionPool = buildExtractionPool(path);
+                directoryWalker = buildDirectoryWalker(path);
+
+                if (changes == null) {
+                    addDirectoriesRecursively(path, Collections.singletonList(fsSettings.getFs().getUrl()), scanDate);
+                } else {
+                    addChangedDirectories(path, changes, scanDate);
+                }
 
-                updateFsJob(fsSettings.getName(), scanDatenew);
+                // We must wait for all the files to be processed before we can mark this run as done
+                if (extractionPool != null) {
+                    extractionPool.awaitCompletion();
+                    extractionPool = null;
+                }
+                if (extractionCache != null) {
+                    logger.debug("Extraction cache: {}", extractionCache);
+                }
+
+                // We can only move the last run date if elasticsearch acknowledged all the documents or
+                // if we recorded the failed ones in the retry journal
+                esClient.flush();
+                if (retryJournal.awaitAcknowledgements(ACKNOWLEDGEMENT_TIMEOUT)) {
+                    updateFsJob(fsSettings.getName(), scanDatenew);
+                } else {
+                    logger.warn("Some documents have not been acknowledged by elasticsearch. We keep the previous " +
+                            "last run date [{}] so they will be crawled again.", lastrun);
+                    if (lastrun != null) {
+                        writeFsJob(fsSettings.getName(), lastrun);
+                    }
+                }
             } catch (Exception e) {
                 logger.warn("Error while crawling {}: {}", fsSettings.getFs().getUrl(), e.getMessage());
                 if (logger.isDebugEnabled()) {
                     logger.warn("Full stacktrace", e);
                 }
             } finally {
+                directorySignatures.clear();
+                directoryVirtualPaths.clear();
+                if (directoryWalker != null) {
+                    try {
+                        directoryWalker.close();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    directoryWalker = null;
+                }
+                if (extractionPool != null) {
+                    extractionPool.close();
+                    extractionPool = null;
+                }
+                if (resultStore != null) {
+                    try {
+                        resultStore.close();
+                    } catch (IOException e) {
+                        logger.warn("Error while closing the extraction result store: {}", e.getMessage());
+                    }
+                    startCompaction();
+                }
                 if (path != null) {
                     try {
                         path.close();
@@ -175,9 +348,21 @@ public abstract class FsParserAbstract extends FsParser {
             if (loop > 0 && run >= loop) {
                 logger.info("FS crawler is stopping after {} run{}", run, run > 1 ? "s" : "");
                 closed = true;
+                stopWatching();
+                awaitCompaction();
                 return;
             }
 
+            if (directoryWatcher != null) {
+                try {
+                    changes = awaitChanges();
+                } catch (InterruptedException e) {
+                    logger.debug("Fs crawler thread has been interrupted: [{}]", e.getMessage());
+                    Thread.currentThread().interrupt();
+                }
+                continue;
+            }
+
             try {
                 logger.debug("Fs crawler is going to sleep for {}", fsSettings.getFs().getUpdateRate());
 
@@ -197,6 +382,166 @@ public abstract class FsParserAbstract extends FsParser {
         }
     }
 
+    private void startWatching() {
+        try {
+            directoryWatcher = buildDirectoryWatcher();
+            if (directoryWatcher == null) {
+                logger.warn("fs.watch is set to true but [{}] can not be watched. We will crawl it every [{}].",
+                        fsSettings.getFs().getUrl(), fsSettings.getFs().getUpdateRate());
+                watchFailed = true;
+            }
+        } catch (IOException e) {
+            logger.warn("Can not watch [{}]: {}. We will crawl it every [{}].", fsSettings.getFs().getUrl(), e.getMessage(),
+                    fsSettings.getFs().getUpdateRate());
+            watchFailed = true;
+        }
+    }
+
+    /**
+     * Compact the extraction result store in the background so the next run does not have to wait for it.
+     * Entries written by the next run go after the compacted segments.
+     */
+    private void startCompaction() {
+        if (!resultStore.needsCompaction() || (compaction != null && compaction.isAlive())) {
+            return;
+        }
+        compaction = new Thread(() -> {
+            try {
+                resultStore.compact();
+            } catch (IOException e) {
+                logger.warn("Error while compacting the extraction result store: {}", e.getMessage());
+            }
+        }, "fs-crawler-compaction");
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    private void awaitCompaction() {
+        if (compaction != null) {
+            try {
+                compaction.join();
+            } catch (InterruptedException e) {
+                logger.debug("Fs crawler thread has been interrupted while compacting: [{}]", e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+            compaction = null;
+        }
+    }
+
+    private void stopWatching() {
+        if (directoryWatcher != null) {
+            try {
+                directoryWatcher.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing the directory watcher: {}", e.getMessage());
+            }
+            directoryWatcher = null;
+        }
+    }
+
+    /**
+     * Wait for files to change. We still crawl everything every update_rate in case we missed some changes.
+     * @return the changes or null if we need to crawl everything
+     */
+    private DirectoryWatcher.Changes awaitChanges() throws InterruptedException {
+        logger.debug("Fs crawler is waiting for changes for {}", fsSettings.getFs().getUpdateRate());
+        long deadline = System.currentTimeMillis() + fsSettings.getFs().getUpdateRate().millis();
+        while (!closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                logger.debug("Nothing changed for {}. Crawling everything again...", fsSettings.getFs().getUpdateRate());
+                return null;
+            }
+            DirectoryWatcher.Changes changes = directoryWatcher.awaitChanges(Math.min(remaining, WATCH_POLL_INTERVAL),
+                    TimeUnit.MILLISECONDS);
+            if (changes != null) {
+                logger.debug("Fs crawler is now waking up: files changed");
+                return changes;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Crawl only the directories where something changed
+     */
+    private void addChangedDirectories(FileAbstractor<?> path, DirectoryWatcher.Changes changes, LocalDateTime lastScanDate)
+            throws Exception {
+        Collection<String> trees = new ArrayList<>();
+        for (String directory : changes.getTrees()) {
+            if (isWatchedDirectoryIndexable(path, directory)) {
+                trees.add(directory);
+            }
+        }
+        logger.debug("Crawling [{}] directories with their sub directories", trees.size());
+        addDirectoriesRecursively(path, trees, lastScanDate);
+
+        for (String directory : changes.getDirectories()) {
+            if (isWatchedDirectoryIndexable(path, directory)) {
+                logger.debug("Crawling [{}] without its sub directories", directory);
+                addFiles(path, directory, lastScanDate, false);
+            }
+        }
+    }
+
+    /**
+     * Check that a directory reported by the watcher still exists and that neither it nor one of its parents
+     * is excluded or contains a .fscrawlerignore file
+     */
+    private boolean isWatchedDirectoryIndexable(FileAbstractor<?> path, String directory) throws Exception {
+        if (!path.exists(directory)) {
+            return false;
+        }
+        String root = fsSettings.getFs().getUrl();
+        for (File dir = new File(directory); dir != null && dir.getPath().startsWith(root); dir = dir.getParentFile()) {
+            if (path.exists(new File(dir, FSCRAWLER_IGNORE_FILENAME).getPath())) {
+                return false;
+            }
+            if (!dir.getPath().equals(root) && !isIndexable(true, computeDirectoryVirtualPath(dir.getPath()), includes, excludes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the pool of threads which will extract and index the files if the user asked for more than one
+     * thread and if the {@link FileAbstractor} implementation can be used concurrently.
+     * @param path the file abstractor
+     * @return the extraction pool or null if files must be processed by the crawler thread
+     */
+    private ExtractionPool buildExtractionPool(FileAbstractor<?> path) {
+        int threads = fsSettings.getFs().getExtractionThreads();
+        if (threads <= 1) {
+            return null;
+        }
+        if (!path.isConcurrentAccessSupported()) {
+            logger.warn("extraction_threads is set to [{}] but [{}] does not support concurrent access. " +
+                    "Files will be extracted by the crawler thread.", threads, path.getClass().getSimpleName());
+            return null;
+        }
+        return new ExtractionPool("extract", threads, fsSettings.getFs().getExtractionQueueSize());
+    }
+
+    /**
+     * Build the walker which will list sibling directories in parallel if the user asked for more than one
+     * thread and if the {@link FileAbstractor} implementation can be used concurrently.
+     * @param path the file abstractor
+     * @return the directory walker or null if directories must be listed one by one by the crawler thread
+     */
+    private DirectoryWalker buildDirectoryWalker(FileAbstractor<?> path) {
+        int threads = fsSettings.getFs().getWalkerThreads();
+        if (threads <= 1) {
+            return null;
+        }
+        if (!path.isConcurrentAccessSupported()) {
+            logger.warn("walker_threads is set to [{}] but [{}] does not support concurrent access. " +
+                    "Directories will be listed by the crawler thread.", threads, path.getClass().getSimpleName());
+            return null;
+        }
+        return new DirectoryWalker("walker", threads, fsSettings.getFs().getWalkerQueueSize());
+    }
+
     @SuppressWarnings("unchecked")
     private LocalDateTime getLastDateFromMeta(String jobName) throws IOException {
         try {
@@ -218,18 +563,95 @@ public abstract class FsParserAbstract extends FsParser {
         // We need to round that latest date to the lower second and
         // remove 2 seconds.
         // See #82: https://github.com/dadoonet/fscrawler/issues/82
-        scanDate = scanDate.minus(2, ChronoUnit.SECONDS);
+        writeFsJob(jobName, scanDate.minus(2, ChronoUnit.SECONDS));
+    }
+
+    private void writeFsJob(String jobName, LocalDateTime lastrun) throws IOException {
         FsJob fsJob = FsJob.builder()
                 .setName(jobName)
-                .setLastrun(scanDate)
+                .setLastrun(lastrun)
                 .setIndexed(stats.getNbDocScan())
                 .setDeleted(stats.getNbDocDeleted())
                 .build();
         fsJobFileHandler.write(jobName, fsJob);
     }
 
+    /**
+     * Send again the documents elasticsearch did not acknowledge during the previous runs.
+     * Files and directories are read again as they might have changed since then.
+     */
+    private void replayFailedDocuments(FileAbstractor<?> path) throws Exception {
+        Collection<FailedDocument> documents = retryJournal.due(LocalDateTime.now());
+        if (documents.isEmpty()) {
+            return;
+        }
+        logger.info("Sending again [{}] documents elasticsearch did not acknowledge", documents.size());
+        for (FailedDocument document : documents) {
+            if (closed) {
+                logger.debug("FS crawler thread [{}] is now marked as closed...", fsSettings.getName());
+                return;
+            }
+            logger.debug("Sending again [{}]/[{}] ([{}]) after [{}] attempts", document.getIndex(), document.getId(),
+                    document.getPath(), document.getAttempts());
+            try {
+                replayFailedDocument(path, document);
+            } catch (Exception e) {
+                logger.warn("Can not send again [{}]/[{}] ([{}]): {}", document.getIndex(), document.getId(),
+                        document.getPath(), e.getMessage());
+            }
+        }
+        retryJournal.replayed(documents);
+    }
+
+    private void replayFailedDocument(FileAbstractor<?> path, FailedDocument document) throws Exception {
+        if (document.isDelete()) {
+            esDelete(document.getIndex(), document.getId(), document.getPath());
+            return;
+        }
+        if (document.getPath() == null) {
+            logger.warn("We don't know the path of [{}]/[{}]. We can not send it again.", document.getIndex(), document.getId());
+            return;
+        }
+        if (document.getIndex().equals(fsSettings.getElasticsearch().getIndexFolder())) {
+            if (path.exists(document.getPath())) {
+                indexDirectory(document.getPath());
+            }
+            return;
+        }
+        // We only read this file: listing its directory for every failed document would be too slow
+        FileAbstractModel child = path.getFile(document.getPath());
+        if (child == null || !child.isFile()) {
+            logger.debug("[{}] does not exist anymore", document.getPath());
+            return;
+        }
+        indexFile(path, child, new File(document.getPath()).getParent(), null, null);
+    }
+
+    /**
+     * Crawl some directories and their sub directories, in parallel if we have a directory walker.
+     */
+    private void addDirectoriesRecursively(FileAbstractor<?> path, Collection<String> directories, LocalDateTime lastScanDate)
+            throws Exception {
+        if (directoryWalker != null) {
+            directoryWalker.walk(directories, directory -> addFilesRecursively(path, directory, lastScanDate));
+        } else {
+            for (String directory : directories) {
+                addFilesRecursively(path, directory, lastScanDate);
+            }
+        }
+    }
+
     private void addFilesRecursively(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate)
             throws Exception {
+        addFiles(path, filepath, lastScanDate, true);
+    }
+
+    /**
+     * Crawl a directory
+     * @param recursive true if we also need to crawl its sub directories
+     */
+    private void addFiles(FileAbstractor<?> path, String filepath, LocalDateTime lastScanDate, boolean recursive)
+            throws Exception {
 
         logger.debug("indexing [{}] content", filepath);
 
@@ -238,9 +660,36 @@ public abstract class FsParserAbstract extends FsParser {
             return;
         }
 
+        // We compare the files with what we saw during the previous run to detect changes (state store)
+        // and removed files (remove deleted)
+        DirectoryState previousState = null;
+        PendingDirectoryState newState = null;
+        if (isDirectoryStateEnabled()) {
+            previousState = directoryStateFileHandler.read(fsSettings.getName(), filepath);
+            newState = new PendingDirectoryState(directoryStateFileHandler, fsSettings.getName(), filepath, previousState);
+        }
+
+        if (fsSettings.getFs().isSkipUnchangedDirectories()) {
+            // We read the date before listing the directory so a file added in the meantime is seen during the next run
+            LocalDateTime lastModified = path.getLastModifiedDate(filepath);
+            // When the watcher tells us that a directory changed, a file might have been modified in place
+            // which does not change the date of the directory
+            if (recursive && isUnchanged(previousState, lastModified)) {
+                logger.debug("[{}] did not change since [{}]. We only crawl its sub directories.", filepath, lastModified);
+                addDirectoriesRecursively(path, previousState.getDirectories(), lastScanDate);
+                return;
+            }
+            // A directory can change again within the same second without changing its date, so we don't rely
+            // on dates which are too recent. See #82: https://github.com/dadoonet/fscrawler/issues/82
+            if (lastModified.isBefore(LocalDateTime.now().minus(2, ChronoUnit.SECONDS))) {
+                newState.setLastModified(lastModified);
+            }
+        }
+
         final Collection<FileAbstractModel> children = path.getFiles(filepath);
-        Collection<String> fsFiles = new ArrayList<>();
+        Set<String> fsFiles = new HashSet<>();
         Collection<String> fsFolders = new ArrayList<>();
+        Collection<String> subdirectories = new ArrayList<>();
 
         if (children != null) {
             boolean ignoreFolder = false;
@@ -261,34 +710,39 @@ public abstract class FsParserAbstract extends FsParser {
                     String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, filename).toString());
 
                     // https://github.com/dadoonet/fscrawler/issues/1 : Filter documents
-                    boolean isIndexable = isIndexable(child.isDirectory(), virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes());
+                    boolean isIndexable = isIndexable(child.isDirectory(), virtualFileName, includes, excludes);
 
                     logger.debug("[{}] can be indexed: [{}]", virtualFileName, isIndexable);
                     if (isIndexable) {
                         if (child.isFile()) {
                             logger.debug("  - file: {}", virtualFileName);
                             fsFiles.add(filename);
-                            if (child.getLastModifiedDate().isAfter(lastScanDate) ||
-                                    (child.getCreationDate() != null && child.getCreationDate().isAfter(lastScanDate))) {
+                            FileState previousFileState = previousState == null ? null : previousState.getFiles().get(filename);
+                            String previousChecksum = previousFileState == null ? null : previousFileState.getChecksum();
+                            if (isModified(child, previousFileState, lastScanDate)) {
                                 if (isFileSizeUnderLimit(fsSettings.getFs().getIgnoreAbove(), child.getSize())) {
-                                    try {
-                                        indexFile(child, stats, filepath,
-                                                fsSettings.getFs().isIndexContent() || fsSettings.getFs().isStoreSource() ? path.getInputStream(child) : null, child.getSize());
-                                        stats.addFile();
-                                    } catch (java.io.FileNotFoundException e) {
-                                        if (fsSettings.getFs().isContinueOnError()) {
-                                            logger.warn("Unable to open Input Stream for {}, skipping...: {}", filename, e.getMessage());
-                                        } else {
-                                            throw e;
-                                        }
+                                    final PendingDirectoryState state = newState;
+                                    if (state != null) {
+                                        state.submitted();
+                                    }
+                                    if (extractionPool != null) {
+                                        extractionPool.submit(() -> indexFile(path, child, filepath, previousFileState, state));
+                                    } else {
+                                        indexFile(path, child, filepath, previousFileState, state);
                                     }
                                 } else {
                                     logger.debug("file [{}] has a size [{}] above the limit [{}]. We skip it.", filename,
                                             new ByteSizeValue(child.getSize()), fsSettings.getFs().getIgnoreAbove());
+                                    if (newState != null) {
+                                        newState.put(filename, toFileState(child, null));
+                                    }
                                 }
                             } else {
                                 logger.debug("    - not modified: creation date {} , file date {}, last scan date {}",
                                         child.getCreationDate(), child.getLastModifiedDate(), lastScanDate);
+                                if (newState != null) {
+                                    newState.put(filename, toFileState(child, previousChecksum));
+                                }
                             }
                         } else if (child.isDirectory()) {
                             logger.debug("  - folder: {}", filename);
@@ -296,7 +750,10 @@ public abstract class FsParserAbstract extends FsParser {
                                 fsFolders.add(child.getFullpath());
                                 indexDirectory(child.getFullpath());
                             }
-                            addFilesRecursively(path, child.getFullpath(), lastScanDate);
+                            subdirectories.add(child.getFullpath());
+                            if (newState != null) {
+                                newState.putDirectory(child.getFullpath());
+                            }
                         } else {
                             logger.debug("  - other: {}", filename);
                             logger.debug("Not a file nor a dir. Skipping {}", child.getFullpath());
@@ -308,39 +765,53 @@ public abstract class FsParserAbstract extends FsParser {
             }
         }
 
-        // TODO Optimize
-        // if (path.isDirectory() && path.lastModified() > lastScanDate
-        // && lastScanDate != 0) {
+        // All the files of this directory have been listed. The state is written once they are all processed.
+        if (newState != null) {
+            newState.done();
+        }
+
+        if (recursive) {
+            addDirectoriesRecursively(path, subdirectories, lastScanDate);
+        }
 
-        if (fsSettings.getFs().isRemoveDeleted()) {
+        if (fsSettings.getFs().isRemoveDeleted() && previousState != null) {
+            removeDeleted(filepath, previousState, fsFiles, new HashSet<>(subdirectories));
+        } else if (fsSettings.getFs().isRemoveDeleted()) {
+            // We don't know what was in this directory during the previous run so we need to ask elasticsearch
             logger.debug("Looking for removed files in [{}]...", filepath);
-            Collection<String> esFiles = getFileDirectory(filepath);
-
-            // for the delete files
-            for (String esfile : esFiles) {
-                logger.trace("Checking file [{}]", esfile);
-
-                String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, esfile).toString());
-                if (isIndexable(false, virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes())
-                        && !fsFiles.contains(esfile)) {
-                    logger.trace("Removing file [{}] in elasticsearch", esfile);
-                    esDelete(fsSettings.getElasticsearch().getIndex(), generateIdFromFilename(esfile, filepath));
-                    stats.removeFile();
+            for (String root : signatures(filepath)) {
+                try (ESSearchHitIterator esFiles = scrollFileDirectory(filepath, root)) {
+                    // for the delete files
+                    while (!closed && esFiles.hasNext()) {
+                        String esfile = getFileName(esFiles.next(), filepath);
+                        logger.trace("Checking file [{}]", esfile);
+
+                        String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, esfile).toString());
+                        if (isIndexable(false, virtualFileName, includes, excludes)
+                                && !fsFiles.contains(esfile)) {
+                            logger.trace("Removing file [{}] in elasticsearch", esfile);
+                            esDeleteFile(esfile, filepath);
+                            stats.removeFile();
+                        }
+                    }
                 }
             }
 
             if (fsSettings.getFs().isIndexFolders()) {
                 logger.debug("Looking for removed directories in [{}]...", filepath);
-                Collection<String> esFolders = getFolderDirectory(filepath);
-
-                // for the delete folder
-                for (String esfolder : esFolders) {
-                    String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, esfolder).toString());
-                    if (isIndexable(true, virtualFileName, fsSettings.getFs().getIncludes(), fsSettings.getFs().getExcludes())) {
-                        logger.trace("Checking directory [{}]", esfolder);
-                        if (!fsFolders.contains(esfolder)) {
-                            logger.trace("Removing recursively directory [{}] in elasticsearch", esfolder);
-                            removeEsDirectoryRecursively(esfolder);
+                for (String root : signatures(filepath)) {
+                    try (ESSearchHitIterator esFolders = scrollFolderDirectory(filepath, root)) {
+                        // for the delete folder
+                        while (!closed && esFolders.hasNext()) {
+                            String esfolder = getFolderName(esFolders.next());
+                            String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, esfolder).toString());
+                            if (isIndexable(true, virtualFileName, includes, excludes)) {
+                                logger.trace("Checking directory [{}]", esfolder);
+                                if (!fsFolders.contains(esfolder)) {
+                                    logger.trace("Removing recursively directory [{}] in elasticsearch", esfolder);
+                                    removeEsDirectoryRecursively(esfolder);
+                                }
+                            }
                         }
                     }
                 }
@@ -348,78 +819,200 @@ public abstract class FsParserAbstract extends FsParser {
         }
     }
 
-    // TODO Optimize it. We can probably use a search for a big array of filenames instead of
-    // Searching fo 10000 files (which is somehow limited).
-    private Collection<String> getFileDirectory(String path)
+    /**
+     * Remove from elasticsearch the files and directories we saw during the previous run but which are not here anymore
+     * @param filepath the directory
+     * @param previousState the directory state from the previous run
+     * @param fsFiles the files we found in the directory
+     * @param fsDirectories the sub directories we found in the directory
+     */
+    private void removeDeleted(String filepath, DirectoryState previousState, Set<String> fsFiles, Set<String> fsDirectories)
             throws Exception {
+        logger.debug("Looking for removed files in [{}] since the previous run...", filepath);
+        for (String file : previousState.getFiles().keySet()) {
+            String virtualFileName = computeVirtualPathName(stats.getRootPath(), new File(filepath, file).toString());
+            if (!fsFiles.contains(file) &&
+                    isIndexable(false, virtualFileName, includes, excludes)) {
+                logger.trace("Removing file [{}] in elasticsearch", file);
+                esDeleteFile(file, filepath);
+                stats.removeFile();
+            }
+        }
 
-        // If the crawler is being closed, we return
-        if (closed) {
-            return Collections.emptyList();
+        for (String directory : previousState.getDirectories()) {
+            String virtualFileName = computeDirectoryVirtualPath(directory);
+            if (!fsDirectories.contains(directory) &&
+                    isIndexable(true, virtualFileName, includes, excludes)) {
+                logger.trace("Removing recursively directory [{}] in elasticsearch", directory);
+                removeEsDirectoryRecursively(directory);
+            }
         }
+    }
 
-        logger.trace("Querying elasticsearch for files in dir [{}:{}]", PATH_ROOT, SignTool.sign(path));
-        Collection<String> files = new ArrayList<>();
-        ESSearchResponse response = esClient.search(
+    /**
+     * Iterate over the files elasticsearch knows in a directory. Only the stored filename is fetched.
+     */
+    private ESSearchHitIterator scrollFileDirectory(String path, String root) throws IOException {
+        logger.trace("Querying elasticsearch for files in dir [{}] [{}:{}]", path, PATH_ROOT, root);
+        return esClient.scroll(
                 new ESSearchRequest()
                         .withIndex(fsSettings.getElasticsearch().getIndex())
-                        .withSize(REQUEST_SIZE)
+                        .withSize(SCROLL_SIZE)
                         .addField(FILE_FILENAME)
-                        .withESQuery(new ESTermQuery(PATH_ROOT, SignTool.sign(path))));
-
-        logger.trace("Response [{}]", response.toString());
-        if (response.getHits() != null) {
-            for (ESSearchHit hit : response.getHits()) {
-                String name;
-                if (hit.getFields() != null
-                        && hit.getFields().get(FILE_FILENAME) != null) {
-                    // In case someone disabled _source which is not recommended
-                    name = hit.getFields().get(FILE_FILENAME).getValue();
-                } else {
-                    // Houston, we have a problem ! We can't get the old files from ES
-                    logger.warn("Can't find stored field name to check existing filenames in path [{}]. " +
-                            "Please set store: true on field [{}]", path, FILE_FILENAME);
-                    throw new RuntimeException("Mapping is incorrect: please set stored: true on field [" +
-                            FILE_FILENAME + "].");
-                }
-                files.add(name);
-            }
+                        .withESQuery(new ESTermQuery(PATH_ROOT, root)));
+    }
+
+    private String getFileName(ESSearchHit hit, String path) {
+        if (hit.getFields() != null
+                && hit.getFields().get(FILE_FILENAME) != null) {
+            // In case someone disabled _source which is not recommended
+            return hit.getFields().get(FILE_FILENAME).getValue();
         }
+        // Houston, we have a problem ! We can't get the old files from ES
+        logger.warn("Can't find stored field name to check existing filenames in path [{}]. " +
+                "Please set store: true on field [{}]", path, FILE_FILENAME);
+        throw new RuntimeException("Mapping is incorrect: please set stored: true on field [" +
+                FILE_FILENAME + "].");
+    }
 
-        logger.trace("We found: {}", files);
+    /**
+     * Iterate over the sub directories elasticsearch knows in a directory
+     */
+    private ESSearchHitIterator scrollFolderDirectory(String path, String root) throws IOException {
+        logger.trace("Querying elasticsearch for folders in dir [{}]", path);
+        return esClient.scroll(
+                new ESSearchRequest()
+                        .withIndex(fsSettings.getElasticsearch().getIndexFolder())
+                        .withSize(SCROLL_SIZE)
+                        .withESQuery(new ESTermQuery(fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.ROOT, root)));
+    }
 
-        return files;
+    private static String getFolderName(ESSearchHit hit) {
+        return hit.getSourceAsMap().get(fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.REAL).toString();
     }
 
-    private Collection<String> getFolderDirectory(String path) throws Exception {
-        Collection<String> files = new ArrayList<>();
+    /**
+     * We keep the state of each directory on disk if we need it to detect changes, removed files
+     * or unchanged directories
+     */
+    private boolean isDirectoryStateEnabled() {
+        return fsSettings.getFs().isStateStore() || fsSettings.getFs().isRemoveDeleted() ||
+                fsSettings.getFs().isSkipUnchangedDirectories();
+    }
 
-        // If the crawler is being closed, we return
-        if (closed) {
-            return files;
+    /**
+     * A directory did not change since the previous run if it has the same modification date and if all its
+     * files have been processed during the previous run. Its files might have been modified in place though.
+     */
+    private boolean isUnchanged(DirectoryState previous, LocalDateTime lastModified) {
+        return !idHashMigration && previous != null && previous.getLastModified() != null &&
+                previous.getLastModified().equals(lastModified);
+    }
+
+    private static FileState toFileState(FileAbstractModel child, String checksum) {
+        return new FileState(child.getSize(), child.getLastModifiedDate(), child.getInode(), checksum);
+    }
+
+    /**
+     * Check if a file must be indexed.
+     * When we have a state store, a file is modified if we did not see it during the previous run or if its size,
+     * its modification date or its inode changed. Otherwise we compare its dates with the last scan date.
+     * When we migrate the ids, all the files are modified.
+     */
+    private boolean isModified(FileAbstractModel child, FileState previous, LocalDateTime lastScanDate) {
+        if (idHashMigration) {
+            return true;
+        }
+        if (fsSettings.getFs().isStateStore()) {
+            return previous == null ||
+                    previous.getSize() != child.getSize() ||
+                    !Objects.equals(previous.getLastModified(), child.getLastModifiedDate()) ||
+                    !Objects.equals(previous.getInode(), child.getInode());
         }
+        return child.getLastModifiedDate().isAfter(lastScanDate) ||
+                (child.getCreationDate() != null && child.getCreationDate().isAfter(lastScanDate));
+    }
 
-        ESSearchResponse response = esClient.search(
-                new ESSearchRequest()
-                        .withIndex(fsSettings.getElasticsearch().getIndexFolder())
-                        .withSize(REQUEST_SIZE) // TODO: WHAT? DID I REALLY WROTE THAT? :p
-                        .withESQuery(new ESTermQuery(fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.ROOT, SignTool.sign(path))));
+    /**
+     * Open a file and index it. This can be called from the crawler thread or from an extraction thread.
+     * @param previous the state of the file during the previous run if any
+     * @param state the directory state we need to update if we keep it, null otherwise
+     */
+    private void indexFile(FileAbstractor<?> path, FileAbstractModel child, String filepath,
+                           FileState previous, PendingDirectoryState state) throws Exception {
+        boolean recorded = false;
+        try {
+            if (closed) {
+                logger.debug("FS crawler thread [{}] is now marked as closed. Skipping [{}]...", fsSettings.getName(), child.getName());
+                return;
+            }
 
-        if (response.getHits() != null) {
-            for (ESSearchHit hit : response.getHits()) {
-                String name = hit.getSourceAsMap().get(fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.REAL).toString();
-                files.add(name);
+            // Only the modification date changed: if the content is the same, no need to extract it again
+            if (state != null && fsSettings.getFs().isStateStore() && isTouched(path, child, previous)) {
+                logger.debug("    - not modified: [{}] has the same checksum as during the previous run", child.getName());
+                state.put(child.getName(), toFileState(child, previous.getChecksum()));
+                recorded = true;
+                return;
+            }
+
+            String checksum = indexFile(child, stats, filepath,
+                    fsSettings.getFs().isIndexContent() || fsSettings.getFs().isStoreSource() ? getInputStream(path, child) : null, child.getSize());
+            if (idHashMigration && !fsSettings.getFs().isFilenameAsId()) {
+                esDeleteLegacyId(fsSettings.getElasticsearch().getIndex(), new File(filepath, child.getName()).toString());
+            }
+            stats.addFile();
+            if (state != null) {
+                state.put(child.getName(), toFileState(child, checksum));
+                recorded = true;
+            }
+        } catch (java.io.FileNotFoundException e) {
+            if (fsSettings.getFs().isContinueOnError()) {
+                logger.warn("Unable to open Input Stream for {}, skipping...: {}", child.getName(), e.getMessage());
+            } else {
+                throw e;
+            }
+        } finally {
+            if (state != null) {
+                if (!recorded) {
+                    state.incomplete();
+                }
+                if (!recorded && previous != null) {
+                    // We keep what we knew about the file so it can still be removed if needed. As its state
+                    // differs from the file on disk, we will try again to index it during the next run.
+                    state.put(child.getName(), previous);
+                }
+                state.done();
             }
         }
+    }
 
-        return files;
+    /**
+     * Check if a file has only been touched since the previous run, ie only its modification date changed.
+     * We can only know that if we computed a checksum during the previous run.
+     */
+    private boolean isTouched(FileAbstractor<?> path, FileAbstractModel child, FileState previous) throws Exception {
+        if (idHashMigration || messageDigest == null || previous == null || previous.getChecksum() == null ||
+                previous.getSize() != child.getSize() || !Objects.equals(previous.getInode(), child.getInode())) {
+            return false;
+        }
+        MessageDigest md = messageDigest.get();
+        md.reset();
+        byte[] buffer = new byte[8192];
+        try (InputStream inputStream = path.getInputStream(child)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+        return previous.getChecksum().equals(SignTool.toHex(md.digest()));
     }
 
     /**
      * Index a file
+     * @return the checksum of the file if we computed it, null otherwise
      */
-    private void indexFile(FileAbstractModel fileAbstractModel, ScanStatistic stats, String dirname, InputStream inputStream,
-                           long filesize) throws Exception {
+    private String indexFile(FileAbstractModel fileAbstractModel, ScanStatistic stats, String dirname, InputStream inputStream,
+                             long filesize) throws Exception {
         final String filename = fileAbstractModel.getName();
         final LocalDateTime created = fileAbstractModel.getCreationDate();
         final LocalDateTime lastModified = fileAbstractModel.getLastModifiedDate();
@@ -452,7 +1045,7 @@ public abstract class FsParserAbstract extends FsParser {
 
                 // Path
                 // Encoded version of the dir this file belongs to
-                doc.getPath().setRoot(SignTool.sign(dirname));
+                doc.getPath().setRoot(signDirectory(dirname));
                 // The virtual URL (not including the initial root dir)
                 doc.getPath().setVirtual(computeVirtualPathName(stats.getRootPath(), fullFilename));
                 // The real and complete filename
@@ -471,41 +1064,62 @@ public abstract class FsParserAbstract extends FsParser {
                 // Attributes
 
                 // If needed, we generate the content in addition to metadata
+                JsonBuffer json = null;
+                boolean indexable;
                 if (fsSettings.getFs().isJsonSupport()) {
                     // https://github.com/dadoonet/fscrawler/issues/5 : Support JSon files
                     doc.setObject(DocParser.asMap(read(inputStream)));
+                    indexable = isIndexable(doc.getContent(), filters);
                 } else if (fsSettings.getFs().isXmlSupport()) {
                     // https://github.com/dadoonet/fscrawler/issues/185 : Support Xml files
                     doc.setObject(XmlDocParser.generateMap(inputStream));
+                    indexable = isIndexable(doc.getContent(), filters);
                 } else {
+                    // We don't need the content as a String so it is written directly to the JSON document
+                    // and the filters are checked while the content is extracted
+                    json = new JsonBuffer((int) Math.min(filesize, JSON_BUFFER_MAX_INITIAL_SIZE) + DocParser.JSON_FIELDS_SIZE);
                     // Extracting content with Tika
-                    generate(fsSettings, inputStream, filename, doc, messageDigest, filesize);
+                    indexable = generate(fsSettings, inputStream, filename, doc,
+                            messageDigest == null ? null : messageDigest.get(), filesize, json, filters, extractionCache,
+                            customOcrIncludes);
                 }
 
                 // We index the data structure
-                if (isIndexable(doc.getContent(), fsSettings.getFs().getFilters())) {
+                if (!indexable) {
+                    logger.debug("We ignore file [{}] because it does not match all the patterns {}", filename,
+                            filters);
+                } else if (json != null) {
+                    DocParser.toJson(doc, json);
                     esIndex(fsSettings.getElasticsearch().getIndex(),
                             generateIdFromFilename(filename, dirname),
-                            DocParser.toJson(doc),
+                            new File(dirname, filename).toString(),
+                            json,
                             fsSettings.getElasticsearch().getPipeline());
                 } else {
-                    logger.debug("We ignore file [{}] because it does not match all the patterns {}", filename,
-                            fsSettings.getFs().getFilters());
+                    esIndex(fsSettings.getElasticsearch().getIndex(),
+                            generateIdFromFilename(filename, dirname),
+                            new File(dirname, filename).toString(),
+                            DocParser.toCompactJson(doc),
+                            fsSettings.getElasticsearch().getPipeline());
                 }
+                return doc.getFile().getChecksum();
             } else {
                 if (fsSettings.getFs().isJsonSupport()) {
                     // We index the json content directly
                     esIndex(fsSettings.getElasticsearch().getIndex(),
                             generateIdFromFilename(filename, dirname),
+                            new File(dirname, filename).toString(),
                             read(inputStream),
                             fsSettings.getElasticsearch().getPipeline());
                 } else if (fsSettings.getFs().isXmlSupport()) {
                     // We index the xml content directly
                     esIndex(fsSettings.getElasticsearch().getIndex(),
                             generateIdFromFilename(filename, dirname),
+                            new File(dirname, filename).toString(),
                             XmlDocParser.generate(inputStream),
                             fsSettings.getElasticsearch().getPipeline());
                 }
+                return null;
             }
         } finally {
             // Let's close the stream
@@ -516,7 +1130,70 @@ public abstract class FsParserAbstract extends FsParser {
     }
 
     private String generateIdFromFilename(String filename, String filepath) throws NoSuchAlgorithmException {
-        return fsSettings.getFs().isFilenameAsId() ? filename : SignTool.sign((new File(filepath, filename)).toString());
+        return fsSettings.getFs().isFilenameAsId() ? filename : sign((new File(filepath, filename)).toString());
+    }
+
+    /**
+     * Sign a path to generate an id or a path.root value with the id hash of the job
+     */
+    private String sign(String path) throws NoSuchAlgorithmException {
+        return SignTool.sign(path, fsSettings.getFs().getIdHash());
+    }
+
+    /**
+     * Sign a directory path. As we need it for all the files of the directory, it is cached during the run.
+     */
+    private String signDirectory(String path) throws NoSuchAlgorithmException {
+        String signature = directorySignatures.get(path);
+        if (signature == null) {
+            signature = sign(path);
+            directorySignatures.put(path, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Compute the virtual path of a directory. It is cached during the run.
+     */
+    private String computeDirectoryVirtualPath(String path) {
+        String virtualPath = directoryVirtualPaths.get(path);
+        if (virtualPath == null) {
+            virtualPath = computeVirtualPathName(stats.getRootPath(), path);
+            directoryVirtualPaths.put(path, virtualPath);
+        }
+        return virtualPath;
+    }
+
+    /**
+     * The signatures a directory can have in elasticsearch as its sub files and sub directories might have been
+     * indexed with the previous id hash when we are migrating the ids
+     */
+    private Collection<String> signatures(String path) throws NoSuchAlgorithmException {
+        if (idHashMigration) {
+            return Arrays.asList(signDirectory(path), SignTool.sign(path));
+        }
+        return Collections.singletonList(signDirectory(path));
+    }
+
+    /**
+     * Remove a file from elasticsearch
+     */
+    private void esDeleteFile(String filename, String filepath) throws NoSuchAlgorithmException {
+        esDelete(fsSettings.getElasticsearch().getIndex(), generateIdFromFilename(filename, filepath),
+                new File(filepath, filename).toString());
+        if (idHashMigration && !fsSettings.getFs().isFilenameAsId()) {
+            esDeleteLegacyId(fsSettings.getElasticsearch().getIndex(), new File(filepath, filename).toString());
+        }
+    }
+
+    /**
+     * Remove the document which has been indexed with the previous id hash
+     */
+    private void esDeleteLegacyId(String index, String path) throws NoSuchAlgorithmException {
+        String legacyId = SignTool.sign(path);
+        if (!legacyId.equals(sign(path))) {
+            esDelete(index, legacyId, path);
+        }
     }
 
     private String read(InputStream input) throws IOException {
@@ -534,6 +1211,7 @@ public abstract class FsParserAbstract extends FsParser {
     private void indexDirectory(String id, fr.pilato.elasticsearch.crawler.fs.beans.Path path) throws Exception {
         esIndex(fsSettings.getElasticsearch().getIndexFolder(),
                 id,
+                path.getReal(),
                 PathParser.toJson(path),
                 null);
     }
@@ -548,11 +1226,14 @@ public abstract class FsParserAbstract extends FsParser {
         pathObject.setReal(path);
         String rootdir = path.substring(0, path.lastIndexOf(File.separator));
         // Encoded version of the parent dir
-        pathObject.setRoot(SignTool.sign(rootdir));
+        pathObject.setRoot(signDirectory(rootdir));
         // The virtual URL (not including the initial root dir)
-        pathObject.setVirtual(computeVirtualPathName(stats.getRootPath(), path));
+        pathObject.setVirtual(computeDirectoryVirtualPath(path));
 
-        indexDirectory(SignTool.sign(path), pathObject);
+        indexDirectory(signDirectory(path), pathObject);
+        if (idHashMigration) {
+            esDeleteLegacyId(fsSettings.getElasticsearch().getIndexFolder(), path);
+        }
     }
 
     /**
@@ -560,28 +1241,89 @@ public abstract class FsParserAbstract extends FsParser {
      */
     private void removeEsDirectoryRecursively(final String path) throws Exception {
         logger.debug("Delete folder [{}]", path);
-        Collection<String> listFile = getFileDirectory(path);
+        if (closed) {
+            return;
+        }
+
+        // Everything which is under this directory is removed at once by elasticsearch
+        String prefix = path.concat(File.separator);
+        long files = esClient.deleteByQuery(fsSettings.getElasticsearch().getIndex(), new ESPrefixQuery(PATH_REAL, prefix));
+        logger.debug("[{}] files removed from [{}]", files, path);
+        if (resultStore != null) {
+            resultStore.deletePrefix(false, prefix);
+        }
+
+        if (fsSettings.getFs().isIndexFolders()) {
+            long folders = esClient.deleteByQuery(fsSettings.getElasticsearch().getIndexFolder(),
+                    new ESPrefixQuery(fr.pilato.elasticsearch.crawler.fs.beans.Path.FIELD_NAMES.REAL, prefix));
+            logger.debug("[{}] sub directories removed from [{}]", folders, path);
+            if (resultStore != null) {
+                resultStore.deletePrefix(true, prefix);
+            }
+            esDelete(fsSettings.getElasticsearch().getIndexFolder(), signDirectory(path), path);
+            if (idHashMigration) {
+                esDeleteLegacyId(fsSettings.getElasticsearch().getIndexFolder(), path);
+            }
+        }
 
-        for (String esfile : listFile) {
-            esDelete(fsSettings.getElasticsearch().getIndex(), SignTool.sign(path.concat(File.separator).concat(esfile)));
+        if (isDirectoryStateEnabled()) {
+            removeDirectoryStateRecursively(path);
+        }
+    }
+
+    /**
+     * If the directory comes back, all its files must be indexed again so we forget what we knew about it
+     */
+    private void removeDirectoryStateRecursively(String path) throws IOException {
+        DirectoryState state = directoryStateFileHandler.read(fsSettings.getName(), path);
+        if (state != null) {
+            for (String directory : state.getDirectories()) {
+                removeDirectoryStateRecursively(directory);
+            }
+            directoryStateFileHandler.remove(fsSettings.getName(), path);
         }
+    }
 
-        Collection<String> listFolder = getFolderDirectory(path);
-        for (String esfolder : listFolder) {
-            removeEsDirectoryRecursively(esfolder);
+    /**
+     * Add to bulk an IndexRequest in JSon format. The buffer is sent as is, without any copy.
+     */
+    void esIndex(String index, String id, String path, JsonBuffer json, String pipeline) {
+        logger.debug("Indexing {}/{}/{}?pipeline={}", index, typeName, id, pipeline);
+        if (logger.isTraceEnabled()) {
+            logger.trace("JSon indexed : {}", json);
         }
 
-        esDelete(fsSettings.getElasticsearch().getIndexFolder(), SignTool.sign(path));
+        if (!closed) {
+            retryJournal.track(index, id, path, false);
+            if (resultStore != null) {
+                try {
+                    resultStore.index(isFolderIndex(index), id, path, json.bytes(), json.size());
+                } catch (IOException e) {
+                    logger.warn("Can not store the extraction result of [{}]: {}", path, e.getMessage());
+                }
+            }
+            esClient.index(index, typeName, id, json.bytes(), json.size(), pipeline);
+        } else {
+            logger.warn("trying to add new file while closing crawler. Document [{}]/[{}]/[{}] has been ignored", index, typeName, id);
+        }
     }
 
     /**
      * Add to bulk an IndexRequest in JSon format
      */
-    void esIndex(String index, String id, String json, String pipeline) {
+    void esIndex(String index, String id, String path, String json, String pipeline) {
         logger.debug("Indexing {}/{}/{}?pipeline={}", index, typeName, id, pipeline);
         logger.trace("JSon indexed : {}", json);
 
         if (!closed) {
+            retryJournal.track(index, id, path, false);
+            if (resultStore != null) {
+                try {
+                    resultStore.index(isFolderIndex(index), id, path, json);
+                } catch (IOException e) {
+                    logger.warn("Can not store the extraction result of [{}]: {}", path, e.getMessage());
+                }
+            }
             esClient.index(index, typeName, id, json, pipeline);
         } else {
             logger.warn("trying to add new file while closing crawler. Document [{}]/[{}]/[{}] has been ignored", index, typeName, id);
@@ -591,13 +1333,25 @@ public abstract class FsParserAbstract extends FsParser {
     /**
      * Add to bulk a DeleteRequest
      */
-    void esDelete(String index, String id) {
+    void esDelete(String index, String id, String path) {
         logger.debug("Deleting {}/{}/{}", index, typeName, id);
         if (!closed) {
+            retryJournal.track(index, id, path, true);
+            if (resultStore != null) {
+                try {
+                    resultStore.delete(isFolderIndex(index), id, path);
+                } catch (IOException e) {
+                    logger.warn("Can not store the removal of [{}]: {}", path, e.getMessage());
+                }
+            }
             esClient.delete(index, typeName, id);
         } else {
             logger.warn("trying to remove a file while closing crawler. Document [{}]/[{}]/[{}] has been ignored", index, typeName, id);
         }
     }
 
+    private boolean isFolderIndex(String index) {
+        return index.equals(fsSettings.getElasticsearch().getIndexFolder());
+    }
+
 }
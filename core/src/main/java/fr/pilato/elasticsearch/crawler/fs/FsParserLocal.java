@@ -20,11 +20,19 @@
 package fr.pilato.elasticsearch.crawler.fs;
 
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.crawler.fs.FileAbstractorFile;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import org.apache.tika.io.TikaInputStream;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class FsParserLocal extends FsParserAbstract {
 
@@ -35,4 +43,22 @@ public class FsParserLocal extends FsParserAbstract {
     protected FileAbstractor buildFileAbstractor() {
         return new FileAbstractorFile(fsSettings);
     }
+
+    @Override
+    DirectoryWatcher buildDirectoryWatcher() throws IOException {
+        return new DirectoryWatcher(Paths.get(fsSettings.getFs().getUrl()), fsSettings.getFs().getWatchDebounce().millis());
+    }
+
+    /**
+     * Tika and the readers which need the content more than once use the file directly
+     */
+    @Override
+    InputStream getInputStream(FileAbstractor<?> path, FileAbstractModel child) throws Exception {
+        try {
+            return TikaInputStream.get(Paths.get(child.getFullpath()));
+        } catch (NoSuchFileException | AccessDeniedException e) {
+            // Like the other implementations, we tell that the file can not be opened
+            throw new FileNotFoundException(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryState;
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryStateFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FileState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the state of the files of a directory while they are being processed, possibly by
+ * several extraction threads, and writes it to disk once the last file of the directory is done.
+ * Nothing is written if the state did not change since the previous run.
+ */
+class PendingDirectoryState {
+    private static final Logger logger = LogManager.getLogger(PendingDirectoryState.class);
+
+    private final DirectoryStateFileHandler handler;
+    private final String jobName;
+    private final String path;
+    private final DirectoryState previous;
+    private final Map<String, FileState> files = new ConcurrentHashMap<>();
+    private final Set<String> directories = new HashSet<>();
+    private LocalDateTime lastModified;
+    // Set when a file could not be processed: we will need to list the directory again
+    private volatile boolean incomplete;
+
+    // We start at 1 for the listing of the directory itself
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    PendingDirectoryState(DirectoryStateFileHandler handler, String jobName, String path, DirectoryState previous) {
+        this.handler = handler;
+        this.jobName = jobName;
+        this.path = path;
+        this.previous = previous;
+    }
+
+    /**
+     * Record the state of a file
+     */
+    void put(String filename, FileState state) {
+        files.put(filename, state);
+    }
+
+    /**
+     * Record a sub directory. This must be called before the listing is {@link #done()}.
+     */
+    void putDirectory(String directory) {
+        directories.add(directory);
+    }
+
+    /**
+     * Record the modification date of the directory, read before listing it.
+     * This must be called before the listing is {@link #done()}.
+     */
+    void setLastModified(LocalDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * A file could not be processed. The modification date of the directory is not kept.
+     */
+    void incomplete() {
+        incomplete = true;
+    }
+
+    /**
+     * A file is going to be processed. {@link #done()} must be called once it's processed.
+     */
+    void submitted() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * A file has been processed or the directory listing is done. When nothing is pending anymore,
+     * the directory state is written to disk.
+     */
+    void done() throws IOException {
+        if (pending.decrementAndGet() == 0) {
+            DirectoryState state = new DirectoryState(path, new HashMap<>(files), directories, incomplete ? null : lastModified);
+            if (state.equals(previous)) {
+                logger.trace("State of [{}] did not change", path);
+                return;
+            }
+            logger.trace("Writing state of [{}] with [{}] files and [{}] directories", path, files.size(), directories.size());
+            handler.write(jobName, state);
+        }
+    }
+}
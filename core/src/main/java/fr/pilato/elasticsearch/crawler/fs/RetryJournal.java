@@ -0,0 +1,195 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.FailedDocument;
+import fr.pilato.elasticsearch.crawler.fs.beans.RetryJournalFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.client.ESBulkItemListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the documents sent to elasticsearch until they are acknowledged. The ones which
+ * failed are recorded on disk by a {@link RetryJournalFileHandler} so they can be sent again during
+ * a next run, waiting exponentially more between each attempt.
+ */
+class RetryJournal implements ESBulkItemListener {
+    private static final Logger logger = LogManager.getLogger(RetryJournal.class);
+
+    static final int MAX_ATTEMPTS = 10;
+    private static final long FIRST_RETRY_DELAY_MINUTES = 1;
+    private static final long MAX_RETRY_DELAY_MINUTES = TimeUnit.DAYS.toMinutes(1);
+
+    private static class Pending {
+        private final String path;
+        private final boolean delete;
+        private final int attempts;
+
+        private Pending(String path, boolean delete, int attempts) {
+            this.path = path;
+            this.delete = delete;
+            this.attempts = attempts;
+        }
+    }
+
+    private final RetryJournalFileHandler handler;
+    private final String jobName;
+
+    // Documents sent to elasticsearch but not acknowledged yet
+    private final Map<String, Pending> pending = new HashMap<>();
+    // Number of attempts of the documents we are sending again
+    private final Map<String, Integer> replaying = new HashMap<>();
+    private boolean lost;
+
+    RetryJournal(RetryJournalFileHandler handler, String jobName) {
+        this.handler = handler;
+        this.jobName = jobName;
+    }
+
+    private static String key(String index, String id) {
+        return index + "/" + id;
+    }
+
+    /**
+     * Must be called before sending a document to elasticsearch
+     * @param path the full path of the file or directory, null if unknown
+     * @param delete true if we are removing the document
+     */
+    synchronized void track(String index, String id, String path, boolean delete) {
+        String key = key(index, id);
+        Integer attempts = replaying.remove(key);
+        pending.put(key, new Pending(path, delete, attempts == null ? 0 : attempts));
+    }
+
+    @Override
+    public synchronized void onSuccess(String index, String id) {
+        if (pending.remove(key(index, id)) != null && pending.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void onFailure(String index, String id, String failure) {
+        Pending document = pending.remove(key(index, id));
+        if (document == null) {
+            // Not sent by the crawler (REST service for example)
+            return;
+        }
+        int attempts = document.attempts + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            logger.warn("Giving up [{}]/[{}] ([{}]) after [{}] attempts: {}", index, id, document.path, attempts, failure);
+        } else {
+            long delay = Math.min(FIRST_RETRY_DELAY_MINUTES << (attempts - 1), MAX_RETRY_DELAY_MINUTES);
+            logger.debug("[{}]/[{}] ([{}]) failed. We will try again in [{}] minutes: {}", index, id, document.path, delay, failure);
+            try {
+                handler.append(jobName, FailedDocument.builder()
+                        .setIndex(index)
+                        .setId(id)
+                        .setPath(document.path)
+                        .setDelete(document.delete)
+                        .setAttempts(attempts)
+                        .setFailure(failure)
+                        .setRetryAfter(LocalDateTime.now().plus(delay, ChronoUnit.MINUTES))
+                        .build());
+            } catch (IOException e) {
+                logger.warn("Can not record the failure of [{}]/[{}] ([{}]): {}", index, id, document.path, e.getMessage());
+                lost = true;
+            }
+        }
+        if (pending.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for elasticsearch to acknowledge all the documents we sent
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if all the documents have been indexed or recorded as failed, false if some might be lost
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized boolean awaitAcknowledgements(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                logger.debug("[{}] documents have not been acknowledged yet", pending.size());
+                break;
+            }
+            wait(remaining);
+        }
+        boolean acknowledged = pending.isEmpty() && !lost;
+        pending.clear();
+        replaying.clear();
+        lost = false;
+        return acknowledged;
+    }
+
+    /**
+     * Read the failed documents we can try again now. The most recent failure of a document wins.
+     * They stay in the journal until {@link #replayed(Collection)} is called.
+     * @param now the current date
+     * @return the documents to send again
+     * @throws IOException in case of error while reading the journal
+     */
+    synchronized Collection<FailedDocument> due(LocalDateTime now) throws IOException {
+        List<FailedDocument> journal = handler.read(jobName);
+        Map<String, FailedDocument> documents = new LinkedHashMap<>();
+        for (FailedDocument document : journal) {
+            documents.put(key(document.getIndex(), document.getId()), document);
+        }
+        if (documents.size() < journal.size()) {
+            // We don't need the previous failures of the same documents anymore
+            handler.write(jobName, documents.values());
+        }
+        List<FailedDocument> due = new ArrayList<>();
+        for (Map.Entry<String, FailedDocument> entry : documents.entrySet()) {
+            FailedDocument document = entry.getValue();
+            if (document.getRetryAfter() == null || !document.getRetryAfter().isAfter(now)) {
+                due.add(document);
+                replaying.put(entry.getKey(), document.getAttempts());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Remove from the journal the documents we sent again. If they fail again, they have already been
+     * recorded with one more attempt.
+     * @param documents the documents returned by {@link #due(LocalDateTime)}
+     * @throws IOException in case of error while writing the journal
+     */
+    synchronized void replayed(Collection<FailedDocument> documents) throws IOException {
+        List<FailedDocument> remaining = handler.read(jobName);
+        if (remaining.removeAll(documents)) {
+            handler.write(jobName, remaining);
+        }
+    }
+}
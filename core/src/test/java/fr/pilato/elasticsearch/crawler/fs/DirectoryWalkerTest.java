@@ -0,0 +1,102 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class DirectoryWalkerTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * Walk a virtual tree where each directory has 3 sub directories, up to a depth of 4
+     */
+    private static void walkTree(DirectoryWalker walker, String directory, Set<String> visited) throws Exception {
+        visited.add(directory);
+        if (directory.length() < 8) {
+            Collection<String> subdirectories = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                subdirectories.add(directory + "/" + i);
+            }
+            walker.walk(subdirectories, dir -> walkTree(walker, dir, visited));
+        }
+    }
+
+    @Test
+    public void testAllDirectoriesAreVisited() throws Exception {
+        // A small queue forces some directories to be visited by the current thread
+        DirectoryWalker walker = new DirectoryWalker("test", 4, 2);
+        try {
+            Set<String> visited = ConcurrentHashMap.newKeySet();
+            walker.walk(Collections.singletonList(""), dir -> walkTree(walker, dir, visited));
+            // 1 + 3 + 9 + 27 + 81
+            assertThat(visited, hasSize(121));
+            assertThat(visited, hasItems("", "/0", "/2/1", "/1/1/1/1"));
+        } finally {
+            walker.close();
+        }
+    }
+
+    @Test
+    public void testMoreTopLevelDirectoriesThanPendingDirectories() throws Exception {
+        // Like in watch mode when many trees changed at once
+        DirectoryWalker walker = new DirectoryWalker("test", 2, 2);
+        try {
+            Collection<String> directories = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                directories.add("/" + i);
+            }
+            Set<String> visited = ConcurrentHashMap.newKeySet();
+            walker.walk(directories, dir -> walkTree(walker, dir, visited));
+            // 10 * (1 + 3 + 9 + 27)
+            assertThat(visited, hasSize(400));
+            assertThat(visited, hasItems("/0", "/9", "/9/2/2/2"));
+        } finally {
+            walker.close();
+        }
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        DirectoryWalker walker = new DirectoryWalker("test", 2, 10);
+        try {
+            walker.walk(Collections.singletonList("/"), dir -> walker.walk(Collections.singletonList(dir + "foo"), sub -> {
+                throw new IOException("boom");
+            }));
+            fail("We should have caught the visitor failure");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("boom"));
+        } finally {
+            walker.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DirectoryWatcherTest extends AbstractFSCrawlerTestCase {
+
+    private Path createRoot() throws IOException {
+        Path root = rootTmpDir.resolve("watch-" + getCurrentTestName());
+        Files.createDirectories(root.resolve("a").resolve("b"));
+        return root;
+    }
+
+    @Test
+    public void testFileChanges() throws Exception {
+        Path root = createRoot();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(root, 200)) {
+            assertThat(watcher.getWatchedDirectories(), is(3));
+            assertThat(watcher.awaitChanges(100, TimeUnit.MILLISECONDS), nullValue());
+
+            Path b = root.resolve("a").resolve("b");
+            Files.write(b.resolve("foo.txt"), "foo".getBytes());
+            Files.write(b.resolve("bar.txt"), "bar".getBytes());
+
+            DirectoryWatcher.Changes changes = watcher.awaitChanges(10, TimeUnit.SECONDS);
+            assertThat(changes.getDirectories(), contains(b.toString()));
+            assertThat(changes.getTrees(), empty());
+        }
+    }
+
+    @Test
+    public void testNewDirectoryIsWatched() throws Exception {
+        Path root = createRoot();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(root, 200)) {
+            Path c = root.resolve("a").resolve("c");
+            Files.createDirectories(c.resolve("d"));
+
+            DirectoryWatcher.Changes changes = watcher.awaitChanges(10, TimeUnit.SECONDS);
+            // The new directory is crawled with its sub directories and its parent only needs to be listed
+            assertThat(changes.getTrees(), contains(c.toString()));
+            assertThat(changes.getDirectories(), contains(root.resolve("a").toString()));
+
+            // Changes in the new directory are now reported
+            Path d = c.resolve("d");
+            Files.write(d.resolve("foo.txt"), "foo".getBytes());
+            Set<String> directories = new HashSet<>();
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (!directories.contains(d.toString()) && System.currentTimeMillis() < deadline) {
+                changes = watcher.awaitChanges(1, TimeUnit.SECONDS);
+                if (changes != null) {
+                    directories.addAll(changes.getDirectories());
+                }
+            }
+            assertThat(directories, hasItem(d.toString()));
+            assertThat(directories, not(hasItem(root.toString())));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class ExtractionPoolTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testAllTasksAreProcessedBeforeCompletion() throws Exception {
+        ExtractionPool pool = new ExtractionPool("test", 4, 2);
+        AtomicInteger processed = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            pool.submit(() -> {
+                Thread.sleep(1);
+                processed.incrementAndGet();
+            });
+        }
+        pool.awaitCompletion();
+        assertThat(processed.get(), is(100));
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        ExtractionPool pool = new ExtractionPool("test", 2, 2);
+        pool.submit(() -> {
+            throw new IOException("boom");
+        });
+        try {
+            pool.awaitCompletion();
+            fail("We should have caught the task failure");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("boom"));
+        }
+    }
+
+    @Test
+    public void testErrorIsReported() throws Exception {
+        ExtractionPool pool = new ExtractionPool("test", 2, 2);
+        pool.submit(() -> {
+            throw new StackOverflowError("boom");
+        });
+        try {
+            pool.awaitCompletion();
+            fail("We should have caught the task error");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(StackOverflowError.class));
+            assertThat(e.getCause().getMessage(), is("boom"));
+        }
+    }
+}
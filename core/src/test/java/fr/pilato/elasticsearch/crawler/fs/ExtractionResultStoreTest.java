@@ -0,0 +1,234 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class ExtractionResultStoreTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testLastVersionIsReplayed() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("1mb"))) {
+            // The crawler writes pretty printed documents
+            store.index(false, "1", "/foo/1.txt", "{\n  \"content\" : \"one\"\n}");
+            byte[] json = "{\"content\":\"two\\nlines\"}".getBytes(StandardCharsets.UTF_8);
+            store.index(false, "2", "/foo/2.txt", json, json.length);
+            store.index(true, "foo", "/foo", "{\"real\":\"/foo\"}");
+        }
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("1mb"))) {
+            store.index(false, "1", "/foo/1.txt", "{\"content\":\"one again\"}");
+            store.delete(false, "2", "/foo/2.txt");
+            store.index(false, "3", "/foo/3.txt", "{\"content\":\"three\"}");
+
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(3));
+            assertThat(replayed, hasEntry("doc/1", "{\"content\":\"one again\"}"));
+            assertThat(replayed, hasEntry("doc/3", "{\"content\":\"three\"}"));
+            assertThat(replayed, hasEntry("folder/foo", "{\"real\":\"/foo\"}"));
+        }
+    }
+
+    @Test
+    public void testRemovedDirectory() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("1mb"))) {
+            store.index(false, "1", "/foo/bar/1.txt", "{}");
+            store.index(false, "2", "/foo/barbar/2.txt", "{}");
+            store.index(true, "bar", "/foo/bar", "{}");
+            store.index(true, "baz", "/foo/bar/baz", "{}");
+            store.deletePrefix(false, "/foo/bar/");
+            store.deletePrefix(true, "/foo/bar/");
+            store.delete(true, "bar", "/foo/bar");
+
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(1));
+            assertThat(replayed, hasEntry("doc/2", "{}"));
+        }
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("100b"))) {
+            for (int i = 0; i < 10; i++) {
+                store.index(false, Integer.toString(i), "/foo/" + i + ".txt", "{\"content\":\"" + i + "\"}");
+            }
+        }
+        Path dir = jobDir.resolve(ExtractionResultStore.DIRNAME);
+        try (Stream<Path> segments = Files.list(dir)) {
+            assertThat(segments.count(), is(5L));
+        }
+
+        // A segment which has not been finished should not prevent reading the others
+        try (OutputStream os = Files.newOutputStream(dir.resolve("segment-000005.ndjson.gz"))) {
+            os.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0 });
+        }
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("100b"))) {
+            store.index(false, "10", "/foo/10.txt", "{\"content\":\"10\"}");
+            assertThat(Files.exists(dir.resolve("segment-000006.ndjson.gz")), is(true));
+
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(11));
+            for (int i = 0; i <= 10; i++) {
+                assertThat(replayed.get("doc/" + i), notNullValue());
+            }
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+        Path dir = jobDir.resolve(ExtractionResultStore.DIRNAME);
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("100b"))) {
+            assertThat(store.needsCompaction(), is(false));
+            for (int version = 0; version < 5; version++) {
+                for (int i = 0; i < 10; i++) {
+                    store.index(false, Integer.toString(i), "/foo/" + i + ".txt", "{\"version\":" + version + "}");
+                }
+            }
+            store.index(true, "bar", "/foo/bar", "{}");
+            store.index(false, "10", "/foo/bar/10.txt", "{}");
+            store.delete(false, "9", "/foo/9.txt");
+            store.deletePrefix(false, "/foo/bar/");
+            store.delete(true, "bar", "/foo/bar");
+            assertThat(store.needsCompaction(), is(true));
+
+            Map<String, String> before = replay(store);
+            assertThat(before.size(), is(9));
+            long segmentsBefore = countSegments(dir);
+
+            assertThat(store.compact(), is(9L));
+            assertThat(store.needsCompaction(), is(false));
+            assertThat(countSegments(dir) < segmentsBefore, is(true));
+            assertThat(Files.exists(dir.resolve("segment-000000.ndjson.gz")), is(false));
+            assertThat(replay(store), is(before));
+            for (int i = 0; i < 9; i++) {
+                assertThat(before, hasEntry("doc/" + i, "{\"version\":4}"));
+            }
+
+            // New entries are written after the compacted ones
+            store.index(false, "0", "/foo/0.txt", "{\"version\":5}");
+            assertThat(store.needsCompaction(), is(false));
+            assertThat(replay(store), hasEntry("doc/0", "{\"version\":5}"));
+        }
+
+        // The compacted store can be opened again
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("100b"))) {
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(9));
+            assertThat(replayed, hasEntry("doc/0", "{\"version\":5}"));
+            assertThat(replayed, hasEntry("doc/8", "{\"version\":4}"));
+        }
+    }
+
+    @Test
+    public void testManyRemovedDirectories() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("1mb"))) {
+            for (int dir = 0; dir < 10000; dir++) {
+                for (int i = 0; i < 10; i++) {
+                    store.index(false, dir + "-" + i, "/foo/" + dir + "/" + i + ".txt", "{}");
+                }
+            }
+            // Every other directory is removed and one of its files comes back
+            for (int dir = 0; dir < 10000; dir += 2) {
+                store.deletePrefix(false, "/foo/" + dir + "/");
+                store.index(false, dir + "-0", "/foo/" + dir + "/0.txt", "{\"again\":true}");
+            }
+
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(55000));
+            assertThat(replayed, hasEntry("doc/0-0", "{\"again\":true}"));
+            assertThat(replayed.containsKey("doc/0-1"), is(false));
+            assertThat(replayed, hasEntry("doc/1-1", "{}"));
+            assertThat(store.compact(), is(55000L));
+            assertThat(replay(store), is(replayed));
+        }
+    }
+
+    @Test
+    public void testEntriesWrittenWhileCompacting() throws Exception {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+
+        try (ExtractionResultStore store = new ExtractionResultStore(jobDir, ByteSizeValue.parseBytesSizeValue("1kb"))) {
+            for (int i = 0; i < 1000; i++) {
+                store.index(false, Integer.toString(i), "/foo/" + i + ".txt", "{\"version\":0}");
+            }
+
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        store.index(false, Integer.toString(i), "/foo/" + i + ".txt", "{\"version\":1}");
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.start();
+            store.compact();
+            writer.join();
+
+            Map<String, String> replayed = replay(store);
+            assertThat(replayed.size(), is(1000));
+            for (int i = 0; i < 1000; i++) {
+                assertThat(replayed, hasEntry("doc/" + i, "{\"version\":1}"));
+            }
+            assertThat(store.compact(), is(1000L));
+            assertThat(replay(store), is(replayed));
+        }
+    }
+
+    private static long countSegments(Path dir) throws Exception {
+        try (Stream<Path> segments = Files.list(dir)) {
+            return segments.count();
+        }
+    }
+
+    private static Map<String, String> replay(ExtractionResultStore store) throws Exception {
+        Map<String, String> replayed = new TreeMap<>();
+        store.replay((folder, id, json) -> replayed.put((folder ? "folder/" : "doc/") + id, json));
+        return replayed;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryState;
+import fr.pilato.elasticsearch.crawler.fs.beans.DirectoryStateFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.beans.FileState;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PendingDirectoryStateTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testStateIsWrittenWhenAllFilesAreDone() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        DirectoryStateFileHandler handler = new DirectoryStateFileHandler(config);
+        FileState fileState = FileState.builder().setSize(10).setLastModified(LocalDateTime.now()).build();
+
+        PendingDirectoryState state = new PendingDirectoryState(handler, "job", "/foo", null);
+        state.putDirectory("/foo/bar");
+        state.submitted();
+        state.submitted();
+
+        // The listing is done but 2 files are still being processed
+        state.done();
+        state.put("file1.txt", fileState);
+        state.done();
+        assertThat(handler.read("job", "/foo"), nullValue());
+
+        state.put("file2.txt", fileState);
+        state.done();
+        DirectoryState written = handler.read("job", "/foo");
+        assertThat(written.getFiles().size(), is(2));
+        assertThat(written.getFiles(), hasKey("file1.txt"));
+        assertThat(written.getFiles(), hasKey("file2.txt"));
+        assertThat(written.getDirectories().contains("/foo/bar"), is(true));
+    }
+
+    @Test
+    public void testUnchangedStateIsNotWritten() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        DirectoryStateFileHandler handler = new DirectoryStateFileHandler(config);
+        FileState fileState = FileState.builder().setSize(10).setLastModified(LocalDateTime.now()).build();
+
+        PendingDirectoryState state = new PendingDirectoryState(handler, "job", "/foo", null);
+        state.put("file1.txt", fileState);
+        state.done();
+        DirectoryState previous = handler.read("job", "/foo");
+        handler.remove("job", "/foo");
+
+        state = new PendingDirectoryState(handler, "job", "/foo", previous);
+        state.put("file1.txt", fileState);
+        state.done();
+        assertThat(handler.read("job", "/foo"), nullValue());
+    }
+
+    @Test
+    public void testLastModifiedIsOnlyKeptWhenAllFilesAreProcessed() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        DirectoryStateFileHandler handler = new DirectoryStateFileHandler(config);
+        FileState fileState = FileState.builder().setSize(10).setLastModified(LocalDateTime.now()).build();
+        LocalDateTime lastModified = LocalDateTime.now().minusMinutes(1);
+
+        PendingDirectoryState state = new PendingDirectoryState(handler, "job", "/foo", null);
+        state.setLastModified(lastModified);
+        state.put("file1.txt", fileState);
+        state.done();
+        assertThat(handler.read("job", "/foo").getLastModified(), is(lastModified));
+
+        state = new PendingDirectoryState(handler, "job", "/bar", null);
+        state.setLastModified(lastModified);
+        state.submitted();
+        state.done();
+        // The file could not be indexed
+        state.incomplete();
+        state.done();
+        assertThat(handler.read("job", "/bar").getLastModified(), nullValue());
+    }
+}
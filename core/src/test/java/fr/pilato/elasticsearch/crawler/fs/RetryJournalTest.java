@@ -0,0 +1,135 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.FailedDocument;
+import fr.pilato.elasticsearch.crawler.fs.beans.RetryJournalFileHandler;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class RetryJournalTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testFailuresAreRecorded() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        RetryJournalFileHandler handler = new RetryJournalFileHandler(config);
+        RetryJournal journal = new RetryJournal(handler, "job");
+
+        journal.track("docs", "1", "/foo/1.txt", false);
+        journal.track("docs", "2", "/foo/2.txt", false);
+        journal.track("docs_folder", "3", "/foo/bar", true);
+        journal.onSuccess("docs", "1");
+        journal.onFailure("docs", "2", "mapper_parsing_exception");
+        // Not sent by the crawler
+        journal.onFailure("docs", "4", "mapper_parsing_exception");
+        assertThat(journal.awaitAcknowledgements(10), is(false));
+
+        List<FailedDocument> failed = handler.read("job");
+        assertThat(failed, hasSize(1));
+        assertThat(failed.get(0).getIndex(), is("docs"));
+        assertThat(failed.get(0).getId(), is("2"));
+        assertThat(failed.get(0).getPath(), is("/foo/2.txt"));
+        assertThat(failed.get(0).isDelete(), is(false));
+        assertThat(failed.get(0).getAttempts(), is(1));
+        assertThat(failed.get(0).getFailure(), is("mapper_parsing_exception"));
+
+        // Everything is acknowledged
+        journal.track("docs", "5", "/foo/5.txt", false);
+        journal.onSuccess("docs", "5");
+        assertThat(journal.awaitAcknowledgements(10), is(true));
+    }
+
+    @Test
+    public void testReplayWithBackoff() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        RetryJournalFileHandler handler = new RetryJournalFileHandler(config);
+        RetryJournal journal = new RetryJournal(handler, "job");
+
+        journal.track("docs", "1", "/foo/1.txt", false);
+        journal.onFailure("docs", "1", "es_rejected_execution_exception");
+        assertThat(journal.awaitAcknowledgements(10), is(true));
+
+        // We need to wait a bit before trying again
+        assertThat(journal.due(LocalDateTime.now()), empty());
+        LocalDateTime later = LocalDateTime.now().plusMinutes(2);
+        Collection<FailedDocument> due = journal.due(later);
+        assertThat(due, hasSize(1));
+
+        // It fails again
+        journal.track("docs", "1", "/foo/1.txt", false);
+        journal.onFailure("docs", "1", "es_rejected_execution_exception");
+        journal.replayed(due);
+        assertThat(journal.awaitAcknowledgements(10), is(true));
+
+        List<FailedDocument> failed = handler.read("job");
+        assertThat(failed, hasSize(1));
+        assertThat(failed.get(0).getAttempts(), is(2));
+        assertThat(journal.due(later), empty());
+        due = journal.due(LocalDateTime.now().plusMinutes(3));
+        assertThat(due, hasSize(1));
+
+        // It works this time
+        journal.track("docs", "1", "/foo/1.txt", false);
+        journal.onSuccess("docs", "1");
+        journal.replayed(due);
+        assertThat(journal.awaitAcknowledgements(10), is(true));
+        assertThat(handler.read("job"), empty());
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        Path config = rootTmpDir.resolve("config-" + getCurrentTestName());
+        Files.createDirectories(config);
+        RetryJournalFileHandler handler = new RetryJournalFileHandler(config);
+        RetryJournal journal = new RetryJournal(handler, "job");
+
+        List<FailedDocument> failures = new ArrayList<>();
+        failures.add(FailedDocument.builder().setIndex("docs").setId("1").setPath("/foo/1.txt")
+                .setAttempts(RetryJournal.MAX_ATTEMPTS - 1).setRetryAfter(LocalDateTime.now()).build());
+        // An older failure of the same document
+        failures.add(0, FailedDocument.builder().setIndex("docs").setId("1").setPath("/foo/1.txt")
+                .setAttempts(RetryJournal.MAX_ATTEMPTS - 2).setRetryAfter(LocalDateTime.now()).build());
+        handler.write("job", failures);
+
+        Collection<FailedDocument> due = journal.due(LocalDateTime.now());
+        assertThat(due, hasSize(1));
+        assertThat(handler.read("job"), hasSize(1));
+
+        journal.track("docs", "1", "/foo/1.txt", false);
+        journal.onFailure("docs", "1", "mapper_parsing_exception");
+        journal.replayed(due);
+        assertThat(journal.awaitAcknowledgements(10), is(true));
+        assertThat(handler.read("job"), empty());
+    }
+}
@@ -55,9 +55,19 @@ public class FileAbstractModel {
     private String group;
     private int permissions;
     private String extension;
+    private String inode;
 
     public FileAbstractModel(String name, boolean file, LocalDateTime lastModifiedDate, LocalDateTime creationDate, LocalDateTime accessDate,
                              String extension, String path, String fullpath, long size, String owner, String group, int permissions) {
+        this(name, file, lastModifiedDate, creationDate, accessDate, extension, path, fullpath, size, owner, group, permissions, null);
+    }
+
+    /**
+     * @param inode a unique identifier of the file on its file system if the file system provides it (inode on unix), or null
+     */
+    public FileAbstractModel(String name, boolean file, LocalDateTime lastModifiedDate, LocalDateTime creationDate, LocalDateTime accessDate,
+                             String extension, String path, String fullpath, long size, String owner, String group, int permissions,
+                             String inode) {
         this.name = name;
         this.file = file;
         this.directory = !file;
@@ -71,6 +81,7 @@ public class FileAbstractModel {
         this.group = group;
         this.permissions = permissions;
         this.extension = extension;
+        this.inode = inode;
     }
 
     public String getName() {
@@ -125,6 +136,10 @@ public class FileAbstractModel {
         return extension;
     }
 
+    public String getInode() {
+        return inode;
+    }
+
     @Override
     public String toString() {
         return "FileAbstractModel{" + "name='" + name + '\'' +
@@ -140,6 +155,7 @@ public class FileAbstractModel {
                 ", extension='" + extension + '\'' +
                 ", fullpath='" + fullpath + '\'' +
                 ", size=" + size +
+                ", inode='" + inode + '\'' +
                 '}';
     }
 }
@@ -24,6 +24,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.Collection;
 
 public abstract class FileAbstractor<T> {
@@ -37,12 +38,38 @@ public abstract class FileAbstractor<T> {
 
     public abstract Collection<FileAbstractModel> getFiles(String dir) throws Exception;
 
+    /**
+     * Read a single file without listing its directory
+     * @param path the full path of the file
+     * @return the file or null if it does not exist
+     * @throws Exception if the file can not be read
+     */
+    public abstract FileAbstractModel getFile(String path) throws Exception;
+
     public abstract boolean exists(String dir);
 
+    /**
+     * Get the modification date of a directory. It changes when a file or a sub directory is added,
+     * removed or renamed in this directory but not when the content of a file is modified.
+     * @param dir the directory
+     * @return the modification date
+     * @throws Exception if the directory can not be read
+     */
+    public abstract LocalDateTime getLastModifiedDate(String dir) throws Exception;
+
     public abstract void open() throws Exception;
 
     public abstract void close() throws Exception;
 
+    /**
+     * Tells if {@link #getFiles(String)} and {@link #getInputStream(FileAbstractModel)} can be called
+     * from several threads at the same time.
+     * @return true if the implementation can be shared between threads. Default to false.
+     */
+    public boolean isConcurrentAccessSupported() {
+        return false;
+    }
+
     protected FileAbstractor(FsSettings fsSettings) {
         this.fsSettings = fsSettings;
     }
@@ -25,39 +25,86 @@ import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getCreationTime;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFileExtension;
 import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getFilePermissions;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getGroupName;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getLastAccessTime;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getModificationTime;
-import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.getOwnerName;
+import static fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil.toLocalDateTime;
+
+/**
+ * Lists local files. Attributes of each entry are read with a single call: when the file system supports
+ * posix attributes, the owner, the group and the permissions come with the same call as the dates and the size.
+ * Owner and group names are only resolved when {@code fs.attributes_support} is true.
+ */
+public class FileAbstractorFile extends FileAbstractor<Path> {
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private final boolean attributesSupport;
 
-public class FileAbstractorFile extends FileAbstractor<File> {
     public FileAbstractorFile(FsSettings fsSettings) {
         super(fsSettings);
+        this.attributesSupport = fsSettings.getFs().isAttributesSupport();
     }
 
     @Override
-    public FileAbstractModel toFileAbstractModel(String path, File file) {
+    public FileAbstractModel toFileAbstractModel(String path, Path file) {
+        try {
+            return readFileAbstractModel(path, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileAbstractModel readFileAbstractModel(String path, Path file) throws IOException {
+        String owner = null;
+        String group = null;
+        int permissions = -1;
+        BasicFileAttributes attrs;
+
+        if (attributesSupport && POSIX) {
+            PosixFileAttributes posixAttrs = Files.readAttributes(file, PosixFileAttributes.class);
+            owner = posixAttrs.owner().getName();
+            group = posixAttrs.group().getName();
+            permissions = getFilePermissions(posixAttrs);
+            attrs = posixAttrs;
+        } else {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributesSupport) {
+                // Getting the group and the permissions is not available on this platform
+                owner = Files.getOwner(file).getName();
+            }
+        }
+
+        String name = file.getFileName().toString();
         return new FileAbstractModel(
-                file.getName(),
-                file.isFile(),
-                getModificationTime(file),
-                getCreationTime(file),
-                getLastAccessTime(file),
-                getFileExtension(file),
+                name,
+                attrs.isRegularFile(),
+                toLocalDateTime(attrs.lastModifiedTime()),
+                toLocalDateTime(attrs.creationTime()),
+                toLocalDateTime(attrs.lastAccessTime()),
+                getFileExtension(name),
                 path,
-                file.getAbsolutePath(),
-                file.length(),
-                getOwnerName(file),
-                getGroupName(file),
-                getFilePermissions(file));
+                file.toAbsolutePath().toString(),
+                attrs.size(),
+                owner,
+                group,
+                permissions,
+                attrs.fileKey() == null ? null : attrs.fileKey().toString());
     }
 
     @Override
@@ -68,29 +115,53 @@ public class FileAbstractorFile extends FileAbstractor<File> {
     @Override
     public Collection<FileAbstractModel> getFiles(String dir) {
         logger.debug("Listing local files from {}", dir);
-        File[] files = new File(dir).listFiles();
-        Collection<FileAbstractModel> result;
-
-        if (files != null) {
-            result = new ArrayList<>(files.length);
+        Collection<FileAbstractModel> result = new ArrayList<>();
 
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(dir))) {
             // Iterate other files
-            for (File file : files) {
-                result.add(toFileAbstractModel(dir, file));
+            for (Path file : stream) {
+                try {
+                    result.add(readFileAbstractModel(dir, file));
+                } catch (IOException e) {
+                    // Broken symlink or file removed while we are listing the directory
+                    logger.debug("Can not read attributes of [{}]. Skipping: {}", file, e.getMessage());
+                }
             }
-        } else {
-            logger.debug("Symlink on windows gives null for listFiles(). Skipping [{}]", dir);
+        } catch (IOException | DirectoryIteratorException e) {
+            // DirectoryIteratorException is thrown when reading the next entries fails while iterating
+            logger.debug("Can not list files from [{}]. Skipping: {}", dir, e.getMessage());
             result = Collections.emptyList();
         }
 
-
         logger.debug("{} local files found", result.size());
         return result;
     }
 
+    @Override
+    public FileAbstractModel getFile(String path) throws IOException {
+        Path file = Paths.get(path);
+        Path dir = file.getParent();
+        try {
+            return readFileAbstractModel(dir == null ? null : dir.toString(), file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean exists(String dir) {
-        return new File(dir).exists();
+        return Files.exists(Paths.get(dir));
+    }
+
+    @Override
+    public LocalDateTime getLastModifiedDate(String dir) throws IOException {
+        return toLocalDateTime(Files.getLastModifiedTime(Paths.get(dir)));
+    }
+
+    @Override
+    public boolean isConcurrentAccessSupported() {
+        // Local files can be listed and read from any thread
+        return true;
     }
 
     @Override
@@ -23,6 +23,8 @@ import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractModel;
 import fr.pilato.elasticsearch.crawler.fs.crawler.FileAbstractor;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
@@ -48,22 +50,26 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
 
     @Override
     public FileAbstractModel toFileAbstractModel(String path, ChannelSftp.LsEntry file) {
+        return toFileAbstractModel(path, file.getFilename(), file.getAttrs());
+    }
+
+    private FileAbstractModel toFileAbstractModel(String path, String filename, SftpATTRS attrs) {
         return new FileAbstractModel(
-                file.getFilename(),
-                file.getAttrs().isDir(),
+                filename,
+                attrs.isDir(),
                 // We are using here the local TimeZone as a reference. If the remote system is under another TZ, this might cause issues
-                LocalDateTime.ofInstant(Instant.ofEpochMilli(file.getAttrs().getMTime()*1000L), ZoneId.systemDefault()),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(attrs.getMTime()*1000L), ZoneId.systemDefault()),
                 // We don't have the creation date
                 null,
                 // We are using here the local TimeZone as a reference. If the remote system is under another TZ, this might cause issues
-                LocalDateTime.ofInstant(Instant.ofEpochMilli(file.getAttrs().getATime()*1000L), ZoneId.systemDefault()),
-                FilenameUtils.getExtension(file.getFilename()),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(attrs.getATime()*1000L), ZoneId.systemDefault()),
+                FilenameUtils.getExtension(filename),
                 path,
-                path.concat("/").concat(file.getFilename()),
-                file.getAttrs().getSize(),
-                Integer.toString(file.getAttrs().getUId()),
-                Integer.toString(file.getAttrs().getGId()),
-                file.getAttrs().getPermissions());
+                path.concat("/").concat(filename),
+                attrs.getSize(),
+                Integer.toString(attrs.getUId()),
+                Integer.toString(attrs.getGId()),
+                attrs.getPermissions());
     }
 
     @Override
@@ -92,6 +98,20 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
         return result;
     }
 
+    @Override
+    public FileAbstractModel getFile(String path) throws Exception {
+        SftpATTRS attrs;
+        try {
+            attrs = sftp.stat(path);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+        return toFileAbstractModel(FilenameUtils.getFullPathNoEndSeparator(path), FilenameUtils.getName(path), attrs);
+    }
+
     @Override
     public boolean exists(String dir) {
         try {
@@ -102,6 +122,12 @@ public class FileAbstractorSSH extends FileAbstractor<ChannelSftp.LsEntry> {
         return true;
     }
 
+    @Override
+    public LocalDateTime getLastModifiedDate(String dir) throws Exception {
+        // We are using here the local TimeZone as a reference. If the remote system is under another TZ, this might cause issues
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(sftp.stat(dir).getMTime()*1000L), ZoneId.systemDefault());
+    }
+
     @Override
     public void open() throws Exception {
         sftp = openSSHConnection(fsSettings.getServer());
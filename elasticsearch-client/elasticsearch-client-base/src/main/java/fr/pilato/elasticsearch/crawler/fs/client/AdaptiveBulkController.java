@@ -0,0 +1,190 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how many actions go in a bulk request and how many bulk requests can run at the same time,
+ * from the latency observed for each bulk and from the rejections (429) sent back by the cluster.
+ * It also bounds the number of bytes which have been added but not acknowledged yet: when this limit
+ * is reached, {@link #tryReserve(long, long, TimeUnit)} blocks the caller.
+ *
+ * Sizes are adapted with an additive increase / multiplicative decrease strategy:
+ * <ul>
+ *     <li>a rejection or a hard failure halves the number of actions and of concurrent requests</li>
+ *     <li>a bulk which took more than twice the usual time per action reduces them by a quarter</li>
+ *     <li>any other successful bulk adds 10% of the maximum number of actions, then one concurrent request
+ *     once the maximum number of actions is reached</li>
+ * </ul>
+ *
+ * This class does not depend on any Elasticsearch version so it can be shared by all the clients.
+ */
+public class AdaptiveBulkController {
+
+    private static final Logger logger = LogManager.getLogger(AdaptiveBulkController.class);
+
+    private static final double LATENCY_SPIKE_RATIO = 2.0;
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final int maxActions;
+    private final int maxConcurrentRequests;
+    private final long maxInFlightBytes;
+    private final int actionsStep;
+
+    private int targetActions;
+    private int concurrentRequests;
+    private int activeRequests;
+    private long inFlightBytes;
+    // Moving average of the time spent per action, in nanoseconds. Negative until the first response.
+    private double latencyPerAction = -1;
+
+    /**
+     * @param maxActions            Maximum number of actions in a bulk request (bulk_size)
+     * @param maxConcurrentRequests Maximum number of bulk requests running at the same time
+     * @param maxInFlightBytes      Maximum number of bytes added but not acknowledged yet
+     */
+    public AdaptiveBulkController(int maxActions, int maxConcurrentRequests, long maxInFlightBytes) {
+        this.maxActions = Math.max(1, maxActions);
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.actionsStep = Math.max(1, this.maxActions / 10);
+        this.targetActions = this.maxActions;
+        this.concurrentRequests = this.maxConcurrentRequests;
+    }
+
+    /**
+     * Reserve some bytes before adding an action to the bulk. An action is always accepted when nothing
+     * else is in flight, even if it is bigger than the limit.
+     * @param bytes     Size of the action
+     * @param timeout   Maximum time to wait for other actions to be acknowledged
+     * @param unit      Unit of the timeout
+     * @return true if the bytes have been reserved, false if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean tryReserve(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlightBytes > 0 && inFlightBytes + bytes > maxInFlightBytes) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlightBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Release bytes previously reserved, once the bulk which contained them has been executed
+     * @param bytes Size of the actions
+     */
+    public synchronized void release(long bytes) {
+        inFlightBytes = Math.max(0, inFlightBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * Wait until a new bulk request is allowed to run. Every call must be followed by a call to
+     * {@link #onResponse(int, long, int)} or {@link #onFailure()}.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquireRequest() throws InterruptedException {
+        while (activeRequests >= concurrentRequests) {
+            wait();
+        }
+        activeRequests++;
+    }
+
+    /**
+     * Called when a bulk request has been executed
+     * @param actions   Number of actions in the bulk
+     * @param tookNanos Time it took to execute it
+     * @param rejected  Number of actions rejected by the cluster because it is overloaded
+     */
+    public synchronized void onResponse(int actions, long tookNanos, int rejected) {
+        activeRequests = Math.max(0, activeRequests - 1);
+        double perAction = (double) tookNanos / Math.max(1, actions);
+        if (rejected > 0) {
+            logger.debug("[{}] actions rejected by the cluster. Backing off.", rejected);
+            decrease(2);
+        } else if (latencyPerAction > 0 && perAction > latencyPerAction * LATENCY_SPIKE_RATIO) {
+            logger.debug("Bulk of [{}] actions took [{}] ms which is more than usual. Backing off.",
+                    actions, TimeUnit.NANOSECONDS.toMillis(tookNanos));
+            decrease(4.0 / 3);
+        } else {
+            increase();
+        }
+        latencyPerAction = latencyPerAction < 0 ? perAction :
+                latencyPerAction * (1 - LATENCY_WEIGHT) + perAction * LATENCY_WEIGHT;
+        notifyAll();
+    }
+
+    /**
+     * Called when a bulk request failed as a whole (rejected, timed out or node not reachable)
+     */
+    public synchronized void onFailure() {
+        activeRequests = Math.max(0, activeRequests - 1);
+        logger.debug("Bulk request failed. Backing off.");
+        decrease(2);
+        notifyAll();
+    }
+
+    private void decrease(double factor) {
+        targetActions = Math.max(1, (int) (targetActions / factor));
+        concurrentRequests = Math.max(1, (int) (concurrentRequests / factor));
+        logger.trace("Bulk size is now [{}] actions with [{}] concurrent requests", targetActions, concurrentRequests);
+    }
+
+    private void increase() {
+        if (targetActions < maxActions) {
+            targetActions = Math.min(maxActions, targetActions + actionsStep);
+        } else if (concurrentRequests < maxConcurrentRequests) {
+            concurrentRequests++;
+        } else {
+            return;
+        }
+        logger.trace("Bulk size is now [{}] actions with [{}] concurrent requests", targetActions, concurrentRequests);
+    }
+
+    /**
+     * @return Number of actions after which the current bulk should be sent
+     */
+    public synchronized int getTargetActions() {
+        return targetActions;
+    }
+
+    /**
+     * @return Number of bulk requests allowed to run at the same time
+     */
+    public synchronized int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    /**
+     * @return Number of bytes added but not acknowledged yet
+     */
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+}
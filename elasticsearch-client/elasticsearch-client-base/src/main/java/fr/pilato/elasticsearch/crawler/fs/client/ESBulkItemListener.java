@@ -0,0 +1,42 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+/**
+ * Notified with the outcome of each action sent with a bulk request, once all the retries are done.
+ * Methods are called from the threads of the elasticsearch client so they must not block.
+ */
+public interface ESBulkItemListener {
+
+    /**
+     * The action has been acknowledged by elasticsearch
+     * @param index Index name
+     * @param id    Document ID
+     */
+    void onSuccess(String index, String id);
+
+    /**
+     * The action failed
+     * @param index     Index name
+     * @param id        Document ID
+     * @param failure   Why it failed
+     */
+    void onFailure(String index, String id, String failure);
+}
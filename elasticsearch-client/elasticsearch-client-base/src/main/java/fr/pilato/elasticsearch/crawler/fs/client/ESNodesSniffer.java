@@ -0,0 +1,156 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically asks the cluster for its data nodes (GET /_nodes/http) and gives them to the
+ * low level client so bulk requests are spread over all of them.
+ * It does the same job as the Sniffer provided by elasticsearch but works the same way
+ * with all the client versions.
+ */
+public class ESNodesSniffer implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ESNodesSniffer.class);
+
+    /**
+     * Runs GET /_nodes/http
+     */
+    public interface NodesFetcher {
+        Map<String, Object> fetch() throws IOException;
+    }
+
+    /**
+     * Replaces the nodes used by the low level client
+     */
+    public interface NodesUpdater {
+        void update(List<String> urls);
+    }
+
+    private final NodesFetcher fetcher;
+    private final NodesUpdater updater;
+    private final String scheme;
+    private final long interval;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param fetcher   Runs GET /_nodes/http
+     * @param updater   Replaces the nodes used by the client
+     * @param scheme    http or https
+     * @param interval  Time between two sniffs in milliseconds
+     */
+    public ESNodesSniffer(NodesFetcher fetcher, NodesUpdater updater, String scheme, long interval) {
+        this.fetcher = fetcher;
+        this.updater = updater;
+        this.scheme = scheme;
+        this.interval = interval;
+    }
+
+    /**
+     * Sniff the nodes now, then every interval
+     */
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fscrawler-sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sniff, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void sniff() {
+        try {
+            List<String> urls = dataNodes(fetcher.fetch(), scheme);
+            if (urls.isEmpty()) {
+                logger.debug("No data node found with http enabled. We keep the current nodes.");
+                return;
+            }
+            logger.debug("Sending the requests to {}", urls);
+            updater.update(urls);
+        } catch (Exception e) {
+            logger.warn("Failed to sniff the elasticsearch nodes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Read the http address of the data nodes from a GET /_nodes/http response
+     * @param response  The response
+     * @param scheme    http or https
+     * @return the urls of the data nodes
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> dataNodes(Map<String, Object> response, String scheme) {
+        List<String> urls = new ArrayList<>();
+        Object nodes = response == null ? null : response.get("nodes");
+        if (!(nodes instanceof Map)) {
+            return urls;
+        }
+        for (Object value : ((Map<String, Object>) nodes).values()) {
+            Map<String, Object> node = (Map<String, Object>) value;
+            Object roles = node.get("roles");
+            if (roles instanceof Collection && !((Collection<?>) roles).contains("data")) {
+                continue;
+            }
+            Object http = node.get("http");
+            if (!(http instanceof Map)) {
+                // http is disabled on this node
+                continue;
+            }
+            Object address = ((Map<String, Object>) http).get("publish_address");
+            if (address != null) {
+                urls.add(toUrl(scheme, address.toString()));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Elasticsearch publishes either ip:port or hostname/ip:port
+     */
+    static String toUrl(String scheme, String address) {
+        int slash = address.indexOf('/');
+        if (slash < 0) {
+            return scheme + "://" + address;
+        }
+        String hostname = address.substring(0, slash);
+        String port = address.substring(address.lastIndexOf(':') + 1);
+        return scheme + "://" + hostname + ":" + port;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterate over all the hits of a search, one page at a time, so only a single page is kept in memory.
+ * The underlying search context is released when all the hits have been read or when the iterator is closed.
+ * Errors happening while fetching a page are thrown as {@link UncheckedIOException}.
+ */
+public class ESSearchHitIterator implements Iterator<ESSearchHit>, Closeable {
+
+    /**
+     * Fetch pages from the cluster
+     */
+    public interface PageFetcher {
+        /**
+         * Fetch the next page
+         * @param scrollId the scroll id returned with the previous page or null for the first page
+         * @return the page of hits
+         * @throws IOException In case of error
+         */
+        ESSearchResponse fetch(String scrollId) throws IOException;
+
+        /**
+         * Release the search context
+         * @param scrollId the scroll id returned with the last page
+         * @throws IOException In case of error
+         */
+        void clear(String scrollId) throws IOException;
+    }
+
+    private final PageFetcher fetcher;
+    private final int pageSize;
+    private Iterator<ESSearchHit> page = Collections.emptyIterator();
+    private String scrollId;
+    private boolean lastPage;
+
+    public ESSearchHitIterator(PageFetcher fetcher, int pageSize) {
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !lastPage) {
+            try {
+                ESSearchResponse response = fetcher.fetch(scrollId);
+                scrollId = response.getScrollId();
+                // A page which is not full is the last one so we don't need another round trip
+                lastPage = response.getHits().size() < pageSize;
+                page = response.getHits().iterator();
+                if (lastPage) {
+                    close();
+                }
+            } catch (IOException e) {
+                lastPage = true;
+                throw new UncheckedIOException(e);
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public ESSearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lastPage = true;
+        if (scrollId != null) {
+            String id = scrollId;
+            scrollId = null;
+            fetcher.clear(id);
+        }
+    }
+}
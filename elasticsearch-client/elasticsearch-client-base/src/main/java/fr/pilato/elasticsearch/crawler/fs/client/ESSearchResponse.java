@@ -27,6 +27,7 @@ import java.util.Map;
 public class ESSearchResponse {
     private List<ESSearchHit> hits = new ArrayList<>();
     private long totalHits;
+    private String scrollId;
     private Map<String, ESTermsAggregation> aggregations = new HashMap<>();
 
     public List<ESSearchHit> getHits() {
@@ -45,6 +46,14 @@ public class ESSearchResponse {
         this.totalHits = totalHits;
     }
 
+    public String getScrollId() {
+        return scrollId;
+    }
+
+    public void setScrollId(String scrollId) {
+        this.scrollId = scrollId;
+    }
+
     public Map<String, ESTermsAggregation> getAggregations() {
         return aggregations;
     }
@@ -106,6 +106,16 @@ public interface ElasticsearchClient extends Closeable {
      */
     void deleteByQuery(String index, String type) throws IOException;
 
+    /**
+     * Remove all the documents matching a query. The deletion is sliced and runs as a background
+     * task on the cluster which is polled until it completes.
+     * @param index index name
+     * @param query documents to remove
+     * @return The number of documents that have been removed
+     * @throws IOException In case of error or if some documents could not be removed
+     */
+    long deleteByQuery(String index, ESQuery query) throws IOException;
+
     // Utility methods
 
     boolean isIngestSupported();
@@ -113,7 +123,8 @@ public interface ElasticsearchClient extends Closeable {
     String getDefaultTypeName();
 
     /**
-     * Index a document using a BulkProcessor behind the scenes
+     * Index a document using a BulkProcessor behind the scenes.
+     * Blocks when too many bytes are waiting to be acknowledged by the cluster.
      * @param index     Index name
      * @param type      Type name
      * @param id        Document ID
@@ -122,6 +133,26 @@ public interface ElasticsearchClient extends Closeable {
      */
     void index(String index, String type, String id, String json, String pipeline);
 
+    /**
+     * Index a document using a BulkProcessor behind the scenes.
+     * Blocks when too many bytes are waiting to be acknowledged by the cluster.
+     * @param index     Index name
+     * @param type      Type name
+     * @param id        Document ID
+     * @param json      JSON encoded in UTF-8. The array is not copied so it must not be modified after this call.
+     * @param length    Number of bytes of the array to index
+     * @param pipeline  Pipeline (can be null)
+     */
+    void index(String index, String type, String id, byte[] json, int length, String pipeline);
+
+    /**
+     * Set the listener which will be notified with the outcome of every action sent with
+     * {@link #index(String, String, String, String, String)}, {@link #index(String, String, String, byte[], int, String)}
+     * or {@link #delete(String, String, String)}
+     * @param listener  The listener (can be null)
+     */
+    void setBulkItemListener(ESBulkItemListener listener);
+
     /**
      * Index a document (for test purposes only)
      * @param index     Index name
@@ -155,6 +186,17 @@ public interface ElasticsearchClient extends Closeable {
      */
     ESSearchResponse search(ESSearchRequest request) throws IOException;
 
+    /**
+     * Iterate over all the hits matching a search, whatever their number. Hits are read page by page
+     * (the request size, 1000 by default) using a scroll sorted by _doc, so memory usage does not depend
+     * on the number of hits. Highlighters and aggregations are ignored.
+     * The iterator must be closed if it has not been fully consumed.
+     * @param request Search Request
+     * @return An iterator over the hits
+     * @throws IOException In case of error
+     */
+    ESSearchHitIterator scroll(ESSearchRequest request) throws IOException;
+
     /**
      * Remove an index
      * @param index Index name
@@ -0,0 +1,148 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An http client which compresses with gzip the body of the requests sent to elasticsearch.
+ * The elasticsearch low level clients we are using can not compress the requests themselves.
+ * Bodies smaller than a given size are sent as is.
+ */
+public class GzipHttpAsyncClient extends CloseableHttpAsyncClient {
+
+    private static final Logger logger = LogManager.getLogger(GzipHttpAsyncClient.class);
+
+    private final CloseableHttpAsyncClient delegate;
+    private final long minSize;
+    private final RequestCompressionStats stats;
+
+    GzipHttpAsyncClient(CloseableHttpAsyncClient delegate, long minSize, RequestCompressionStats stats) {
+        this.delegate = delegate;
+        this.minSize = minSize;
+        this.stats = stats;
+    }
+
+    /**
+     * Wrap an http client builder so the client it builds compresses the requests.
+     * Only {@link HttpAsyncClientBuilder#build()} can be called on the returned builder
+     * so it must be the last call in a RestClientBuilder http client config callback.
+     * @param builder   the builder configured by the elasticsearch low level client
+     * @param minSize   bodies smaller than this number of bytes are not compressed
+     * @param stats     where to count the bytes sent before and after compression
+     * @return a builder for a compressing http client
+     */
+    public static HttpAsyncClientBuilder wrap(HttpAsyncClientBuilder builder, long minSize, RequestCompressionStats stats) {
+        return new HttpAsyncClientBuilder() {
+            @Override
+            public CloseableHttpAsyncClient build() {
+                return new GzipHttpAsyncClient(builder.build(), minSize, stats);
+            }
+        };
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                 HttpContext context, FutureCallback<T> callback) {
+        HttpRequest request;
+        try {
+            request = requestProducer.generateRequest();
+            if (!compress(request)) {
+                return delegate.execute(requestProducer, responseConsumer, context, callback);
+            }
+            requestProducer.close();
+        } catch (IOException | HttpException e) {
+            if (callback != null) {
+                callback.failed(e);
+            }
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return delegate.execute(HttpAsyncMethods.create(requestProducer.getTarget(), request), responseConsumer, context, callback);
+    }
+
+    /**
+     * Replace the body of the request with its compressed version
+     * @param request the request to compress
+     * @return true if the body has been compressed
+     */
+    boolean compress(HttpRequest request) throws IOException {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return false;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        // Already compressed bodies are sent again as is when the client retries on another node
+        if (entity == null || entity.getContentEncoding() != null ||
+                entity.getContentLength() < 0 || entity.getContentLength() < minSize) {
+            return false;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(entity.getContentLength() / 4, Integer.MAX_VALUE));
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            entity.writeTo(out);
+        }
+
+        NByteArrayEntity compressed = new NByteArrayEntity(bytes.toByteArray());
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding("gzip");
+        ((HttpEntityEnclosingRequest) request).setEntity(compressed);
+
+        stats.record(entity.getContentLength(), compressed.getContentLength());
+        logger.trace("Compressed request [{}] from [{}] to [{}] bytes", request.getRequestLine(),
+                entity.getContentLength(), compressed.getContentLength());
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return delegate.isRunning();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AdaptiveBulkControllerTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testBackOffOnRejections() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 4, 1000);
+        assertThat(controller.getTargetActions(), is(100));
+        assertThat(controller.getConcurrentRequests(), is(4));
+
+        controller.onResponse(100, TimeUnit.MILLISECONDS.toNanos(100), 3);
+        assertThat(controller.getTargetActions(), is(50));
+        assertThat(controller.getConcurrentRequests(), is(2));
+
+        controller.onFailure();
+        assertThat(controller.getTargetActions(), is(25));
+        assertThat(controller.getConcurrentRequests(), is(1));
+
+        for (int i = 0; i < 100; i++) {
+            controller.onFailure();
+        }
+        assertThat(controller.getTargetActions(), is(1));
+        assertThat(controller.getConcurrentRequests(), is(1));
+    }
+
+    @Test
+    public void testRecoverOnSuccess() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 2, 1000);
+        controller.onFailure();
+        controller.onFailure();
+        assertThat(controller.getTargetActions(), is(25));
+        assertThat(controller.getConcurrentRequests(), is(1));
+
+        for (int i = 0; i < 8; i++) {
+            controller.onResponse(controller.getTargetActions(), TimeUnit.MILLISECONDS.toNanos(controller.getTargetActions()), 0);
+        }
+        assertThat(controller.getTargetActions(), is(100));
+        assertThat(controller.getConcurrentRequests(), is(1));
+
+        controller.onResponse(100, TimeUnit.MILLISECONDS.toNanos(100), 0);
+        assertThat(controller.getConcurrentRequests(), is(2));
+    }
+
+    @Test
+    public void testBackOffOnLatencySpike() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 1, 1000);
+        controller.onResponse(100, TimeUnit.MILLISECONDS.toNanos(100), 0);
+        controller.onResponse(100, TimeUnit.MILLISECONDS.toNanos(110), 0);
+        assertThat(controller.getTargetActions(), is(100));
+
+        controller.onResponse(100, TimeUnit.MILLISECONDS.toNanos(500), 0);
+        assertThat(controller.getTargetActions(), is(75));
+    }
+
+    @Test
+    public void testInFlightBytes() throws InterruptedException {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 1, 1000);
+
+        // A single action bigger than the limit is accepted when nothing else is in flight
+        assertThat(controller.tryReserve(5000, 0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(controller.tryReserve(1, 10, TimeUnit.MILLISECONDS), is(false));
+        controller.release(5000);
+
+        assertThat(controller.tryReserve(600, 0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(controller.tryReserve(400, 0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(controller.getInFlightBytes(), is(1000L));
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicBoolean reserved = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            try {
+                waiting.countDown();
+                reserved.set(controller.tryReserve(500, 10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        waiting.await();
+        assertThat(reserved.get(), is(false));
+        controller.release(600);
+        thread.join(10000);
+        assertThat(reserved.get(), is(true));
+        assertThat(controller.getInFlightBytes(), is(900L));
+    }
+
+    @Test
+    public void testConcurrentRequests() throws InterruptedException {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 1, 1000);
+        controller.acquireRequest();
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            try {
+                controller.acquireRequest();
+                acquired.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join(100);
+        assertThat(acquired.get(), is(false));
+        controller.onResponse(10, TimeUnit.MILLISECONDS.toNanos(10), 0);
+        thread.join(10000);
+        assertThat(acquired.get(), is(true));
+        assertThat(controller.getConcurrentRequests(), lessThan(2));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class ESNodesSnifferTest extends AbstractFSCrawlerTestCase {
+
+    private static final String NODES = "{\"nodes\":{" +
+            "\"n1\":{\"roles\":[\"master\",\"data\",\"ingest\"],\"http\":{\"publish_address\":\"10.0.0.1:9200\"}}," +
+            "\"n2\":{\"roles\":[\"data\"],\"http\":{\"publish_address\":\"es2.local/10.0.0.2:9201\"}}," +
+            "\"n3\":{\"roles\":[\"master\"],\"http\":{\"publish_address\":\"10.0.0.3:9200\"}}," +
+            "\"n4\":{\"roles\":[\"data\"]}," +
+            "\"n5\":{\"roles\":[\"data\"],\"http\":{\"publish_address\":\"[::1]:9200\"}}" +
+            "}}";
+
+    private static Map<String, Object> nodes() {
+        return JsonUtil.asMap(new ByteArrayInputStream(NODES.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDataNodes() {
+        assertThat(ESNodesSniffer.dataNodes(nodes(), "https"),
+                containsInAnyOrder("https://10.0.0.1:9200", "https://es2.local:9201", "https://[::1]:9200"));
+        assertThat(ESNodesSniffer.dataNodes(null, "http"), empty());
+    }
+
+    @Test
+    public void testSniff() {
+        List<String> updated = new ArrayList<>();
+        ESNodesSniffer sniffer = new ESNodesSniffer(ESNodesSnifferTest::nodes, updated::addAll, "http", 1000);
+        sniffer.sniff();
+        assertThat(updated.size(), is(3));
+
+        // Errors are only logged
+        updated.clear();
+        sniffer = new ESNodesSniffer(() -> {
+            throw new IOException("cluster not available");
+        }, updated::addAll, "http", 1000);
+        sniffer.sniff();
+        assertThat(updated, empty());
+    }
+}
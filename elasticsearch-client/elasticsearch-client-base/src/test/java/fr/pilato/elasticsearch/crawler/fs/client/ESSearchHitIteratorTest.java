@@ -0,0 +1,130 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ESSearchHitIteratorTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * Serves totalHits hits, pageSize at a time
+     */
+    private static class FakeFetcher implements ESSearchHitIterator.PageFetcher {
+        private final int totalHits;
+        private final int pageSize;
+        private int served;
+        private int pages;
+        private String cleared;
+
+        private FakeFetcher(int totalHits, int pageSize) {
+            this.totalHits = totalHits;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public ESSearchResponse fetch(String scrollId) throws IOException {
+            if (pages > 0 && !"scroll".equals(scrollId)) {
+                throw new IOException("unexpected scroll id " + scrollId);
+            }
+            pages++;
+            ESSearchResponse response = new ESSearchResponse();
+            response.setScrollId("scroll");
+            for (int i = 0; i < pageSize && served < totalHits; i++, served++) {
+                ESSearchHit hit = new ESSearchHit();
+                hit.setId("doc-" + served);
+                response.addHit(hit);
+            }
+            return response;
+        }
+
+        @Override
+        public void clear(String scrollId) {
+            cleared = scrollId;
+        }
+    }
+
+    @Test
+    public void testAllHitsAreRead() {
+        FakeFetcher fetcher = new FakeFetcher(25, 10);
+        ESSearchHitIterator iterator = new ESSearchHitIterator(fetcher, 10);
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(hit -> ids.add(hit.getId()));
+        assertThat(ids, hasSize(25));
+        assertThat(ids.get(24), is("doc-24"));
+        // The last page is not full so we don't need a fourth request
+        assertThat(fetcher.pages, is(3));
+        assertThat(fetcher.cleared, is("scroll"));
+    }
+
+    @Test
+    public void testFullLastPage() {
+        FakeFetcher fetcher = new FakeFetcher(20, 10);
+        ESSearchHitIterator iterator = new ESSearchHitIterator(fetcher, 10);
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(hit -> ids.add(hit.getId()));
+        assertThat(ids, hasSize(20));
+        assertThat(fetcher.pages, is(3));
+        assertThat(fetcher.cleared, is("scroll"));
+    }
+
+    @Test
+    public void testCloseBeforeTheEnd() throws IOException {
+        FakeFetcher fetcher = new FakeFetcher(100, 10);
+        ESSearchHitIterator iterator = new ESSearchHitIterator(fetcher, 10);
+        assertThat(iterator.next().getId(), is("doc-0"));
+        assertThat(fetcher.cleared, nullValue());
+        iterator.close();
+        assertThat(fetcher.cleared, is("scroll"));
+        assertThat(iterator.hasNext(), is(true));
+        List<String> ids = new ArrayList<>();
+        iterator.forEachRemaining(hit -> ids.add(hit.getId()));
+        // Only the hits of the current page are still available
+        assertThat(ids, hasSize(9));
+        assertThat(fetcher.pages, is(1));
+    }
+
+    @Test
+    public void testFailure() {
+        ESSearchHitIterator iterator = new ESSearchHitIterator(new ESSearchHitIterator.PageFetcher() {
+            @Override
+            public ESSearchResponse fetch(String scrollId) throws IOException {
+                throw new IOException("boom");
+            }
+
+            @Override
+            public void clear(String scrollId) {
+            }
+        }, 10);
+        UncheckedIOException e = expectThrows(UncheckedIOException.class, iterator::hasNext);
+        assertThat(e.getCause().getMessage(), is("boom"));
+        assertThat(iterator.hasNext(), is(false));
+    }
+}
@@ -71,6 +71,11 @@ public abstract class ElasticsearchClientDummyBase implements ElasticsearchClien
         // Testing purpose only
     }
 
+    @Override
+    public long deleteByQuery(String index, ESQuery query) {
+        return 0;
+    }
+
     @Override
     public boolean isIngestSupported() {
         return false;
@@ -86,6 +91,16 @@ public abstract class ElasticsearchClientDummyBase implements ElasticsearchClien
         // Testing purpose only
     }
 
+    @Override
+    public void index(String index, String type, String id, byte[] json, int length, String pipeline) {
+        // Testing purpose only
+    }
+
+    @Override
+    public void setBulkItemListener(ESBulkItemListener listener) {
+        // Testing purpose only
+    }
+
     @Override
     public void indexSingle(String index, String type, String id, String json) {
         // Testing purpose only
@@ -106,6 +121,11 @@ public abstract class ElasticsearchClientDummyBase implements ElasticsearchClien
         return null;
     }
 
+    @Override
+    public ESSearchHitIterator scroll(ESSearchRequest request) {
+        return null;
+    }
+
     @Override
     public void deleteIndex(String index) {
         // Testing purpose only
@@ -0,0 +1,109 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.client;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class GzipHttpAsyncClientTest extends AbstractFSCrawlerTestCase {
+
+    private static String bulk(int docs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < docs; i++) {
+            sb.append("{\"index\":{\"_index\":\"docs\",\"_id\":\"").append(i).append("\"}}\n");
+            sb.append("{\"content\":\"This is the content of the document number ").append(i).append("\"}\n");
+        }
+        return sb.toString();
+    }
+
+    private static String decompress(HttpEntity entity) throws IOException {
+        try (InputStream is = new GZIPInputStream(entity.getContent())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        RequestCompressionStats stats = new RequestCompressionStats();
+        GzipHttpAsyncClient client = new GzipHttpAsyncClient(null, 1024, stats);
+
+        String body = bulk(100);
+        NStringEntity entity = new NStringEntity(body, ContentType.APPLICATION_JSON);
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/_bulk");
+        request.setEntity(entity);
+
+        assertThat(client.compress(request), is(true));
+        HttpEntity compressed = request.getEntity();
+        assertThat(compressed.getContentEncoding().getValue(), is("gzip"));
+        assertThat(compressed.getContentType().getValue(), is(entity.getContentType().getValue()));
+        assertThat(decompress(compressed), is(body));
+
+        assertThat(stats.getRequests(), is(1L));
+        assertThat(stats.getUncompressedBytes(), is(entity.getContentLength()));
+        assertThat(stats.getCompressedBytes(), is(compressed.getContentLength()));
+        assertThat(stats.getRatio(), lessThan(0.5));
+
+        // A retry on another node must not compress the body again
+        assertThat(client.compress(request), is(false));
+        assertThat(request.getEntity(), sameInstance(compressed));
+        assertThat(stats.getRequests(), is(1L));
+    }
+
+    @Test
+    public void testDoNotCompress() throws IOException {
+        RequestCompressionStats stats = new RequestCompressionStats();
+        GzipHttpAsyncClient client = new GzipHttpAsyncClient(null, 1024, stats);
+
+        // Too small
+        NStringEntity entity = new NStringEntity(bulk(1), ContentType.APPLICATION_JSON);
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/_bulk");
+        request.setEntity(entity);
+        assertThat(client.compress(request), is(false));
+        assertThat(EntityUtils.toString(request.getEntity()), is(bulk(1)));
+
+        // No body
+        assertThat(client.compress(new BasicHttpRequest("GET", "/")), is(false));
+        assertThat(stats.getRequests(), is(0L));
+        assertThat(stats.getRatio(), is(1.0));
+    }
+}
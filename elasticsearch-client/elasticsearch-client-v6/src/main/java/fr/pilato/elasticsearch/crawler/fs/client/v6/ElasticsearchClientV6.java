@@ -20,20 +20,26 @@
 package fr.pilato.elasticsearch.crawler.fs.client.v6;
 
 
+import fr.pilato.elasticsearch.crawler.fs.client.AdaptiveBulkController;
 import fr.pilato.elasticsearch.crawler.fs.client.ESBoolQuery;
+import fr.pilato.elasticsearch.crawler.fs.client.ESBulkItemListener;
 import fr.pilato.elasticsearch.crawler.fs.client.ESDocumentField;
 import fr.pilato.elasticsearch.crawler.fs.client.ESHighlightField;
 import fr.pilato.elasticsearch.crawler.fs.client.ESMatchQuery;
+import fr.pilato.elasticsearch.crawler.fs.client.ESNodesSniffer;
 import fr.pilato.elasticsearch.crawler.fs.client.ESPrefixQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESRangeQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHit;
+import fr.pilato.elasticsearch.crawler.fs.client.ESSearchHitIterator;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchRequest;
 import fr.pilato.elasticsearch.crawler.fs.client.ESSearchResponse;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermQuery;
 import fr.pilato.elasticsearch.crawler.fs.client.ESTermsAggregation;
+import fr.pilato.elasticsearch.crawler.fs.client.GzipHttpAsyncClient;
 import fr.pilato.elasticsearch.crawler.fs.client.ESVersion;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.client.RequestCompressionStats;
 import fr.pilato.elasticsearch.crawler.fs.framework.JsonUtil;
 import fr.pilato.elasticsearch.crawler.fs.settings.Elasticsearch;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
@@ -41,12 +47,16 @@ import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
@@ -54,6 +64,8 @@ import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -62,8 +74,11 @@ import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.ingest.GetPipelineRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Node;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
@@ -79,6 +94,7 @@ import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
@@ -92,6 +108,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 
 import static fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClientUtil.decodeCloudId;
@@ -112,6 +129,20 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
 
     private RestHighLevelClient client = null;
     private BulkProcessor bulkProcessor = null;
+    private AdaptiveBulkController bulkController = null;
+    private final AtomicInteger pendingActions = new AtomicInteger();
+    private volatile ESBulkItemListener bulkItemListener = null;
+    private ESNodesSniffer sniffer = null;
+    private final RequestCompressionStats compressionStats = new RequestCompressionStats();
+
+    private static final int SCROLL_SIZE = 1000;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final long DELETE_BY_QUERY_MAX_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long IN_FLIGHT_BYTES_POLL_INTERVAL_MS = 100;
+    // Same overhead as the one BulkRequest uses to estimate the size of an action
+    private static final int ACTION_OVERHEAD_BYTES = 50;
+    // Same as the default pool size of the low level client: 30 connections, 10 per node
+    private static final int MIN_NODES_IN_POOL = 3;
 
     /**
      * Type name for Elasticsearch versions >= 6.0
@@ -139,7 +170,7 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
 
         try {
             // Create an elasticsearch client
-            client = new RestHighLevelClient(buildRestClient(settings.getElasticsearch()));
+            client = new RestHighLevelClient(buildRestClient(settings.getElasticsearch(), compressionStats));
             checkVersion();
             logger.info("Elasticsearch Client for version {}.x connected to a node running version {}", compatibleVersion(), getVersion());
         } catch (Exception e) {
@@ -155,16 +186,116 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
             }
         }
 
-        BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer =
-                (request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener);
+        if (settings.getElasticsearch().isSniff()) {
+            sniffer = new ESNodesSniffer(this::getNodesHttp, this::setNodes,
+                    buildHosts(settings.getElasticsearch()).get(0).getSchemeName(),
+                    settings.getElasticsearch().getSniffInterval().millis());
+            sniffer.start();
+        }
+
+        int concurrentRequests = settings.getElasticsearch().getConcurrentRequests();
+        bulkController = new AdaptiveBulkController(settings.getElasticsearch().getBulkSize(), concurrentRequests,
+                settings.getElasticsearch().getMaxInFlightBytes().getBytes());
+        pendingActions.set(0);
+
+        BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer = (request, bulkListener) -> {
+            try {
+                bulkController.acquireRequest();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                bulkListener.onFailure(e);
+                return;
+            }
+            long start = System.nanoTime();
+            client.bulkAsync(request, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    bulkController.onResponse(request.numberOfActions(), System.nanoTime() - start, countRejected(response));
+                    bulkListener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    bulkController.onFailure();
+                    bulkListener.onFailure(e);
+                }
+            });
+        };
 
         bulkProcessor = BulkProcessor.builder(bulkConsumer, new DebugListener(logger))
                 .setBulkActions(settings.getElasticsearch().getBulkSize())
                 .setFlushInterval(TimeValue.timeValueMillis(settings.getElasticsearch().getFlushInterval().millis()))
                 .setBulkSize(new ByteSizeValue(settings.getElasticsearch().getByteSize().getBytes()))
+                .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                        TimeValue.timeValueMillis(settings.getElasticsearch().getBulkRetryDelay().millis()),
+                        settings.getElasticsearch().getBulkMaxRetries()))
                 .build();
     }
 
+    private Map<String, Object> getNodesHttp() throws IOException {
+        return asMap(client.getLowLevelClient().performRequest(new Request("GET", "/_nodes/http")));
+    }
+
+    private void setNodes(List<String> urls) {
+        List<Node> nodes = new ArrayList<>(urls.size());
+        urls.forEach(url -> nodes.add(new Node(HttpHost.create(url))));
+        client.getLowLevelClient().setNodes(nodes);
+    }
+
+    /**
+     * Count the actions the cluster rejected because it is overloaded
+     */
+    private static int countRejected(BulkResponse response) {
+        if (!response.hasFailures()) {
+            return 0;
+        }
+        int rejected = 0;
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Estimate the memory used by an action while it is waiting in the bulk processor
+     */
+    private static long sizeOf(DocWriteRequest<?> request) {
+        if (request instanceof IndexRequest) {
+            return ((IndexRequest) request).source().length() + ACTION_OVERHEAD_BYTES;
+        }
+        return ACTION_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Add an action to the bulk processor. If too many bytes are waiting to be acknowledged by the
+     * cluster, we flush and block the caller until some previous bulk requests are done.
+     */
+    private void add(DocWriteRequest<?> request) {
+        long bytes = sizeOf(request);
+        try {
+            while (!bulkController.tryReserve(bytes, IN_FLIGHT_BYTES_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                logger.trace("[{}] bytes are waiting to be indexed. Waiting for the cluster to catch up.",
+                        bulkController.getInFlightBytes());
+                bulkProcessor.flush();
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Interrupted while waiting for the cluster to catch up. Adding [{}] anyway.", request.id());
+            Thread.currentThread().interrupt();
+        }
+        try {
+            bulkProcessor.add(request);
+        } catch (RuntimeException e) {
+            bulkController.release(bytes);
+            throw e;
+        }
+        if (pendingActions.incrementAndGet() >= bulkController.getTargetActions()) {
+            bulkProcessor.flush();
+        }
+    }
+
     @Override
     public ESVersion getVersion() throws IOException {
         Version version = client.info(RequestOptions.DEFAULT).getVersion();
@@ -190,6 +321,47 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
         }
     }
 
+    /**
+     * Tell the listener what happened to every action of a bulk request. When the backoff policy retried some
+     * actions, only those were sent again, so the item ids of the final response are not the positions of the
+     * actions in the request anymore. Every action is acknowledged but the ones which still failed, which we
+     * find by id. We prefer the action on the same index as the response gives the concrete index behind an alias.
+     */
+    static void acknowledge(ESBulkItemListener listener, BulkRequest request, BulkResponse response) {
+        List<DocWriteRequest<?>> actions = new ArrayList<>(request.requests());
+        if (response.hasFailures()) {
+            for (BulkItemResponse bir : response.getItems()) {
+                if (bir.isFailed()) {
+                    DocWriteRequest<?> action = removeAction(actions, bir);
+                    if (action != null) {
+                        listener.onFailure(action.index(), action.id(), bir.getFailureMessage());
+                    } else {
+                        listener.onFailure(bir.getIndex(), bir.getId(), bir.getFailureMessage());
+                    }
+                }
+            }
+        }
+        for (DocWriteRequest<?> action : actions) {
+            listener.onSuccess(action.index(), action.id());
+        }
+    }
+
+    private static DocWriteRequest<?> removeAction(List<DocWriteRequest<?>> actions, BulkItemResponse bir) {
+        int sameId = -1;
+        for (int i = 0; i < actions.size(); i++) {
+            DocWriteRequest<?> action = actions.get(i);
+            if (action.id().equals(bir.getId())) {
+                if (action.index().equals(bir.getIndex())) {
+                    return actions.remove(i);
+                }
+                if (sameId < 0) {
+                    sameId = i;
+                }
+            }
+        }
+        return sameId < 0 ? null : actions.remove(sameId);
+    }
+
     class DebugListener implements BulkProcessor.Listener {
         private final Logger logger;
 
@@ -199,10 +371,13 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
 
         @Override public void beforeBulk(long executionId, BulkRequest request) {
             logger.trace("Sending a bulk request of [{}] requests", request.numberOfActions());
+            pendingActions.set(0);
         }
 
         @Override public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
             logger.trace("Executed bulk request with [{}] requests", request.numberOfActions());
+            release(request);
+            ESBulkItemListener listener = bulkItemListener;
             if (response.hasFailures()) {
                 final int[] failures = {0};
                 response.iterator().forEachRemaining(bir -> {
@@ -214,10 +389,28 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
                 });
                 logger.warn("Got [{}] failures of [{}] requests", failures[0], request.numberOfActions());
             }
+            if (listener != null) {
+                acknowledge(listener, request, response);
+            }
         }
 
         @Override public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
             logger.warn("Got a hard failure when executing the bulk request", failure);
+            release(request);
+            ESBulkItemListener listener = bulkItemListener;
+            if (listener != null) {
+                for (DocWriteRequest<?> action : request.requests()) {
+                    listener.onFailure(action.index(), action.id(), failure.getMessage());
+                }
+            }
+        }
+
+        private void release(BulkRequest request) {
+            long bytes = 0;
+            for (DocWriteRequest<?> action : request.requests()) {
+                bytes += sizeOf(action);
+            }
+            bulkController.release(bytes);
         }
     }
 
@@ -357,6 +550,50 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
         logger.debug("reindex response: {}", response);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public long deleteByQuery(String index, ESQuery query) throws IOException {
+        String deleteByQuery = "{ \"query\": " + toElasticsearchQuery(query).toString() + " }";
+        logger.debug("deleteByQuery [{}]: {}", index, deleteByQuery);
+
+        // We run the delete by query as a background task so long running deletions don't hit the socket timeout
+        Request request = new Request("POST", "/" + index + "/_delete_by_query");
+        request.addParameter("slices", "auto");
+        request.addParameter("conflicts", "proceed");
+        request.addParameter("wait_for_completion", "false");
+        request.setJsonEntity(deleteByQuery);
+        Response restResponse = client.getLowLevelClient().performRequest(request);
+        Map<String, Object> response = asMap(restResponse);
+        String taskId = (String) response.get("task");
+        logger.debug("delete by query task [{}] started on [{}]", taskId, index);
+
+        long waitMillis = 100;
+        while (true) {
+            Response taskResponse = client.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId));
+            Map<String, Object> task = asMap(taskResponse);
+            if (Boolean.TRUE.equals(task.get("completed"))) {
+                logger.debug("delete by query task [{}] response: {}", taskId, task);
+                if (task.get("error") != null) {
+                    throw new IOException("Delete by query on [" + index + "] failed: " + task.get("error"));
+                }
+                Map<String, Object> taskResult = (Map<String, Object>) task.get("response");
+                List<Object> failures = (List<Object>) taskResult.get("failures");
+                if (failures != null && !failures.isEmpty()) {
+                    throw new IOException("Delete by query on [" + index + "] failed: " + failures);
+                }
+                return ((Number) taskResult.get("deleted")).longValue();
+            }
+            logger.trace("delete by query task [{}] is still running", taskId);
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for delete by query task [" + taskId + "]", e);
+            }
+            waitMillis = Math.min(waitMillis * 2, DELETE_BY_QUERY_MAX_POLL_INTERVAL);
+        }
+    }
+
     // Utility methods
 
     public boolean isIngestSupported() {
@@ -369,7 +606,17 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
 
     @Override
     public void index(String index, String type, String id, String json, String pipeline) {
-        bulkProcessor.add(new IndexRequest(index, type, id).setPipeline(pipeline).source(json, XContentType.JSON));
+        add(new IndexRequest(index, type, id).setPipeline(pipeline).source(json, XContentType.JSON));
+    }
+
+    @Override
+    public void index(String index, String type, String id, byte[] json, int length, String pipeline) {
+        add(new IndexRequest(index, type, id).setPipeline(pipeline).source(json, 0, length, XContentType.JSON));
+    }
+
+    @Override
+    public void setBulkItemListener(ESBulkItemListener listener) {
+        this.bulkItemListener = listener;
     }
 
     @Override
@@ -381,12 +628,16 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
 
     @Override
     public void delete(String index, String type, String id) {
-        bulkProcessor.add(new DeleteRequest(index, type, id));
+        add(new DeleteRequest(index, type, id));
     }
 
     @Override
     public void close() throws IOException {
         logger.debug("Closing Elasticsearch client manager");
+        if (sniffer != null) {
+            sniffer.close();
+            sniffer = null;
+        }
         if (bulkProcessor != null) {
             try {
                 bulkProcessor.awaitClose(30, TimeUnit.SECONDS);
@@ -398,9 +649,12 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
         if (client != null) {
             client.close();
         }
+        if (compressionStats.getRequests() > 0) {
+            logger.info("Compressed requests sent to elasticsearch: {}", compressionStats);
+        }
     }
 
-    private static RestClientBuilder buildRestClient(Elasticsearch settings) {
+    private static List<HttpHost> buildHosts(Elasticsearch settings) {
         List<HttpHost> hosts = new ArrayList<>(settings.getNodes().size());
         settings.getNodes().forEach(node -> {
             if (node.getCloudId() != null) {
@@ -410,19 +664,56 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
                 hosts.add(HttpHost.create(node.getUrl()));
             }
         });
+        return hosts;
+    }
+
+    private static RestClientBuilder buildRestClient(Elasticsearch settings, RequestCompressionStats compressionStats) {
+        List<HttpHost> hosts = buildHosts(settings);
 
         RestClientBuilder builder = RestClient.builder(hosts.toArray(new HttpHost[hosts.size()]));
 
+        final CredentialsProvider credentialsProvider;
         if (settings.getUsername() != null) {
-            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider = new BasicCredentialsProvider();
             credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(settings.getUsername(), settings.getPassword()));
-            builder.setHttpClientConfigCallback(httpClientBuilder ->
-                    httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider));
+        } else {
+            credentialsProvider = null;
         }
 
+        // The pool must be large enough for the nodes we might discover when sniffing
+        int maxConnections = settings.getMaxConnectionsPerNode() * Math.max(hosts.size(), MIN_NODES_IN_POOL);
+        builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            httpClientBuilder.setMaxConnPerRoute(settings.getMaxConnectionsPerNode());
+            httpClientBuilder.setMaxConnTotal(maxConnections);
+            if (credentialsProvider != null) {
+                httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+            if (settings.getKeepAlive() != null) {
+                httpClientBuilder.setKeepAliveStrategy(keepAliveStrategy(settings.getKeepAlive().millis()));
+            }
+            if (settings.getIoThreads() > 0) {
+                httpClientBuilder.setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(settings.getIoThreads()).build());
+            }
+            if (settings.isCompression()) {
+                return GzipHttpAsyncClient.wrap(httpClientBuilder, settings.getCompressionMinSize().getBytes(), compressionStats);
+            }
+            return httpClientBuilder;
+        });
+
         return builder;
     }
 
+    /**
+     * Keep idle connections open for the duration sent by the node, but never longer than maxIdleMillis
+     * so we don't reuse connections which have been closed in the meantime by a proxy or a firewall.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long maxIdleMillis) {
+        return (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration < 0 ? maxIdleMillis : Math.min(duration, maxIdleMillis);
+        };
+    }
+
     public void createIndices() throws Exception {
         String elasticsearchVersion;
         Path jobMappingDir = config.resolve(settings.getName()).resolve("_mappings");
@@ -483,29 +774,7 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
         ESSearchResponse esSearchResponse = new ESSearchResponse();
         if (response.getHits() != null) {
             for (SearchHit hit : response.getHits()) {
-                ESSearchHit esSearchHit = new ESSearchHit();
-                if (!hit.getFields().isEmpty()) {
-                    Map<String, ESDocumentField> esFields = new HashMap<>();
-                    for (Map.Entry<String, DocumentField> entry : hit.getFields().entrySet()) {
-                        esFields.put(entry.getKey(), new ESDocumentField(entry.getKey(), entry.getValue().getValues()));
-                    }
-                    esSearchHit.setFields(esFields);
-                }
-                esSearchHit.setIndex(hit.getIndex());
-                esSearchHit.setId(hit.getId());
-                esSearchHit.setSourceAsMap(hit.getSourceAsMap());
-                esSearchHit.setSourceAsString(hit.getSourceAsString());
-
-                hit.getHighlightFields().forEach((key, value) -> {
-                    String[] texts = new String[value.fragments().length];
-                    for (int i = 0; i < value.fragments().length; i++) {
-                        Text fragment = value.fragments()[i];
-                        texts[i] = fragment.string();
-                    }
-                    esSearchHit.addHighlightField(key, new ESHighlightField(key, texts));
-                });
-
-                esSearchResponse.addHit(esSearchHit);
+                esSearchResponse.addHit(toESSearchHit(hit));
             }
 
             esSearchResponse.setTotalHits(response.getHits().getTotalHits());
@@ -525,6 +794,87 @@ public class ElasticsearchClientV6 implements ElasticsearchClient {
         return esSearchResponse;
     }
 
+    @Override
+    public ESSearchHitIterator scroll(ESSearchRequest request) {
+        int pageSize = request.getSize() != null ? request.getSize() : SCROLL_SIZE;
+        return new ESSearchHitIterator(new ESSearchHitIterator.PageFetcher() {
+            @Override
+            public ESSearchResponse fetch(String scrollId) throws IOException {
+                SearchResponse response;
+                if (scrollId == null) {
+                    SearchRequest searchRequest = new SearchRequest();
+                    if (!isNullOrEmpty(request.getIndex())) {
+                        searchRequest.indices(request.getIndex());
+                    }
+
+                    SearchSourceBuilder ssb = new SearchSourceBuilder();
+                    ssb.size(pageSize);
+                    if (!request.getFields().isEmpty()) {
+                        ssb.storedFields(request.getFields());
+                    }
+                    if (request.getESQuery() != null) {
+                        ssb.query(toElasticsearchQuery(request.getESQuery()));
+                    }
+                    // _doc is the most efficient sort order when we just need to read all the hits
+                    ssb.sort(isNullOrEmpty(request.getSort()) ? "_doc" : request.getSort());
+
+                    searchRequest.source(ssb);
+                    searchRequest.indicesOptions(LENIENT_EXPAND_OPEN);
+                    searchRequest.scroll(SCROLL_KEEP_ALIVE);
+                    response = client.search(searchRequest, RequestOptions.DEFAULT);
+                } else {
+                    SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+                    scrollRequest.scroll(SCROLL_KEEP_ALIVE);
+                    response = client.scroll(scrollRequest, RequestOptions.DEFAULT);
+                }
+
+                ESSearchResponse esSearchResponse = new ESSearchResponse();
+                esSearchResponse.setScrollId(response.getScrollId());
+                if (response.getHits() != null) {
+                    for (SearchHit hit : response.getHits()) {
+                        esSearchResponse.addHit(toESSearchHit(hit));
+                    }
+                    esSearchResponse.setTotalHits(response.getHits().getTotalHits());
+                }
+                logger.trace("Scroll [{}] returned [{}] hits", request.getIndex(), esSearchResponse.getHits().size());
+                return esSearchResponse;
+            }
+
+            @Override
+            public void clear(String scrollId) throws IOException {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+            }
+        }, pageSize);
+    }
+
+    private ESSearchHit toESSearchHit(SearchHit hit) {
+        ESSearchHit esSearchHit = new ESSearchHit();
+        if (!hit.getFields().isEmpty()) {
+            Map<String, ESDocumentField> esFields = new HashMap<>();
+            for (Map.Entry<String, DocumentField> entry : hit.getFields().entrySet()) {
+                esFields.put(entry.getKey(), new ESDocumentField(entry.getKey(), entry.getValue().getValues()));
+            }
+            esSearchHit.setFields(esFields);
+        }
+        esSearchHit.setIndex(hit.getIndex());
+        esSearchHit.setId(hit.getId());
+        esSearchHit.setSourceAsMap(hit.getSourceAsMap());
+        esSearchHit.setSourceAsString(hit.getSourceAsString());
+
+        hit.getHighlightFields().forEach((key, value) -> {
+            String[] texts = new String[value.fragments().length];
+            for (int i = 0; i < value.fragments().length; i++) {
+                Text fragment = value.fragments()[i];
+                texts[i] = fragment.string();
+            }
+            esSearchHit.addHighlightField(key, new ESHighlightField(key, texts));
+        });
+
+        return esSearchHit;
+    }
+
     private QueryBuilder toElasticsearchQuery(ESQuery query) {
         if (query instanceof ESTermQuery) {
             ESTermQuery esQuery = (ESTermQuery) query;
@@ -19,14 +19,36 @@
 
 package fr.pilato.elasticsearch.crawler.fs.client.v6;
 
+import fr.pilato.elasticsearch.crawler.fs.client.ESBulkItemListener;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClientUtil;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.ShardId;
 import org.junit.Test;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 
 public class ElasticsearchClientV6Test extends AbstractFSCrawlerTestCase {
 
@@ -40,4 +62,108 @@ public class ElasticsearchClientV6Test extends AbstractFSCrawlerTestCase {
         ElasticsearchClient instance = ElasticsearchClientUtil.getInstance(null, FsSettings.builder("foo").build());
         assertThat(instance, instanceOf(ElasticsearchClientV6.class));
     }
+
+    /**
+     * The backoff policy only sends the rejected actions again so the item ids of the final response
+     * are not the positions of the actions in the request
+     */
+    @Test
+    public void testRetriedItemsAreAcknowledged() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        BiConsumer<BulkRequest, ActionListener<BulkResponse>> consumer = (request, listener) -> {
+            BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                DocWriteRequest<?> action = request.requests().get(i);
+                if (attempts.get() == 0 && action.index().equals("folders")) {
+                    items[i] = new BulkItemResponse(i, DocWriteRequest.OpType.INDEX, new BulkItemResponse.Failure(
+                            action.index(), action.type(), action.id(), new EsRejectedExecutionException("rejected")));
+                } else {
+                    items[i] = new BulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                            new IndexResponse(new ShardId(action.index(), "_na_", 0), action.type(), action.id(), 1, 1, 1, true));
+                }
+            }
+            attempts.incrementAndGet();
+            listener.onResponse(new BulkResponse(items, 1));
+        };
+
+        Map<String, String> acknowledged = new TreeMap<>();
+        BulkProcessor processor = BulkProcessor.builder(consumer, new AcknowledgeListener(acknowledged))
+                .setBulkActions(10)
+                .setConcurrentRequests(0)
+                .setBackoffPolicy(BackoffPolicy.constantBackoff(TimeValue.timeValueMillis(1), 3))
+                .build();
+        processor.add(new IndexRequest("docs", "_doc", "1").source("{}", XContentType.JSON));
+        processor.add(new IndexRequest("docs", "_doc", "2").source("{}", XContentType.JSON));
+        processor.add(new IndexRequest("docs", "_doc", "3").source("{}", XContentType.JSON));
+        // The same id in another index is rejected once
+        processor.add(new IndexRequest("folders", "_doc", "2").source("{}", XContentType.JSON));
+        processor.awaitClose(10, TimeUnit.SECONDS);
+
+        assertThat(attempts.get(), is(2));
+        assertThat(acknowledged.size(), is(4));
+        assertThat(acknowledged, hasEntry("docs/1", "ok"));
+        assertThat(acknowledged, hasEntry("docs/2", "ok"));
+        assertThat(acknowledged, hasEntry("docs/3", "ok"));
+        assertThat(acknowledged, hasEntry("folders/2", "ok"));
+    }
+
+    @Test
+    public void testFailuresAreMatchedById() {
+        BulkRequest request = new BulkRequest();
+        request.add(new IndexRequest("docs", "_doc", "1").source("{}", XContentType.JSON));
+        request.add(new IndexRequest("docs", "_doc", "2").source("{}", XContentType.JSON));
+        request.add(new IndexRequest("folders", "_doc", "2").source("{}", XContentType.JSON));
+        // Like the response of a retried request which only had the folder
+        BulkResponse response = new BulkResponse(new BulkItemResponse[] {
+                new BulkItemResponse(0, DocWriteRequest.OpType.INDEX, new BulkItemResponse.Failure(
+                        "folders", "_doc", "2", new IllegalArgumentException("mapper_parsing_exception")))
+        }, 1);
+
+        Map<String, String> acknowledged = new TreeMap<>();
+        ElasticsearchClientV6.acknowledge(new RecordingListener(acknowledged), request, response);
+        assertThat(acknowledged.size(), is(3));
+        assertThat(acknowledged, hasEntry("docs/1", "ok"));
+        assertThat(acknowledged, hasEntry("docs/2", "ok"));
+        assertThat(acknowledged, hasEntry("folders/2", "java.lang.IllegalArgumentException: mapper_parsing_exception"));
+    }
+
+    private static class RecordingListener implements ESBulkItemListener {
+        private final Map<String, String> acknowledged;
+
+        private RecordingListener(Map<String, String> acknowledged) {
+            this.acknowledged = acknowledged;
+        }
+
+        @Override
+        public void onSuccess(String index, String id) {
+            acknowledged.put(index + "/" + id, "ok");
+        }
+
+        @Override
+        public void onFailure(String index, String id, String failure) {
+            acknowledged.put(index + "/" + id, failure);
+        }
+    }
+
+    private static class AcknowledgeListener implements BulkProcessor.Listener {
+        private final ESBulkItemListener listener;
+
+        private AcknowledgeListener(Map<String, String> acknowledged) {
+            this.listener = new RecordingListener(acknowledged);
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            ElasticsearchClientV6.acknowledge(listener, request, response);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            throw new AssertionError(failure);
+        }
+    }
 }
@@ -0,0 +1,234 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code fs.filters} regular expressions, compiled once for the whole job. All of them need to match the
+ * extracted content (anywhere in the text) for a document to be indexed.
+ * <p>
+ * The filters can be checked against the full content with {@link #matches(CharSequence)} or while the content
+ * is being extracted with {@link #writer(Writer)}.
+ */
+public class ContentFilter {
+
+    private static final ContentFilter EMPTY = new ContentFilter(Collections.emptyList(), new Pattern[0]);
+
+    private final List<String> filters;
+    private final Pattern[] patterns;
+
+    private ContentFilter(List<String> filters, Pattern[] patterns) {
+        this.filters = filters;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Compile a list of filters
+     * @param filters the regular expressions. May be null.
+     * @return a filter which matches a content if all the regular expressions are found in it
+     */
+    public static ContentFilter compile(List<String> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return EMPTY;
+        }
+        Pattern[] patterns = new Pattern[filters.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = Pattern.compile(filters.get(i), Pattern.MULTILINE | Pattern.UNIX_LINES);
+        }
+        return new ContentFilter(Collections.unmodifiableList(filters), patterns);
+    }
+
+    /**
+     * @return true if there is no filter, which means that any content matches
+     */
+    public boolean isEmpty() {
+        return patterns.length == 0;
+    }
+
+    /**
+     * @param content the content. A null or empty content always matches.
+     * @return true if all the filters are found in the content
+     */
+    public boolean matches(CharSequence content) {
+        if (content == null || content.length() == 0) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (!pattern.matcher(content).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check the filters while the content is written
+     * @param out where the content is written to
+     * @return a writer which writes to {@code out} and checks the filters. Once the whole content has been
+     * written, call {@link StreamingFilter#matches()}.
+     */
+    public StreamingFilter writer(Writer out) {
+        return new StreamingFilter(out, patterns);
+    }
+
+    public List<String> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public String toString() {
+        return filters.toString();
+    }
+
+    /**
+     * Checks the filters while the content is written, first after {@link #MIN_CHECK_INTERVAL} chars then less and
+     * less often up to every {@link #MAX_CHECK_INTERVAL} chars, so filters found at the beginning of a document are
+     * found soon. A filter is not checked
+     * anymore once it has matched and the content is not kept anymore once all the filters have matched.
+     * <p>
+     * A filter is searched again only from the position where a match could still start: if the regex engine did
+     * not need more input to fail, no match can start before the end of what has been written so far. Otherwise,
+     * we only search again the last {@link #WINDOW} chars, so a match must not be longer than that to be found.
+     * The content before the window is not kept, so a document is checked in linear time and memory.
+     */
+    public static class StreamingFilter extends Writer {
+
+        private static final int MIN_CHECK_INTERVAL = 1024;
+        private static final int MAX_CHECK_INTERVAL = 16 * 1024;
+        private static final int WINDOW = 4 * MAX_CHECK_INTERVAL;
+        // What we keep before the window for the anchors, the word boundaries and the look-behinds
+        private static final int LOOKBEHIND = 1024;
+
+        private final Writer out;
+        private final Pattern[] patterns;
+        private final boolean[] matched;
+        private final int[] from;
+        private StringBuilder content = new StringBuilder();
+        private int pending;
+        private long written;
+        private int checked;
+        private int interval = MIN_CHECK_INTERVAL;
+
+        private StreamingFilter(Writer out, Pattern[] patterns) {
+            this.out = out;
+            this.patterns = patterns;
+            this.matched = new boolean[patterns.length];
+            this.from = new int[patterns.length];
+            this.pending = patterns.length;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            written += len;
+            if (pending > 0) {
+                content.append(cbuf, off, len);
+                if (content.length() - checked >= interval) {
+                    check(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            written += len;
+            if (pending > 0) {
+                content.append(str, off, off + len);
+                if (content.length() - checked >= interval) {
+                    check(false);
+                }
+            }
+        }
+
+        /**
+         * @return true if all the filters have matched the content written so far. A null or empty content
+         * always matches. This must be called once the whole content has been written.
+         */
+        public boolean matches() {
+            if (pending > 0 && written > 0) {
+                check(true);
+            }
+            return pending == 0 || written == 0;
+        }
+
+        private void check(boolean complete) {
+            int end = content.length();
+            int keep = end;
+            for (int i = 0; i < patterns.length; i++) {
+                if (matched[i]) {
+                    continue;
+                }
+                Matcher matcher = patterns[i].matcher(content)
+                        .region(from[i], end)
+                        .useTransparentBounds(true)
+                        .useAnchoringBounds(false);
+                if (matcher.find()) {
+                    // More content could change the match (think about "foo$" or "foo\\b")
+                    if (complete || (!matcher.hitEnd() && !matcher.requireEnd())) {
+                        matched[i] = true;
+                        pending--;
+                        continue;
+                    }
+                    from[i] = Math.max(from[i], end - WINDOW);
+                } else if (!matcher.hitEnd()) {
+                    from[i] = end;
+                } else {
+                    from[i] = Math.max(from[i], end - WINDOW);
+                }
+                keep = Math.min(keep, from[i]);
+            }
+            checked = end;
+            interval = Math.min(interval * 2, MAX_CHECK_INTERVAL);
+            if (pending == 0) {
+                // We don't need to keep the content anymore
+                content = new StringBuilder();
+                return;
+            }
+            // We don't need the content before the filters which have not matched yet
+            int start = keep - LOOKBEHIND;
+            if (start > 0) {
+                content.delete(0, start);
+                for (int i = 0; i < from.length; i++) {
+                    if (!matched[i]) {
+                        from[i] -= start;
+                    }
+                }
+                checked -= start;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // We are not the owner of the writer
+        }
+    }
+}
@@ -45,6 +45,7 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
@@ -60,7 +61,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
 
 public class FsCrawlerUtil {
     public static final String INDEX_SUFFIX_FOLDER = "_folder";
@@ -158,37 +158,36 @@ public class FsCrawlerUtil {
     /**
      * We check if we can index the file or if we should ignore it
      *
+     * @param directory true if the current file is a directory, false in other case (actual file)
      * @param filename The filename to scan
      * @param includes include rules, may be empty not null
      * @param excludes exclude rules, may be empty not null
+     * @deprecated the rules are compiled for every call. Compile them once with {@link GlobMatcher#compile(List)}
+     * and use {@link #isIndexable(boolean, String, GlobMatcher, GlobMatcher)}.
      */
-    private static boolean isIndexable(String filename, List<String> includes, List<String> excludes) {
-        boolean excluded = isExcluded(filename, excludes);
-        if (excluded) return false;
-
-        return isIncluded(filename, includes);
+    @Deprecated
+    public static boolean isIndexable(boolean directory, String filename, List<String> includes, List<String> excludes) {
+        logger.debug("directory = [{}], filename = [{}], includes = [{}], excludes = [{}]", directory, filename, includes, excludes);
+        return isIndexable(directory, filename, GlobMatcher.compile(includes), GlobMatcher.compile(excludes));
     }
 
     /**
-     * We check if we can index the file or if we should ignore it
+     * We check if we can index the file or if we should ignore it. This is what the crawler calls for every
+     * file so the rules must have been compiled once with {@link GlobMatcher#compile(List)}.
      *
      * @param directory true if the current file is a directory, false in other case (actual file)
      * @param filename The filename to scan
-     * @param includes include rules, may be empty not null
-     * @param excludes exclude rules, may be empty not null
+     * @param includes include rules
+     * @param excludes exclude rules
      */
-    public static boolean isIndexable(boolean directory, String filename, List<String> includes, List<String> excludes) {
-        logger.debug("directory = [{}], filename = [{}], includes = [{}], excludes = [{}]", directory, filename, includes, excludes);
-
-        boolean isIndexable = isIndexable(filename, includes, excludes);
+    public static boolean isIndexable(boolean directory, String filename, GlobMatcher includes, GlobMatcher excludes) {
+        if (isExcluded(filename, excludes)) {
+            return false;
+        }
 
         // It can happen that we a dir "foo" which does not match the include name like "*.txt"
         // We need to go in it unless it has been explicitly excluded by the user
-        if (directory && !isExcluded(filename, excludes)) {
-            isIndexable = true;
-        }
-
-        return isIndexable;
+        return directory || isIncluded(filename, includes);
     }
 
     /**
@@ -196,28 +195,24 @@ public class FsCrawlerUtil {
      *
      * @param filename The filename to scan
      * @param excludes exclude rules, may be empty not null
+     * @deprecated the rules are compiled for every call. Compile them once with {@link GlobMatcher#compile(List)}
+     * and use {@link #isExcluded(String, GlobMatcher)}.
      */
+    @Deprecated
     public static boolean isExcluded(String filename, List<String> excludes) {
         logger.debug("filename = [{}], excludes = [{}]", filename, excludes);
+        return isExcluded(filename, GlobMatcher.compile(excludes));
+    }
 
+    /**
+     * We check if we can index the file or if we should ignore it
+     *
+     * @param filename The filename to scan
+     * @param excludes compiled exclude rules
+     */
+    public static boolean isExcluded(String filename, GlobMatcher excludes) {
         // No rules ? Fine, we index everything
-        if (excludes == null || excludes.isEmpty()) {
-            logger.trace("no rules");
-            return false;
-        }
-
-        // Exclude rules : we know that whatever includes rules are, we should exclude matching files
-        for (String exclude : excludes) {
-            String regex = exclude.toLowerCase().replace("?", ".?").replace("*", ".*?");
-            logger.trace("regex is [{}]", regex);
-            if (filename.toLowerCase().matches(regex)) {
-                logger.trace("does match exclude regex");
-                return true;
-            }
-        }
-
-        logger.trace("does not match any exclude pattern");
-        return false;
+        return !excludes.isEmpty() && excludes.matches(filename);
     }
 
     /**
@@ -225,27 +220,24 @@ public class FsCrawlerUtil {
      *
      * @param filename The filename to scan
      * @param includes include rules, may be empty not null
+     * @deprecated the rules are compiled for every call. Compile them once with {@link GlobMatcher#compile(List)}
+     * and use {@link #isIncluded(String, GlobMatcher)}.
      */
+    @Deprecated
     public static boolean isIncluded(String filename, List<String> includes) {
         logger.debug("filename = [{}], includes = [{}]", filename, includes);
+        return isIncluded(filename, GlobMatcher.compile(includes));
+    }
 
+    /**
+     * We check if we can index the file or if we should ignore it
+     *
+     * @param filename The filename to scan
+     * @param includes compiled include rules
+     */
+    public static boolean isIncluded(String filename, GlobMatcher includes) {
         // No rules ? Fine, we index everything
-        if (includes == null || includes.isEmpty()) {
-            logger.trace("no include rules");
-            return true;
-        }
-
-        for (String include : includes) {
-            String regex = include.toLowerCase().replace("?", ".?").replace("*", ".*?");
-            logger.trace("regex is [{}]", regex);
-            if (filename.toLowerCase().matches(regex)) {
-                logger.trace("does match include regex");
-                return true;
-            }
-        }
-
-        logger.trace("does not match any include pattern");
-        return false;
+        return includes.isEmpty() || includes.matches(filename);
     }
 
     /**
@@ -257,29 +249,28 @@ public class FsCrawlerUtil {
      */
     public static boolean isIndexable(String content, List<String> filters) {
         logger.debug("content = [{}], filters = {}", content, filters);
+        return isIndexable(content, ContentFilter.compile(filters));
+    }
 
+    /**
+     * We check if we can index the content or skip it
+     *
+     * @param content Content to parse
+     * @param filters compiled regular expressions that all needs to match if we want to index. If empty
+     *                we consider it always matches.
+     */
+    public static boolean isIndexable(String content, ContentFilter filters) {
         if (isNullOrEmpty(content)) {
             logger.trace("Null or empty content always matches.");
             return true;
         }
 
-        if (filters == null || filters.isEmpty()) {
+        if (filters.isEmpty()) {
             logger.trace("No pattern always matches.");
             return true;
         }
 
-        for (String filter : filters) {
-            Pattern pattern = Pattern.compile(filter, Pattern.MULTILINE | Pattern.UNIX_LINES);
-            logger.trace("Testing filter [{}]", filter);
-            if (!pattern.matcher(content).find()) {
-                logger.trace("Filter [{}] is not matching.", filter);
-                return false;
-            } else {
-                logger.trace("Filter [{}] is matching.", filter);
-            }
-        }
-
-        return true;
+        return filters.matches(content);
     }
 
     public static String computeVirtualPathName(String rootPath, String realPath) {
@@ -335,6 +326,18 @@ public class FsCrawlerUtil {
         return time;
     }
 
+    /**
+     * Convert a file time to a local date time
+     * @param time file time as read from the file attributes. Might be null.
+     * @return the local date time or null
+     */
+    public static LocalDateTime toLocalDateTime(FileTime time) {
+        if (time == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault());
+    }
+
     public static Date localDateTimeToDate(LocalDateTime ldt) {
         return Date.from(ldt.atZone(TimeZone.getDefault().toZoneId()).toInstant());
     }
@@ -350,6 +353,10 @@ public class FsCrawlerUtil {
         return FilenameUtils.getExtension(file.getAbsolutePath()).toLowerCase();
     }
 
+    public static String getFileExtension(String filename) {
+        return FilenameUtils.getExtension(filename).toLowerCase();
+    }
+
     /**
      * Determines the 'owner' of the file.
      */
@@ -395,21 +402,7 @@ public class FsCrawlerUtil {
         try {
             final Path path = Paths.get(file.getAbsolutePath());
             PosixFileAttributes attrs = Files.getFileAttributeView(path, PosixFileAttributeView.class).readAttributes();
-            Set<PosixFilePermission> permissions = attrs.permissions();
-            int user = toOctalPermission(
-                    permissions.contains(PosixFilePermission.OWNER_READ),
-                    permissions.contains(PosixFilePermission.OWNER_WRITE),
-                    permissions.contains(PosixFilePermission.OWNER_EXECUTE));
-            int group = toOctalPermission(
-                    permissions.contains(PosixFilePermission.GROUP_READ),
-                    permissions.contains(PosixFilePermission.GROUP_WRITE),
-                    permissions.contains(PosixFilePermission.GROUP_EXECUTE));
-            int others = toOctalPermission(
-                    permissions.contains(PosixFilePermission.OTHERS_READ),
-                    permissions.contains(PosixFilePermission.OTHERS_WRITE),
-                    permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
-
-            return user * 100 + group * 10 + others;
+            return getFilePermissions(attrs);
         }
         catch(Exception e) {
             logger.warn("Failed to determine 'owner' of {}: {}", file, e.getMessage());
@@ -417,6 +410,27 @@ public class FsCrawlerUtil {
         }
     }
 
+    /**
+     * Determines file permissions from already read attributes.
+     */
+    public static int getFilePermissions(final PosixFileAttributes attrs) {
+        Set<PosixFilePermission> permissions = attrs.permissions();
+        int user = toOctalPermission(
+                permissions.contains(PosixFilePermission.OWNER_READ),
+                permissions.contains(PosixFilePermission.OWNER_WRITE),
+                permissions.contains(PosixFilePermission.OWNER_EXECUTE));
+        int group = toOctalPermission(
+                permissions.contains(PosixFilePermission.GROUP_READ),
+                permissions.contains(PosixFilePermission.GROUP_WRITE),
+                permissions.contains(PosixFilePermission.GROUP_EXECUTE));
+        int others = toOctalPermission(
+                permissions.contains(PosixFilePermission.OTHERS_READ),
+                permissions.contains(PosixFilePermission.OTHERS_WRITE),
+                permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
+
+        return user * 100 + group * 10 + others;
+    }
+
     private static int toOctalPermission(boolean read, boolean write, boolean execute) {
         return (read ? 4 : 0) + (write ? 2 : 0) + (execute ? 1 : 0);
     }
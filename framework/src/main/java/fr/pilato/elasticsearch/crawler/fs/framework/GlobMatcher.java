@@ -0,0 +1,277 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A list of rules like {@code fs.includes} or {@code fs.excludes} which is compiled once and then checked
+ * against a lot of filenames, in a single pass over the filename and without allocating anything.
+ * <p>
+ * The rules have the meaning they always had in FSCrawler, where each rule was transformed to a regular expression:
+ * <ul>
+ *     <li>a rule must match the whole filename and is case insensitive</li>
+ *     <li>{@code *} matches any sequence of chars</li>
+ *     <li>{@code ?} matches zero or one char</li>
+ *     <li>{@code .} matches any char</li>
+ * </ul>
+ * All the rules are compiled together in a bit-parallel automaton (each bit is a position in one of the rules).
+ * The rules which contain other regular expression chars (like {@code [a-z]}) are kept as regular expressions.
+ */
+public class GlobMatcher {
+
+    private static final GlobMatcher EMPTY = new GlobMatcher(Collections.emptyList(), new Automaton[0], new Pattern[0]);
+
+    /**
+     * Chars which have a meaning in a regular expression. If a rule has any of them, we can't use the automaton.
+     */
+    private static final String REGEX_CHARS = "\\[](){}+^$|";
+
+    private final List<String> rules;
+    private final Automaton[] automata;
+    private final Pattern[] patterns;
+
+    private GlobMatcher(List<String> rules, Automaton[] automata, Pattern[] patterns) {
+        this.rules = rules;
+        this.automata = automata;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Compile a list of rules
+     * @param rules the rules. May be null.
+     * @return a matcher which matches a filename if any of the rules matches it
+     */
+    public static GlobMatcher compile(List<String> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Automaton> automata = new ArrayList<>();
+        List<Pattern> patterns = new ArrayList<>();
+        Automaton.Builder builder = new Automaton.Builder();
+        for (String rule : rules) {
+            String lowercase = rule.toLowerCase(Locale.ROOT);
+            if (!isSimple(lowercase)) {
+                patterns.add(Pattern.compile(lowercase.replace("?", ".?").replace("*", ".*?")));
+            } else if (!builder.add(lowercase)) {
+                automata.add(builder.build());
+                builder = new Automaton.Builder();
+                builder.add(lowercase);
+            }
+        }
+        if (!builder.isEmpty()) {
+            automata.add(builder.build());
+        }
+
+        return new GlobMatcher(Collections.unmodifiableList(new ArrayList<>(rules)),
+                automata.toArray(new Automaton[0]), patterns.toArray(new Pattern[0]));
+    }
+
+    private static boolean isSimple(String rule) {
+        if (rule.length() >= Long.SIZE) {
+            // A rule and its final state must fit in a long
+            return false;
+        }
+        for (int i = 0; i < rule.length(); i++) {
+            if (REGEX_CHARS.indexOf(rule.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if there is no rule
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param filename the filename to check
+     * @return true if any of the rules matches the filename
+     */
+    public boolean matches(String filename) {
+        for (Automaton automaton : automata) {
+            if (automaton.matches(filename)) {
+                return true;
+            }
+        }
+        if (patterns.length > 0) {
+            String lowercase = filename.toLowerCase(Locale.ROOT);
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(lowercase).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    @Override
+    public String toString() {
+        return rules.toString();
+    }
+
+    /**
+     * A shift-and automaton for up to 64 positions. Each rule of n chars uses n + 1 bits: one bit per char
+     * (we are about to match this char) and one bit for its final state.
+     */
+    private static final class Automaton {
+        // The first position of each rule
+        private final long start;
+        // The final position of each rule
+        private final long accept;
+        // Positions where we can match any char and move on ('.' and '?')
+        private final long any;
+        // Positions where we can match any char and stay ('*')
+        private final long star;
+        // Positions we can skip without matching anything ('?' and '*')
+        private final long skip;
+        // Positions where we can match a given ASCII char and move on
+        private final long[] ascii;
+        // Same for the non ASCII chars, which are rare in rules
+        private final char[] otherChars;
+        private final long[] otherMasks;
+
+        private Automaton(Builder builder) {
+            this.start = builder.start;
+            this.accept = builder.accept;
+            this.any = builder.any;
+            this.star = builder.star;
+            this.skip = builder.skip;
+            this.ascii = builder.ascii;
+            this.otherChars = new char[builder.otherChars.length()];
+            this.otherMasks = new long[otherChars.length];
+            for (int i = 0; i < otherChars.length; i++) {
+                otherChars[i] = builder.otherChars.charAt(i);
+                otherMasks[i] = builder.otherMasks.get(i);
+            }
+        }
+
+        boolean matches(String filename) {
+            long state = closure(start);
+            for (int i = 0; i < filename.length(); i++) {
+                char c = Character.toLowerCase(filename.charAt(i));
+                long moving = literal(c);
+                long staying = 0;
+                // Like in a regular expression, a '.' does not match a line terminator
+                if (!isLineTerminator(c)) {
+                    moving |= any;
+                    staying = state & star;
+                }
+                state = closure(((state & moving) << 1) | staying);
+                if (state == 0) {
+                    return false;
+                }
+            }
+            return (state & accept) != 0;
+        }
+
+        private long literal(char c) {
+            if (c < ascii.length) {
+                return ascii[c];
+            }
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) {
+                    return otherMasks[i];
+                }
+            }
+            return 0;
+        }
+
+        private long closure(long state) {
+            long previous;
+            do {
+                previous = state;
+                state |= (state & skip) << 1;
+            } while (state != previous);
+            return state;
+        }
+
+        private static boolean isLineTerminator(char c) {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+
+        private static final class Builder {
+            private int positions;
+            private long start;
+            private long accept;
+            private long any;
+            private long star;
+            private long skip;
+            private final long[] ascii = new long[128];
+            private final StringBuilder otherChars = new StringBuilder();
+            private final List<Long> otherMasks = new ArrayList<>();
+
+            /**
+             * @return false if the rule does not fit anymore in this automaton
+             */
+            boolean add(String rule) {
+                if (positions + rule.length() + 1 > Long.SIZE) {
+                    return false;
+                }
+                start |= 1L << positions;
+                for (int i = 0; i < rule.length(); i++) {
+                    long bit = 1L << positions++;
+                    char c = rule.charAt(i);
+                    if (c == '*') {
+                        star |= bit;
+                        skip |= bit;
+                    } else if (c == '?') {
+                        any |= bit;
+                        skip |= bit;
+                    } else if (c == '.') {
+                        any |= bit;
+                    } else if (c < ascii.length) {
+                        ascii[c] |= bit;
+                    } else {
+                        int index = otherChars.indexOf(String.valueOf(c));
+                        if (index < 0) {
+                            otherChars.append(c);
+                            otherMasks.add(bit);
+                        } else {
+                            otherMasks.set(index, otherMasks.get(index) | bit);
+                        }
+                    }
+                }
+                accept |= 1L << positions++;
+                return true;
+            }
+
+            boolean isEmpty() {
+                return positions == 0;
+            }
+
+            Automaton build() {
+                return new Automaton(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable UTF-8 byte buffer holding a JSON document which is built in one pass.
+ * Structural JSON is appended with the {@code writeRaw} methods while the text written to it as a {@link Writer}
+ * is escaped as the content of a JSON string. This lets a producer (like a Tika content handler) write
+ * a large text value directly in its final form, without building intermediate Strings.
+ */
+public class JsonBuffer extends Writer {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int CHUNK_SIZE = 4096;
+    // An escaped control char is 6 bytes long
+    private static final int MAX_BYTES_PER_CHAR = 6;
+    private static final boolean[] ESCAPED = new boolean[0x80];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPED[i] = true;
+        }
+        ESCAPED['"'] = true;
+        ESCAPED['\\'] = true;
+    }
+
+    private byte[] buf;
+    private int count;
+    private char pendingHighSurrogate;
+
+    public JsonBuffer(int initialCapacity) {
+        this.buf = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Append JSON which must not be escaped
+     */
+    public void writeRaw(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Append a JSON structural character (like a brace or a comma)
+     * @param c an ASCII char
+     */
+    public void writeRaw(char c) {
+        flushPendingSurrogate();
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+    }
+
+    /**
+     * Append JSON which must not be escaped
+     * @param bytes UTF-8 encoded JSON
+     * @param offset where to start from
+     * @param length how many bytes to append
+     */
+    public void writeRaw(byte[] bytes, int offset, int length) {
+        flushPendingSurrogate();
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            int chunkEnd = Math.min(end, off + CHUNK_SIZE);
+            // We reserve the worst case once per chunk so the loop does not check the capacity for every char
+            ensureCapacity((chunkEnd - off) * MAX_BYTES_PER_CHAR);
+            for (; off < chunkEnd; off++) {
+                char c = cbuf[off];
+                if (c < 0x80 && !ESCAPED[c] && pendingHighSurrogate == 0) {
+                    buf[count++] = (byte) c;
+                } else {
+                    writeEscaped(c);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            int chunkEnd = Math.min(end, off + CHUNK_SIZE);
+            ensureCapacity((chunkEnd - off) * MAX_BYTES_PER_CHAR);
+            for (; off < chunkEnd; off++) {
+                char c = str.charAt(off);
+                if (c < 0x80 && !ESCAPED[c] && pendingHighSurrogate == 0) {
+                    buf[count++] = (byte) c;
+                } else {
+                    writeEscaped(c);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity(1);
+        writeEscaped((char) c);
+    }
+
+    private void writeEscaped(char c) {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                buf[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            writeReplacementChar();
+        }
+
+        if (c < 0x80) {
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                ensureCapacity(1);
+                buf[count++] = (byte) c;
+            } else {
+                writeEscapedAscii(c);
+            }
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buf[count++] = (byte) (0xc0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            // We need the next char which might come with the next write
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeReplacementChar();
+        } else {
+            ensureCapacity(3);
+            buf[count++] = (byte) (0xe0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void writeEscapedAscii(char c) {
+        ensureCapacity(6);
+        buf[count++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                buf[count++] = (byte) c;
+                break;
+            case '\b':
+                buf[count++] = 'b';
+                break;
+            case '\f':
+                buf[count++] = 'f';
+                break;
+            case '\n':
+                buf[count++] = 'n';
+                break;
+            case '\r':
+                buf[count++] = 'r';
+                break;
+            case '\t':
+                buf[count++] = 't';
+                break;
+            default:
+                buf[count++] = 'u';
+                buf[count++] = '0';
+                buf[count++] = '0';
+                buf[count++] = HEX[c >> 4];
+                buf[count++] = HEX[c & 0xf];
+        }
+    }
+
+    /**
+     * Unpaired surrogates can not be encoded in UTF-8. We replace them with U+FFFD like a UTF-8 decoder would do.
+     */
+    private void writeReplacementChar() {
+        ensureCapacity(3);
+        buf[count++] = (byte) 0xef;
+        buf[count++] = (byte) 0xbf;
+        buf[count++] = (byte) 0xbd;
+    }
+
+    private void flushPendingSurrogate() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            writeReplacementChar();
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (count + additional > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + additional));
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Forget everything which has been written after a given size
+     * @param size the size to go back to
+     */
+    public void truncate(int size) {
+        if (size > count) {
+            throw new IllegalArgumentException("Can not truncate to [" + size + "] bytes as we only have [" + count + "]");
+        }
+        pendingHighSurrogate = 0;
+        count = size;
+    }
+
+    /**
+     * The internal buffer. It is not copied: only the first {@link #size()} bytes are meaningful.
+     */
+    public byte[] bytes() {
+        return buf;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to flush
+    }
+
+    @Override
+    public void close() {
+        flushPendingSurrogate();
+    }
+}
@@ -25,6 +25,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * Provides utility methods to read and write metadata and settings files
@@ -68,10 +73,34 @@ public class MetaFileHandler {
 
             // If the dir does not exist, we need to create it
             if (Files.notExists(dir)) {
-                Files.createDirectory(dir);
+                Files.createDirectories(dir);
             }
         }
-        Files.write(dir.resolve(filename), content.getBytes(StandardCharsets.UTF_8));
+        // We write to a temporary file first so a crash never leaves a truncated file behind
+        Path tmp = dir.resolve(filename + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, dir.resolve(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Append some content to a file in ~/.fscrawler/{subdir} dir. The content is synced to the disk before returning.
+     * @param subdir subdir where we can write the file (null if we write in the root dir)
+     * @param filename filename
+     * @param content The String UTF-8 content to append
+     * @throws IOException in case of error while writing
+     */
+    protected void appendFile(String subdir, String filename, String content) throws IOException {
+        Path dir = root;
+        if (subdir != null) {
+            dir = dir.resolve(subdir);
+
+            // If the dir does not exist, we need to create it
+            if (Files.notExists(dir)) {
+                Files.createDirectories(dir);
+            }
+        }
+        Files.write(dir.resolve(filename), content.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
     }
 
     /**
@@ -87,4 +116,22 @@ public class MetaFileHandler {
         }
         Files.deleteIfExists(dir.resolve(filename));
     }
+
+    /**
+     * Remove a dir and all its content from ~/.fscrawler/{subdir} dir
+     * @param subdir subdir we want to remove
+     * @throws IOException in case of error while removing
+     */
+    protected void removeDir(String subdir) throws IOException {
+        Path dir = root.resolve(subdir);
+        if (Files.notExists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            Iterator<Path> iterator = paths.sorted(Comparator.reverseOrder()).iterator();
+            while (iterator.hasNext()) {
+                Files.delete(iterator.next());
+            }
+        }
+    }
 }
@@ -19,6 +19,7 @@
 
 package fr.pilato.elasticsearch.crawler.fs.framework;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -29,19 +30,192 @@ import java.security.NoSuchAlgorithmException;
  */
 public class SignTool {
 
-    public static String sign(String toSign) throws NoSuchAlgorithmException {
+    /**
+     * The historical id hash: a MD5 digest
+     */
+    public static final String MD5 = "md5";
+
+    /**
+     * A non cryptographic 128 bits hash which is faster to compute
+     */
+    public static final String MURMUR3 = "murmur3";
 
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        md.update(toSign.getBytes());
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
-        StringBuilder key = new StringBuilder();
-        byte b[] = md.digest();
+    /**
+     * MessageDigest instances are not thread safe so each thread has its own one
+     */
+    private static final ThreadLocal<MessageDigest> MD5_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    });
+
+    /**
+     * Sign with the historical id hash. Note that the leading zero of each byte is not written:
+     * ids have always been generated that way, so we keep it to find the documents we already indexed.
+     */
+    public static String sign(String toSign) throws NoSuchAlgorithmException {
+        MessageDigest md = MD5_DIGEST.get();
+        byte[] b = md.digest(toSign.getBytes());
+
+        char[] key = new char[b.length * 2];
+        int pos = 0;
         for (byte aB : b) {
-            long t = aB < 0 ? 256 + aB : aB;
-            key.append(Long.toHexString(t));
+            if ((aB & 0xf0) != 0) {
+                key[pos++] = HEX[(aB >> 4) & 0xf];
+            }
+            key[pos++] = HEX[aB & 0xf];
         }
 
-        return key.toString();
+        return new String(key, 0, pos);
+    }
+
+    /**
+     * Sign with the given id hash
+     * @param toSign the string to sign
+     * @param idHash {@link #MD5} or {@link #MURMUR3}
+     * @return the signature
+     */
+    public static String sign(String toSign, String idHash) throws NoSuchAlgorithmException {
+        if (MURMUR3.equals(idHash)) {
+            return murmur3(toSign);
+        }
+        if (idHash == null || MD5.equals(idHash)) {
+            return sign(toSign);
+        }
+        throw new NoSuchAlgorithmException("Unknown id hash [" + idHash + "]");
+    }
+
+    /**
+     * Sign with the MurmurHash3 x64 128 bits hash of the UTF-8 bytes. The result is written like
+     * Guava's {@code Hashing.murmur3_128().hashString(toSign, UTF_8).toString()}.
+     */
+    public static String murmur3(String toSign) {
+        byte[] data = toSign.getBytes(StandardCharsets.UTF_8);
+        long[] hash = Murmur3.hash128(data, 0, data.length);
+        char[] key = new char[32];
+        writeHex(hash[0], key, 0);
+        writeHex(hash[1], key, 16);
+        return new String(key);
+    }
+
+    /**
+     * Write the 8 bytes of a long in little endian order
+     */
+    private static void writeHex(long value, char[] key, int pos) {
+        for (int i = 0; i < 8; i++) {
+            int b = (int) (value >>> (i * 8));
+            key[pos++] = HEX[(b >> 4) & 0xf];
+            key[pos++] = HEX[b & 0xf];
+        }
+    }
+
+    /**
+     * Hexadecimal representation of a digest as we store it in the file.checksum field
+     * @param digest the digest bytes
+     * @return the digest as an hexadecimal string
+     */
+    public static String toHex(byte[] digest) {
+        char[] result = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            result[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            result[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(result);
     }
 
+    /**
+     * MurmurHash3 x64 128 bits, from Austin Appleby's public domain implementation
+     */
+    static class Murmur3 {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        static long[] hash128(byte[] data, int offset, int length) {
+            long h1 = 0;
+            long h2 = 0;
+            int nblocks = length / 16;
+
+            for (int i = 0; i < nblocks; i++) {
+                int pos = offset + i * 16;
+                long k1 = getLong(data, pos);
+                long k2 = getLong(data, pos + 8);
+
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            // The remaining bytes are read as little endian longs, the bytes after the 8th one going to k2
+            int tail = offset + nblocks * 16;
+            int remaining = length & 15;
+            if (remaining > 8) {
+                long k2 = 0;
+                for (int i = remaining - 1; i >= 8; i--) {
+                    k2 ^= (data[tail + i] & 0xffL) << ((i - 8) * 8);
+                }
+                h2 ^= mixK2(k2);
+            }
+            if (remaining > 0) {
+                long k1 = 0;
+                for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                    k1 ^= (data[tail + i] & 0xffL) << (i * 8);
+                }
+                h1 ^= mixK1(k1);
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            return new long[] { h1, h2 };
+        }
+
+        private static long getLong(byte[] data, int pos) {
+            return (data[pos] & 0xffL)
+                    | (data[pos + 1] & 0xffL) << 8
+                    | (data[pos + 2] & 0xffL) << 16
+                    | (data[pos + 3] & 0xffL) << 24
+                    | (data[pos + 4] & 0xffL) << 32
+                    | (data[pos + 5] & 0xffL) << 40
+                    | (data[pos + 6] & 0xffL) << 48
+                    | (data[pos + 7] & 0xffL) << 56;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
 }
@@ -171,11 +171,11 @@ public class TimeValue {
         }
         try {
             String lowerSValue = sValue.toLowerCase(Locale.ROOT).trim();
-            long duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 1));
+            // Well, with ms, we need to substring 2 chars
+            int unitLength = lowerSValue.endsWith("ms") ? 2 : 1;
+            long duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - unitLength));
             TimeUnit unit;
             if (lowerSValue.endsWith("ms")) {
-                // Well, with ms, we need to substring 2 chars
-                duration = Long.parseLong(lowerSValue.substring(0, lowerSValue.length() - 2));
                 unit = TimeUnit.MILLISECONDS;
             } else if (lowerSValue.endsWith("s")) {
                 unit = TimeUnit.SECONDS;
@@ -0,0 +1,160 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomBoolean;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomFrom;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ContentFilterTest extends AbstractFSCrawlerTestCase {
+
+    private static final List<String> FILTERS = Arrays.asList(
+            ".*foo.*",
+            "^bar$",
+            "foo$",
+            "\\bbar\\b",
+            "foo(?!bar)",
+            "(?<=foo)bar",
+            "^4\\d{3}([\\ \\-]?)\\d{4}\\1\\d{4}\\1\\d{4}$"
+    );
+
+    private static final List<String> LINES = Arrays.asList(
+            "This is containing foo as one of the words.",
+            "Another line which contains bar also.",
+            "foo",
+            "bar",
+            "foobar",
+            "4012 8888 8888 1881",
+            "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore.",
+            ""
+    );
+
+    /**
+     * Write the text by chunks of random sizes
+     */
+    private static boolean matchesStreamed(ContentFilter filters, String text) throws IOException {
+        StringWriter out = new StringWriter();
+        ContentFilter.StreamingFilter writer = filters.writer(out);
+        int i = 0;
+        while (i < text.length()) {
+            int len = Math.min(randomIntBetween(1, 10000), text.length() - i);
+            if (randomBoolean()) {
+                writer.write(text, i, len);
+            } else {
+                writer.write(text.toCharArray(), i, len);
+            }
+            i += len;
+        }
+        assertThat(out.toString(), is(text));
+        return writer.matches();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ContentFilter filters = ContentFilter.compile(null);
+        assertThat(filters.isEmpty(), is(true));
+        assertThat(ContentFilter.compile(Collections.emptyList()).isEmpty(), is(true));
+        assertThat(filters.matches("foo"), is(true));
+        assertThat(matchesStreamed(filters, "foo"), is(true));
+
+        filters = ContentFilter.compile(Collections.singletonList("foo"));
+        assertThat(filters.matches(null), is(true));
+        assertThat(filters.matches(""), is(true));
+        assertThat(matchesStreamed(filters, ""), is(true));
+    }
+
+    @Test
+    public void testMatchesAcrossChecks() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100000) {
+            sb.append(LINES.get(6)).append("\n");
+        }
+        sb.append("foo");
+        // The filters are checked while the content is written so it is cut right after "foo"
+        ContentFilter.StreamingFilter writer = ContentFilter.compile(Arrays.asList("foo$", "foo\\b", "(?<!4)foo"))
+                .writer(new StringWriter());
+        writer.write(sb.toString());
+        writer.write("bar\n");
+        assertThat(writer.matches(), is(false));
+
+        writer = ContentFilter.compile(Arrays.asList("foo$", "^4\\d{3}$")).writer(new StringWriter());
+        writer.write(sb.toString());
+        writer.write("\n4012");
+        assertThat(writer.matches(), is(true));
+    }
+
+    @Test
+    public void testLargeContent() throws IOException {
+        // The content which can not match anymore is not searched again, so this runs in linear time
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(LINES.get(6)).append("\n");
+        }
+        String chunk = sb.toString();
+        ContentFilter filters = ContentFilter.compile(Arrays.asList("\\bfoo\\b", "foo.*bar"));
+
+        ContentFilter.StreamingFilter writer = filters.writer(new StringWriter());
+        for (int i = 0; i < 80; i++) {
+            writer.write(chunk);
+        }
+        assertThat(writer.matches(), is(false));
+
+        writer = filters.writer(new StringWriter());
+        for (int i = 0; i < 80; i++) {
+            writer.write(chunk);
+        }
+        writer.write("The end is foo and bar");
+        assertThat(writer.matches(), is(true));
+    }
+
+    @Test
+    public void testSameAsMatches() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            List<String> filters = new ArrayList<>();
+            int numFilters = randomIntBetween(1, 3);
+            for (int j = 0; j < numFilters; j++) {
+                filters.add(randomFrom(FILTERS));
+            }
+            StringBuilder sb = new StringBuilder();
+            int numLines = randomIntBetween(0, 1000);
+            for (int j = 0; j < numLines; j++) {
+                // Most of the lines don't match anything
+                sb.append(randomIntBetween(0, 20) == 0 ? randomFrom(LINES) : LINES.get(6));
+                sb.append(randomBoolean() ? "\n" : " ");
+            }
+            String text = sb.toString();
+            ContentFilter contentFilter = ContentFilter.compile(filters);
+            assertThat(filters + " streamed on " + text, matchesStreamed(contentFilter, text),
+                    is(contentFilter.matches(text)));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomFrom;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class GlobMatcherTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * This is how the rules were checked before we compiled them
+     */
+    private static boolean matchesWithRegex(String filename, List<String> rules) {
+        for (String rule : rules) {
+            String regex = rule.toLowerCase().replace("?", ".?").replace("*", ".*?");
+            if (filename.toLowerCase().matches(regex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomString(List<String> chars, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        int length = randomIntBetween(min, max);
+        for (int i = 0; i < length; i++) {
+            sb.append(randomFrom(chars));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(GlobMatcher.compile(null).isEmpty(), is(true));
+        assertThat(GlobMatcher.compile(Collections.emptyList()).isEmpty(), is(true));
+        assertThat(GlobMatcher.compile(Collections.emptyList()).matches("/foo"), is(false));
+    }
+
+    @Test
+    public void testRules() {
+        GlobMatcher matcher = GlobMatcher.compile(Arrays.asList("*/~*", "*.PDF", "/folder?/sub*", "*/[a-c]*.txt"));
+        assertThat(matcher.matches("/~foo.doc"), is(true));
+        assertThat(matcher.matches("/dir/~"), is(true));
+        assertThat(matcher.matches("/foo~.doc"), is(false));
+        assertThat(matcher.matches("/foo.pdf"), is(true));
+        assertThat(matcher.matches("/FOO.PDF"), is(true));
+        assertThat(matcher.matches("/foo.pdf.txt"), is(false));
+        // '.' has always matched any char as rules were regular expressions
+        assertThat(matcher.matches("/foo_pdf"), is(true));
+        // '?' matches zero or one char
+        assertThat(matcher.matches("/folder/sub"), is(true));
+        assertThat(matcher.matches("/folderA/subfolder"), is(true));
+        assertThat(matcher.matches("/folderAB/subfolder"), is(false));
+        // Rules with regular expressions still work
+        assertThat(matcher.matches("/dir/b.txt"), is(true));
+        assertThat(matcher.matches("/dir/d.txt"), is(false));
+    }
+
+    @Test
+    public void testSameAsRegex() {
+        List<String> ruleChars = Arrays.asList("a", "b", "B", "é", ".", "*", "?", "/", "~");
+        List<String> filenameChars = Arrays.asList("a", "A", "b", "é", "É", ".", "/", "~", "\n");
+        for (int i = 0; i < 100; i++) {
+            // Enough rules so some of them go to another automaton
+            List<String> rules = new ArrayList<>();
+            int size = randomIntBetween(1, 20);
+            for (int j = 0; j < size; j++) {
+                rules.add(randomString(ruleChars, 0, 8));
+            }
+            GlobMatcher matcher = GlobMatcher.compile(rules);
+            for (int j = 0; j < 100; j++) {
+                String filename = randomString(filenameChars, 0, 10);
+                assertThat("rules " + rules + " with [" + filename + "]", matcher.matches(filename),
+                        is(matchesWithRegex(filename, rules)));
+            }
+        }
+    }
+
+    @Test
+    public void testLongRule() {
+        // A rule which does not fit in an automaton
+        String dir = "/this/is/a/very/long/path/to/a/directory/we/do/not/want/to/index/at/all";
+        GlobMatcher matcher = GlobMatcher.compile(Arrays.asList("*.tmp", dir + "/*"));
+        assertThat(matcher.matches(dir + "/foo.txt"), is(true));
+        assertThat(matcher.matches(dir.toUpperCase() + "/foo.txt"), is(true));
+        assertThat(matcher.matches("/foo.txt"), is(false));
+        assertThat(matcher.matches("/foo.tmp"), is(true));
+    }
+
+    @Test
+    public void testTurkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            // With the turkish locale, "I".toLowerCase() is a dotless i
+            assertThat(GlobMatcher.compile(Collections.singletonList("/FILE.TXT")).matches("/file.txt"), is(true));
+            assertThat(GlobMatcher.compile(Collections.singletonList("/FILE*")).matches("/file.txt"), is(true));
+            assertThat(FsCrawlerUtil.isIndexable(false, "/FILE.txt", GlobMatcher.compile(Collections.emptyList()),
+                    GlobMatcher.compile(Collections.singletonList("/FILE*"))), is(false));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
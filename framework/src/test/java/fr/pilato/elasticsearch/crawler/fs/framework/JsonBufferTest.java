@@ -0,0 +1,94 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomRealisticUnicodeOfLengthBetween;
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class JsonBufferTest extends AbstractFSCrawlerTestCase {
+
+    private static String parseContent(JsonBuffer json) throws IOException {
+        Map map = mapper.readValue(json.bytes(), 0, json.size(), Map.class);
+        return (String) map.get("content");
+    }
+
+    private static void writeContent(JsonBuffer json, String text) {
+        json.writeRaw("{\"content\":\"");
+        // We write the text in random chunks, so surrogate pairs can be split
+        int from = 0;
+        while (from < text.length()) {
+            int to = Math.min(text.length(), from + randomIntBetween(1, 10));
+            json.write(text.toCharArray(), from, to - from);
+            from = to;
+        }
+        json.writeRaw("\"}");
+    }
+
+    @Test
+    public void testEscaping() throws IOException {
+        String text = "Quotes \" and \\ backslashes, \n\r\t\b\f control chars \u0001\u001f, / and unicode é € 😀";
+        JsonBuffer json = new JsonBuffer(16);
+        writeContent(json, text);
+        assertThat(parseContent(json), is(text));
+        // We produce the same bytes as jackson
+        assertThat(json.toString(), is("{\"content\":" + mapper.writeValueAsString(text) + "}"));
+    }
+
+    @Test
+    public void testRandomText() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            String text = randomRealisticUnicodeOfLengthBetween(0, 1000);
+            JsonBuffer json = new JsonBuffer(randomIntBetween(1, 100));
+            writeContent(json, text);
+            assertThat(parseContent(json), is(text));
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogates() throws IOException {
+        JsonBuffer json = new JsonBuffer(16);
+        json.writeRaw("{\"content\":\"");
+        json.write("a\uD83Db\uDE00");
+        json.write("\uD83D");
+        json.writeRaw("\"}");
+        assertThat(parseContent(json), is("a\uFFFDb\uFFFD\uFFFD"));
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        JsonBuffer json = new JsonBuffer(16);
+        json.writeRaw("{\"content\":\"");
+        int start = json.size();
+        json.write("partial text");
+        json.truncate(start);
+        json.write("full text");
+        json.writeRaw("\"}");
+        assertThat(parseContent(json), is("full text"));
+    }
+}
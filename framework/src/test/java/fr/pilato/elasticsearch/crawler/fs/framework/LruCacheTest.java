@@ -0,0 +1,61 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomIntBetween;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LruCacheTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testEviction() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("/a", "1");
+        cache.put("/b", "2");
+        // We use /a so /b is now the least recently used entry
+        assertThat(cache.get("/a"), is("1"));
+        cache.put("/c", "3");
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("/a"), is("1"));
+        assertThat(cache.get("/b"), nullValue());
+        assertThat(cache.get("/c"), is("3"));
+
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get("/a"), nullValue());
+    }
+
+    @Test
+    public void testBounded() {
+        int maxSize = randomIntBetween(1, 100);
+        LruCache<Integer, Integer> cache = new LruCache<>(maxSize);
+        int entries = randomIntBetween(0, 1000);
+        for (int i = 0; i < entries; i++) {
+            cache.put(i, i);
+            assertThat(cache.get(i), is(i));
+        }
+        assertThat(cache.size(), is(Math.min(entries, maxSize)));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.framework;
+
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.junit.Test;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class SignToolTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testSign() throws NoSuchAlgorithmException {
+        // The ids we always generated, without the leading zero of each byte
+        assertThat(SignTool.sign(""), is("d41d8cd98f0b24e980998ecf8427e"));
+        assertThat(SignTool.sign("/tmp/es"), is("824b64ab42d4b63cda6e747e2b80e5"));
+        assertThat(SignTool.sign("/tmp/es/subdir/test.txt"), is("94da46cb80eddd4623994f727c89209f"));
+        assertThat(SignTool.sign("/tmp/es", SignTool.MD5), is("824b64ab42d4b63cda6e747e2b80e5"));
+        assertThat(SignTool.sign("/tmp/es", null), is("824b64ab42d4b63cda6e747e2b80e5"));
+    }
+
+    @Test
+    public void testMurmur3() throws NoSuchAlgorithmException {
+        assertThat(SignTool.murmur3(""), is("00000000000000000000000000000000"));
+        assertThat(SignTool.murmur3("hello"), is("029bbd41b3a7d8cb191dae486a901e5b"));
+        assertThat(SignTool.murmur3("/tmp/es"), is("5ff1fb577f2c22a2feed3ef0d59b94d3"));
+        assertThat(SignTool.murmur3("/tmp/es/subdir/test.txt"), is("6cc3acacba536b3efef05038dfe0243c"));
+        assertThat(SignTool.murmur3("123456789"), is("a4cc66db5e64843c05a11e3ac7faf899"));
+        assertThat(SignTool.murmur3("/tmp/es/subdir/sub/document.txt"), is("c63adb5b9256856e77714146cec6399c"));
+        assertThat(SignTool.murmur3("The quick brown fox jumps over the lazy dog"), is("6c1b07bc7bbc4be347939ac4a93c437a"));
+        assertThat(SignTool.murmur3("/donn\u00e9es/\u00e9t\u00e9.pdf"), is("389cd88eac13be01dd8f406ac1ef115d"));
+        assertThat(SignTool.sign("/tmp/es", SignTool.MURMUR3), is("5ff1fb577f2c22a2feed3ef0d59b94d3"));
+    }
+
+    @Test
+    public void testUnknownIdHash() {
+        try {
+            SignTool.sign("/tmp/es", "sha1");
+            fail("We should have raised a NoSuchAlgorithmException");
+        } catch (NoSuchAlgorithmException e) {
+            assertThat(e.getMessage(), is("Unknown id hash [sha1]"));
+        }
+    }
+
+    @Test
+    public void testToHex() {
+        assertThat(SignTool.toHex(new byte[0]), is(""));
+        assertThat(SignTool.toHex(new byte[]{0, 1, 15, 16, (byte) 0x7f, (byte) 0x80, (byte) 0xff}), is("00010f107f80ff"));
+    }
+
+    @Test
+    public void testConcurrentSign() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(executor.submit(() -> SignTool.sign("/tmp/es/subdir/test.txt")));
+            }
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("94da46cb80eddd4623994f727c89209f"));
+            }
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+}
@@ -46,7 +46,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
 import fr.pilato.elasticsearch.crawler.fs.beans.DocParser;
 import fr.pilato.elasticsearch.crawler.fs.client.ElasticsearchClient;
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
+import fr.pilato.elasticsearch.crawler.fs.framework.GlobMatcher;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
 import fr.pilato.elasticsearch.crawler.fs.framework.MetaParser;
 import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.settings.Elasticsearch;
@@ -59,6 +62,8 @@ public class UploadApi extends RestApi {
     private final ElasticsearchClient esClient;
     private final FsSettings settings;
     private final MessageDigest messageDigest;
+    // The custom OCR includes are checked for every uploaded file so we compile them once
+    private final GlobMatcher customOcrIncludes;
     private static final TimeBasedUUIDGenerator TIME_UUID_GENERATOR = new TimeBasedUUIDGenerator();
 
     UploadApi(FsSettings settings, ElasticsearchClient esClient) {
@@ -71,6 +76,7 @@ public class UploadApi extends RestApi {
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("This should never happen as we checked that previously");
         }
+        customOcrIncludes = GlobMatcher.compile(settings.getFs().getCustomOcrIncludes());
     }
 
     @POST
@@ -98,7 +104,7 @@ public class UploadApi extends RestApi {
 
         // Path
         if (id == null) {
-            id = SignTool.sign(filename);
+            id = SignTool.sign(filename, settings.getFs().getIdHash());
         } else if (id.equals("_auto_")) {
             // We are using a specific id which tells us to generate a unique _id like elasticsearch does
             id = TIME_UUID_GENERATOR.getBase64UUID();
@@ -109,7 +115,8 @@ public class UploadApi extends RestApi {
         // Path
 
         // Read the file content
-        TikaDocParser.generate(settings, filecontent, filename, doc, messageDigest, filesize);
+        TikaDocParser.generate(settings, filecontent, filename, doc, messageDigest, filesize, null,
+                ContentFilter.compile(null), null, customOcrIncludes);
 
         String url = null;
         if (Boolean.parseBoolean(simulate)) {
@@ -117,11 +124,13 @@ public class UploadApi extends RestApi {
         } else {
             logger.debug("Sending document [{}] to elasticsearch.", filename);
             doc = this.getMergedJsonDoc(doc, tags);
+            JsonBuffer json = DocParser.toCompactJson(doc);
             esClient.index(
                     settings.getElasticsearch().getIndex(),
                     esClient.getDefaultTypeName(),
                     id,
-                    DocParser.toJson(doc),
+                    json.bytes(),
+                    json.size(),
                     settings.getElasticsearch().getPipeline());
             // Elasticsearch entity coordinates (we use the first node address)
             Elasticsearch.Node node = settings.getElasticsearch().getNodes().get(0);
@@ -41,7 +41,10 @@ public class Elasticsearch {
     }
 
     private Elasticsearch(List<Node> nodes, String index, String indexFolder, int bulkSize,
-                          TimeValue flushInterval, ByteSizeValue byteSize, String username, String password, String pipeline) {
+                          TimeValue flushInterval, ByteSizeValue byteSize, String username, String password, String pipeline,
+                          ByteSizeValue maxInFlightBytes, int bulkMaxRetries, TimeValue bulkRetryDelay,
+                          int concurrentRequests, int maxConnectionsPerNode, boolean sniff, TimeValue sniffInterval,
+                          boolean compression, ByteSizeValue compressionMinSize, TimeValue keepAlive, int ioThreads) {
         this.nodes = nodes;
         this.index = index;
         this.indexFolder = indexFolder;
@@ -51,6 +54,17 @@ public class Elasticsearch {
         this.username = username;
         this.password = password;
         this.pipeline = pipeline;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.bulkMaxRetries = bulkMaxRetries;
+        this.bulkRetryDelay = bulkRetryDelay;
+        this.concurrentRequests = concurrentRequests;
+        this.maxConnectionsPerNode = maxConnectionsPerNode;
+        this.sniff = sniff;
+        this.sniffInterval = sniffInterval;
+        this.compression = compression;
+        this.compressionMinSize = compressionMinSize;
+        this.keepAlive = keepAlive;
+        this.ioThreads = ioThreads;
     }
 
     public static Builder builder() {
@@ -181,6 +195,17 @@ public class Elasticsearch {
     @JsonIgnore
     private String password;
     private String pipeline;
+    private ByteSizeValue maxInFlightBytes = new ByteSizeValue(50, ByteSizeUnit.MB);
+    private int bulkMaxRetries = 8;
+    private TimeValue bulkRetryDelay = TimeValue.timeValueMillis(50);
+    private int concurrentRequests = 1;
+    private int maxConnectionsPerNode = 10;
+    private boolean sniff = false;
+    private TimeValue sniffInterval = TimeValue.timeValueMinutes(5);
+    private boolean compression = false;
+    private ByteSizeValue compressionMinSize = new ByteSizeValue(1, ByteSizeUnit.KB);
+    private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+    private int ioThreads = 0;
 
     public List<Node> getNodes() {
         return nodes;
@@ -240,6 +265,50 @@ public class Elasticsearch {
         this.pipeline = pipeline;
     }
 
+    public ByteSizeValue getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    public TimeValue getBulkRetryDelay() {
+        return bulkRetryDelay;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public int getMaxConnectionsPerNode() {
+        return maxConnectionsPerNode;
+    }
+
+    public boolean isSniff() {
+        return sniff;
+    }
+
+    public TimeValue getSniffInterval() {
+        return sniffInterval;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public ByteSizeValue getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public TimeValue getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
     public static class Builder {
         private List<Node> nodes;
         private String index;
@@ -250,6 +319,17 @@ public class Elasticsearch {
         private String username = null;
         private String password = null;
         private String pipeline = null;
+        private ByteSizeValue maxInFlightBytes = new ByteSizeValue(50, ByteSizeUnit.MB);
+        private int bulkMaxRetries = 8;
+        private TimeValue bulkRetryDelay = TimeValue.timeValueMillis(50);
+        private int concurrentRequests = 1;
+        private int maxConnectionsPerNode = 10;
+        private boolean sniff = false;
+        private TimeValue sniffInterval = TimeValue.timeValueMinutes(5);
+        private boolean compression = false;
+        private ByteSizeValue compressionMinSize = new ByteSizeValue(1, ByteSizeUnit.KB);
+        private TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+        private int ioThreads = 0;
 
         public Builder setNodes(List<Node> nodes) {
             this.nodes = nodes;
@@ -304,8 +384,65 @@ public class Elasticsearch {
             return this;
         }
 
+        public Builder setMaxInFlightBytes(ByteSizeValue maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        public Builder setBulkMaxRetries(int bulkMaxRetries) {
+            this.bulkMaxRetries = bulkMaxRetries;
+            return this;
+        }
+
+        public Builder setBulkRetryDelay(TimeValue bulkRetryDelay) {
+            this.bulkRetryDelay = bulkRetryDelay;
+            return this;
+        }
+
+        public Builder setConcurrentRequests(int concurrentRequests) {
+            this.concurrentRequests = concurrentRequests;
+            return this;
+        }
+
+        public Builder setMaxConnectionsPerNode(int maxConnectionsPerNode) {
+            this.maxConnectionsPerNode = maxConnectionsPerNode;
+            return this;
+        }
+
+        public Builder setSniff(boolean sniff) {
+            this.sniff = sniff;
+            return this;
+        }
+
+        public Builder setSniffInterval(TimeValue sniffInterval) {
+            this.sniffInterval = sniffInterval;
+            return this;
+        }
+
+        public Builder setCompression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder setCompressionMinSize(ByteSizeValue compressionMinSize) {
+            this.compressionMinSize = compressionMinSize;
+            return this;
+        }
+
+        public Builder setKeepAlive(TimeValue keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        public Builder setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
         public Elasticsearch build() {
-            return new Elasticsearch(nodes, index, indexFolder, bulkSize, flushInterval, byteSize, username, password, pipeline);
+            return new Elasticsearch(nodes, index, indexFolder, bulkSize, flushInterval, byteSize, username, password, pipeline,
+                    maxInFlightBytes, bulkMaxRetries, bulkRetryDelay, concurrentRequests, maxConnectionsPerNode, sniff,
+                    sniffInterval, compression, compressionMinSize, keepAlive, ioThreads);
         }
     }
 
@@ -317,12 +454,23 @@ public class Elasticsearch {
         Elasticsearch that = (Elasticsearch) o;
 
         if (bulkSize != that.bulkSize) return false;
+        if (bulkMaxRetries != that.bulkMaxRetries) return false;
+        if (concurrentRequests != that.concurrentRequests) return false;
+        if (maxConnectionsPerNode != that.maxConnectionsPerNode) return false;
+        if (sniff != that.sniff) return false;
+        if (compression != that.compression) return false;
+        if (ioThreads != that.ioThreads) return false;
         if (nodes != null ? !nodes.equals(that.nodes) : that.nodes != null) return false;
         if (index != null ? !index.equals(that.index) : that.index != null) return false;
         if (indexFolder != null ? !indexFolder.equals(that.indexFolder) : that.indexFolder != null) return false;
         if (username != null ? !username.equals(that.username) : that.username != null) return false;
         // We can't really test the password as it may be obfuscated
         if (pipeline != null ? !pipeline.equals(that.pipeline) : that.pipeline != null) return false;
+        if (maxInFlightBytes != null ? !maxInFlightBytes.equals(that.maxInFlightBytes) : that.maxInFlightBytes != null) return false;
+        if (bulkRetryDelay != null ? !bulkRetryDelay.equals(that.bulkRetryDelay) : that.bulkRetryDelay != null) return false;
+        if (sniffInterval != null ? !sniffInterval.equals(that.sniffInterval) : that.sniffInterval != null) return false;
+        if (compressionMinSize != null ? !compressionMinSize.equals(that.compressionMinSize) : that.compressionMinSize != null) return false;
+        if (keepAlive != null ? !keepAlive.equals(that.keepAlive) : that.keepAlive != null) return false;
         return !(flushInterval != null ? !flushInterval.equals(that.flushInterval) : that.flushInterval != null);
 
     }
@@ -336,6 +484,17 @@ public class Elasticsearch {
         result = 31 * result + (pipeline != null ? pipeline.hashCode() : 0);
         result = 31 * result + bulkSize;
         result = 31 * result + (flushInterval != null ? flushInterval.hashCode() : 0);
+        result = 31 * result + (maxInFlightBytes != null ? maxInFlightBytes.hashCode() : 0);
+        result = 31 * result + bulkMaxRetries;
+        result = 31 * result + (bulkRetryDelay != null ? bulkRetryDelay.hashCode() : 0);
+        result = 31 * result + concurrentRequests;
+        result = 31 * result + maxConnectionsPerNode;
+        result = 31 * result + (sniff ? 1 : 0);
+        result = 31 * result + (sniffInterval != null ? sniffInterval.hashCode() : 0);
+        result = 31 * result + (compression ? 1 : 0);
+        result = 31 * result + (compressionMinSize != null ? compressionMinSize.hashCode() : 0);
+        result = 31 * result + (keepAlive != null ? keepAlive.hashCode() : 0);
+        result = 31 * result + ioThreads;
         return result;
     }
 
@@ -349,6 +508,17 @@ public class Elasticsearch {
                 ", byteSize=" + byteSize +
                 ", username='" + username + '\'' +
                 ", pipeline='" + pipeline + '\'' +
+                ", maxInFlightBytes=" + maxInFlightBytes +
+                ", bulkMaxRetries=" + bulkMaxRetries +
+                ", bulkRetryDelay=" + bulkRetryDelay +
+                ", concurrentRequests=" + concurrentRequests +
+                ", maxConnectionsPerNode=" + maxConnectionsPerNode +
+                ", sniff=" + sniff +
+                ", sniffInterval=" + sniffInterval +
+                ", compression=" + compression +
+                ", compressionMinSize=" + compressionMinSize +
+                ", keepAlive=" + keepAlive +
+                ", ioThreads=" + ioThreads +
                 '}';
     }
 }
@@ -19,6 +19,7 @@
 
 package fr.pilato.elasticsearch.crawler.fs.settings;
 
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
 import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
 import fr.pilato.elasticsearch.crawler.fs.framework.Percentage;
 import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
@@ -59,6 +60,23 @@ public class Fs {
     private String customOcrProviderName = null;
 	private String customOcrSubscriptionKey = null;
 	private String customOcrProviderUrl = null;
+    private int extractionThreads = 1;
+    private int extractionQueueSize = 100;
+    private int walkerThreads = 1;
+    private int walkerQueueSize = 1000;
+    private boolean stateStore = false;
+    private boolean tikaFork = false;
+    private ByteSizeValue tikaForkHeapSize = new ByteSizeValue(512, ByteSizeUnit.MB);
+    private TimeValue tikaForkTimeout = TimeValue.timeValueMinutes(2);
+    private String idHash = "md5";
+    private boolean idHashMigration = false;
+    private boolean watch = false;
+    private TimeValue watchDebounce = TimeValue.timeValueSeconds(2);
+    private boolean skipUnchangedDirectories = false;
+    private boolean extractionCache = false;
+    private ByteSizeValue extractionCacheSize = new ByteSizeValue(1, ByteSizeUnit.GB);
+    private boolean resultStore = false;
+    private ByteSizeValue resultStoreSegmentSize = new ByteSizeValue(64, ByteSizeUnit.MB);
 
     public static Builder builder() {
         return new Builder();
@@ -97,6 +115,23 @@ public class Fs {
         private String customOcrProviderName = null;
     	private String customOcrSubscriptionKey = null;
     	private String customOcrProviderUrl = null;
+        private int extractionThreads = 1;
+        private int extractionQueueSize = 100;
+        private int walkerThreads = 1;
+        private int walkerQueueSize = 1000;
+        private boolean stateStore = false;
+        private boolean tikaFork = false;
+        private ByteSizeValue tikaForkHeapSize = new ByteSizeValue(512, ByteSizeUnit.MB);
+        private TimeValue tikaForkTimeout = TimeValue.timeValueMinutes(2);
+        private String idHash = "md5";
+        private boolean idHashMigration = false;
+        private boolean watch = false;
+        private TimeValue watchDebounce = TimeValue.timeValueSeconds(2);
+        private boolean skipUnchangedDirectories = false;
+        private boolean extractionCache = false;
+        private ByteSizeValue extractionCacheSize = new ByteSizeValue(1, ByteSizeUnit.GB);
+        private boolean resultStore = false;
+        private ByteSizeValue resultStoreSegmentSize = new ByteSizeValue(64, ByteSizeUnit.MB);
 
         public Builder setUrl(String url) {
             this.url = url;
@@ -289,13 +324,100 @@ public class Fs {
             this.customOcrProviderUrl = customOcrProviderUrl;
             return this;
         }
-        
+
+        public Builder setExtractionThreads(int extractionThreads) {
+            this.extractionThreads = extractionThreads;
+            return this;
+        }
+
+        public Builder setExtractionQueueSize(int extractionQueueSize) {
+            this.extractionQueueSize = extractionQueueSize;
+            return this;
+        }
+
+        public Builder setWalkerThreads(int walkerThreads) {
+            this.walkerThreads = walkerThreads;
+            return this;
+        }
+
+        public Builder setWalkerQueueSize(int walkerQueueSize) {
+            this.walkerQueueSize = walkerQueueSize;
+            return this;
+        }
+
+        public Builder setStateStore(boolean stateStore) {
+            this.stateStore = stateStore;
+            return this;
+        }
+
+        public Builder setTikaFork(boolean tikaFork) {
+            this.tikaFork = tikaFork;
+            return this;
+        }
+
+        public Builder setTikaForkHeapSize(ByteSizeValue tikaForkHeapSize) {
+            this.tikaForkHeapSize = tikaForkHeapSize;
+            return this;
+        }
+
+        public Builder setTikaForkTimeout(TimeValue tikaForkTimeout) {
+            this.tikaForkTimeout = tikaForkTimeout;
+            return this;
+        }
+
+        public Builder setIdHash(String idHash) {
+            this.idHash = idHash;
+            return this;
+        }
+
+        public Builder setIdHashMigration(boolean idHashMigration) {
+            this.idHashMigration = idHashMigration;
+            return this;
+        }
+
+        public Builder setWatch(boolean watch) {
+            this.watch = watch;
+            return this;
+        }
+
+        public Builder setWatchDebounce(TimeValue watchDebounce) {
+            this.watchDebounce = watchDebounce;
+            return this;
+        }
+
+        public Builder setSkipUnchangedDirectories(boolean skipUnchangedDirectories) {
+            this.skipUnchangedDirectories = skipUnchangedDirectories;
+            return this;
+        }
+
+        public Builder setExtractionCache(boolean extractionCache) {
+            this.extractionCache = extractionCache;
+            return this;
+        }
+
+        public Builder setExtractionCacheSize(ByteSizeValue extractionCacheSize) {
+            this.extractionCacheSize = extractionCacheSize;
+            return this;
+        }
+
+        public Builder setResultStore(boolean resultStore) {
+            this.resultStore = resultStore;
+            return this;
+        }
+
+        public Builder setResultStoreSegmentSize(ByteSizeValue resultStoreSegmentSize) {
+            this.resultStoreSegmentSize = resultStoreSegmentSize;
+            return this;
+        }
 
         public Fs build() {
             return new Fs(url, updateRate, includes, excludes, customOcrIncludes, filters, jsonSupport, filenameAsId, addFilesize,
                     removeDeleted, addAsInnerObject, storeSource, indexedChars, indexContent, attributesSupport, rawMetadata,
                     checksum, xmlSupport, indexFolders, langDetect, continueOnError, pdfOcr, ocr, ignoreAbove, customOcrEnabled,
-                    customOcrProviderName, customOcrSubscriptionKey, customOcrProviderUrl);
+                    customOcrProviderName, customOcrSubscriptionKey, customOcrProviderUrl, extractionThreads, extractionQueueSize,
+                    walkerThreads, walkerQueueSize, stateStore, tikaFork, tikaForkHeapSize, tikaForkTimeout, idHash,
+                    idHashMigration, watch, watchDebounce, skipUnchangedDirectories, extractionCache,
+                    extractionCacheSize, resultStore, resultStoreSegmentSize);
         }
     }
 
@@ -303,11 +425,16 @@ public class Fs {
 
     }
 
-    private Fs(String url, TimeValue updateRate, List<String> includes, List<String> customOcrIncludes, List<String> excludes, List<String> filters, boolean jsonSupport,
+    private Fs(String url, TimeValue updateRate, List<String> includes, List<String> excludes, List<String> customOcrIncludes, List<String> filters, boolean jsonSupport,
                boolean filenameAsId, boolean addFilesize, boolean removeDeleted, boolean addAsInnerObject, boolean storeSource,
                Percentage indexedChars, boolean indexContent, boolean attributesSupport, boolean rawMetadata, String checksum, boolean xmlSupport,
                boolean indexFolders, boolean langDetect, boolean continueOnError, boolean pdfOcr, Ocr ocr, ByteSizeValue ignoreAbove, boolean customOcrEnabled,
-               String customOcrProviderName, String customOcrSubscriptionKey, String customOcrProviderUrl) {
+               String customOcrProviderName, String customOcrSubscriptionKey, String customOcrProviderUrl,
+               int extractionThreads, int extractionQueueSize, int walkerThreads, int walkerQueueSize,
+               boolean stateStore, boolean tikaFork, ByteSizeValue tikaForkHeapSize, TimeValue tikaForkTimeout,
+               String idHash, boolean idHashMigration, boolean watch, TimeValue watchDebounce,
+               boolean skipUnchangedDirectories, boolean extractionCache, ByteSizeValue extractionCacheSize,
+               boolean resultStore, ByteSizeValue resultStoreSegmentSize) {
         this.url = url;
         this.updateRate = updateRate;
         this.includes = includes;
@@ -336,6 +463,23 @@ public class Fs {
         this.customOcrProviderName = customOcrProviderName;
         this.customOcrSubscriptionKey = customOcrSubscriptionKey;
         this.customOcrProviderUrl = customOcrProviderUrl;
+        this.extractionThreads = extractionThreads;
+        this.extractionQueueSize = extractionQueueSize;
+        this.walkerThreads = walkerThreads;
+        this.walkerQueueSize = walkerQueueSize;
+        this.stateStore = stateStore;
+        this.tikaFork = tikaFork;
+        this.tikaForkHeapSize = tikaForkHeapSize;
+        this.tikaForkTimeout = tikaForkTimeout;
+        this.idHash = idHash;
+        this.idHashMigration = idHashMigration;
+        this.watch = watch;
+        this.watchDebounce = watchDebounce;
+        this.skipUnchangedDirectories = skipUnchangedDirectories;
+        this.extractionCache = extractionCache;
+        this.extractionCacheSize = extractionCacheSize;
+        this.resultStore = resultStore;
+        this.resultStoreSegmentSize = resultStoreSegmentSize;
     }
 
     public String getUrl() {
@@ -562,6 +706,142 @@ public class Fs {
 		this.customOcrProviderUrl = customOcrProviderUrl;
 	}
 
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    public int getExtractionQueueSize() {
+        return extractionQueueSize;
+    }
+
+    public void setExtractionQueueSize(int extractionQueueSize) {
+        this.extractionQueueSize = extractionQueueSize;
+    }
+
+    public int getWalkerThreads() {
+        return walkerThreads;
+    }
+
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    public int getWalkerQueueSize() {
+        return walkerQueueSize;
+    }
+
+    public void setWalkerQueueSize(int walkerQueueSize) {
+        this.walkerQueueSize = walkerQueueSize;
+    }
+
+    public boolean isStateStore() {
+        return stateStore;
+    }
+
+    public void setStateStore(boolean stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    public boolean isTikaFork() {
+        return tikaFork;
+    }
+
+    public void setTikaFork(boolean tikaFork) {
+        this.tikaFork = tikaFork;
+    }
+
+    public ByteSizeValue getTikaForkHeapSize() {
+        return tikaForkHeapSize;
+    }
+
+    public void setTikaForkHeapSize(ByteSizeValue tikaForkHeapSize) {
+        this.tikaForkHeapSize = tikaForkHeapSize;
+    }
+
+    public TimeValue getTikaForkTimeout() {
+        return tikaForkTimeout;
+    }
+
+    public void setTikaForkTimeout(TimeValue tikaForkTimeout) {
+        this.tikaForkTimeout = tikaForkTimeout;
+    }
+
+    public String getIdHash() {
+        return idHash;
+    }
+
+    public void setIdHash(String idHash) {
+        this.idHash = idHash;
+    }
+
+    public boolean isIdHashMigration() {
+        return idHashMigration;
+    }
+
+    public void setIdHashMigration(boolean idHashMigration) {
+        this.idHashMigration = idHashMigration;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public TimeValue getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    public void setWatchDebounce(TimeValue watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    public boolean isSkipUnchangedDirectories() {
+        return skipUnchangedDirectories;
+    }
+
+    public void setSkipUnchangedDirectories(boolean skipUnchangedDirectories) {
+        this.skipUnchangedDirectories = skipUnchangedDirectories;
+    }
+
+    public boolean isExtractionCache() {
+        return extractionCache;
+    }
+
+    public void setExtractionCache(boolean extractionCache) {
+        this.extractionCache = extractionCache;
+    }
+
+    public ByteSizeValue getExtractionCacheSize() {
+        return extractionCacheSize;
+    }
+
+    public void setExtractionCacheSize(ByteSizeValue extractionCacheSize) {
+        this.extractionCacheSize = extractionCacheSize;
+    }
+
+    public boolean isResultStore() {
+        return resultStore;
+    }
+
+    public void setResultStore(boolean resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    public ByteSizeValue getResultStoreSegmentSize() {
+        return resultStoreSegmentSize;
+    }
+
+    public void setResultStoreSegmentSize(ByteSizeValue resultStoreSegmentSize) {
+        this.resultStoreSegmentSize = resultStoreSegmentSize;
+    }
+
 	@Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -581,6 +861,23 @@ public class Fs {
                 langDetect == fs.langDetect &&
                 continueOnError == fs.continueOnError &&
                 pdfOcr == fs.pdfOcr &&
+                extractionThreads == fs.extractionThreads &&
+                extractionQueueSize == fs.extractionQueueSize &&
+                walkerThreads == fs.walkerThreads &&
+                walkerQueueSize == fs.walkerQueueSize &&
+                stateStore == fs.stateStore &&
+                tikaFork == fs.tikaFork &&
+                Objects.equals(tikaForkHeapSize, fs.tikaForkHeapSize) &&
+                Objects.equals(tikaForkTimeout, fs.tikaForkTimeout) &&
+                Objects.equals(idHash, fs.idHash) &&
+                idHashMigration == fs.idHashMigration &&
+                watch == fs.watch &&
+                Objects.equals(watchDebounce, fs.watchDebounce) &&
+                skipUnchangedDirectories == fs.skipUnchangedDirectories &&
+                extractionCache == fs.extractionCache &&
+                Objects.equals(extractionCacheSize, fs.extractionCacheSize) &&
+                resultStore == fs.resultStore &&
+                Objects.equals(resultStoreSegmentSize, fs.resultStoreSegmentSize) &&
                 Objects.equals(url, fs.url) &&
                 Objects.equals(updateRate, fs.updateRate) &&
                 Objects.equals(includes, fs.includes) &&
@@ -602,7 +899,10 @@ public class Fs {
         return Objects.hash(url, updateRate, includes, customOcrIncludes, excludes, filters, jsonSupport, filenameAsId, addFilesize,
                 removeDeleted, addAsInnerObject, storeSource, indexContent, indexedChars, attributesSupport, rawMetadata, 
                 xmlSupport, checksum, indexFolders, langDetect, continueOnError, pdfOcr, ocr, ignoreAbove, customOcrEnabled,
-                customOcrProviderName, customOcrSubscriptionKey, customOcrProviderUrl);
+                customOcrProviderName, customOcrSubscriptionKey, customOcrProviderUrl, extractionThreads, extractionQueueSize,
+                walkerThreads, walkerQueueSize, stateStore, tikaFork, tikaForkHeapSize, tikaForkTimeout, idHash,
+                idHashMigration, watch, watchDebounce, skipUnchangedDirectories, extractionCache, extractionCacheSize,
+                resultStore, resultStoreSegmentSize);
     }
 
     @Override
@@ -635,6 +935,23 @@ public class Fs {
                 ", customOcrProviderName=" + customOcrProviderName +
                 ", customOcrSubscriptionKey=" + customOcrSubscriptionKey +
                 ", customOcrProviderUrl=" + customOcrProviderUrl +
+                ", extractionThreads=" + extractionThreads +
+                ", extractionQueueSize=" + extractionQueueSize +
+                ", walkerThreads=" + walkerThreads +
+                ", walkerQueueSize=" + walkerQueueSize +
+                ", stateStore=" + stateStore +
+                ", tikaFork=" + tikaFork +
+                ", tikaForkHeapSize=" + tikaForkHeapSize +
+                ", tikaForkTimeout=" + tikaForkTimeout +
+                ", idHash=" + idHash +
+                ", idHashMigration=" + idHashMigration +
+                ", watch=" + watch +
+                ", watchDebounce=" + watchDebounce +
+                ", skipUnchangedDirectories=" + skipUnchangedDirectories +
+                ", extractionCache=" + extractionCache +
+                ", extractionCacheSize=" + extractionCacheSize +
+                ", resultStore=" + resultStore +
+                ", resultStoreSegmentSize=" + resultStoreSegmentSize +
                 '}';
     }
 }
@@ -21,6 +21,7 @@ package fr.pilato.elasticsearch.crawler.fs.settings;
 
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
 import fr.pilato.elasticsearch.crawler.fs.framework.OsValidator;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import org.apache.logging.log4j.Logger;
 
 import java.security.MessageDigest;
@@ -101,6 +102,79 @@ public class FsCrawlerValidator {
             return true;
         }
 
+        // Checking the extraction pool settings
+        if (settings.getFs().getExtractionThreads() < 1 || settings.getFs().getExtractionQueueSize() < 1) {
+            logger.error("extraction_threads [{}] and extraction_queue_size [{}] must be at least 1. Disabling crawler",
+                    settings.getFs().getExtractionThreads(), settings.getFs().getExtractionQueueSize());
+            return true;
+        }
+
+        // Checking the directory walker settings
+        if (settings.getFs().getWalkerThreads() < 1 || settings.getFs().getWalkerQueueSize() < 1) {
+            logger.error("walker_threads [{}] and walker_queue_size [{}] must be at least 1. Disabling crawler",
+                    settings.getFs().getWalkerThreads(), settings.getFs().getWalkerQueueSize());
+            return true;
+        }
+
+        // Checking the elasticsearch connection settings
+        if (settings.getElasticsearch().getConcurrentRequests() < 1 || settings.getElasticsearch().getMaxConnectionsPerNode() < 1) {
+            logger.error("concurrent_requests [{}] and max_connections_per_node [{}] must be at least 1. Disabling crawler",
+                    settings.getElasticsearch().getConcurrentRequests(), settings.getElasticsearch().getMaxConnectionsPerNode());
+            return true;
+        }
+        if (settings.getElasticsearch().isCompression() && settings.getElasticsearch().getCompressionMinSize() == null) {
+            logger.error("compression_min_size must be set when compression is activated. Disabling crawler");
+            return true;
+        }
+        if (settings.getElasticsearch().getIoThreads() < 0) {
+            logger.error("io_threads [{}] must not be negative. Disabling crawler", settings.getElasticsearch().getIoThreads());
+            return true;
+        }
+
+        // Checking the tika fork settings
+        if (settings.getFs().isTikaFork() && (settings.getFs().getTikaForkTimeout() == null ||
+                settings.getFs().getTikaForkTimeout().millis() <= 0 || settings.getFs().getTikaForkHeapSize() == null ||
+                settings.getFs().getTikaForkHeapSize().getMb() < 1)) {
+            logger.error("tika_fork_timeout [{}] and tika_fork_heap_size [{}] must be set when tika_fork is activated. Disabling crawler",
+                    settings.getFs().getTikaForkTimeout(), settings.getFs().getTikaForkHeapSize());
+            return true;
+        }
+
+        // Checking the watch mode settings
+        if (settings.getFs().isWatch() && (settings.getFs().getWatchDebounce() == null ||
+                settings.getFs().getWatchDebounce().millis() <= 0)) {
+            logger.error("watch_debounce [{}] must be set when watch is activated. Disabling crawler",
+                    settings.getFs().getWatchDebounce());
+            return true;
+        }
+
+        // Checking the extraction cache settings
+        if (settings.getFs().isExtractionCache() && (settings.getFs().getExtractionCacheSize() == null ||
+                settings.getFs().getExtractionCacheSize().getBytes() <= 0)) {
+            logger.error("extraction_cache_size [{}] must be set when extraction_cache is activated. Disabling crawler",
+                    settings.getFs().getExtractionCacheSize());
+            return true;
+        }
+
+        if (settings.getFs().isResultStore() && (settings.getFs().getResultStoreSegmentSize() == null ||
+                settings.getFs().getResultStoreSegmentSize().getBytes() <= 0)) {
+            logger.error("result_store_segment_size [{}] must be set when result_store is activated. Disabling crawler",
+                    settings.getFs().getResultStoreSegmentSize());
+            return true;
+        }
+
+        // Checking the id hash
+        if (!SignTool.MD5.equals(settings.getFs().getIdHash()) && !SignTool.MURMUR3.equals(settings.getFs().getIdHash())) {
+            logger.error("id_hash [{}] must be [{}] or [{}]. Disabling crawler",
+                    settings.getFs().getIdHash(), SignTool.MD5, SignTool.MURMUR3);
+            return true;
+        }
+        if (settings.getFs().isIdHashMigration() && SignTool.MD5.equals(settings.getFs().getIdHash())) {
+            logger.warn("id_hash_migration is set to true but id_hash is [{}]. There is nothing to migrate.",
+                    settings.getFs().getIdHash());
+            settings.getFs().setIdHashMigration(false);
+        }
+
         // We just warn the user if he is running on windows but want to get attributes
         if (OsValidator.WINDOWS && settings.getFs().isAttributesSupport()) {
             logger.info("attributes_support is set to true but getting group is not available on [{}].", OsValidator.OS);
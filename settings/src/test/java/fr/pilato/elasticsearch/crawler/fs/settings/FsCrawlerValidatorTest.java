@@ -56,6 +56,16 @@ public class FsCrawlerValidatorTest extends AbstractFSCrawlerTestCase {
         settings = buildSettings(Fs.builder().setChecksum("FSCRAWLER").build(), null, null, null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
 
+        // Checking id hash
+        settings = buildSettings(Fs.builder().setIdHash("FSCRAWLER").build(), null, null, null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
+        settings = buildSettings(Fs.builder().setIdHash("murmur3").setIdHashMigration(true).build(), null, null, null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().isIdHashMigration(), is(true));
+        settings = buildSettings(Fs.builder().setIdHashMigration(true).build(), null, null, null);
+        assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(false));
+        assertThat(settings.getFs().isIdHashMigration(), is(false));
+
         // Checking protocol
         settings = buildSettings(null, null, Server.builder().setProtocol("FSCRAWLER").build(), null);
         assertThat(FsCrawlerValidator.validateSettings(logger, settings, false), is(true));
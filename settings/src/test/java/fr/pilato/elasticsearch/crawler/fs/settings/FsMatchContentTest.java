@@ -19,9 +19,12 @@
 
 package fr.pilato.elasticsearch.crawler.fs.settings;
 
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
 import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -34,7 +37,7 @@ import static org.hamcrest.Matchers.is;
 public class FsMatchContentTest extends AbstractFSCrawlerTestCase {
 
     @Test
-    public void testIncludeAndExcludeTextPattern() {
+    public void testIncludeAndExcludeTextPattern() throws IOException {
         // Test with null or empty text
         regexTester(null, null, true);
         regexTester(null, new ArrayList<>(), true);
@@ -76,8 +79,17 @@ public class FsMatchContentTest extends AbstractFSCrawlerTestCase {
         regexTester("4012-8888-8888-1881", Collections.singletonList("^4\\d{3}([\\ \\-]?)\\d{4}\\1\\d{4}\\1\\d{4}$"), true);
     }
     
-    private void regexTester(String input, List<String> regexes, boolean expected) {
+    private void regexTester(String input, List<String> regexes, boolean expected) throws IOException {
         assertThat(regexes + " should " + (expected ? "" : "not ") + "match " + input,
                 isIndexable(input, regexes), is(expected));
+        ContentFilter filters = ContentFilter.compile(regexes);
+        assertThat(regexes + " compiled should " + (expected ? "" : "not ") + "match " + input,
+                isIndexable(input, filters), is(expected));
+        ContentFilter.StreamingFilter writer = filters.writer(new StringWriter());
+        if (input != null) {
+            writer.write(input, 0, input.length());
+        }
+        assertThat(regexes + " streamed should " + (expected ? "" : "not ") + "match " + input,
+                writer.matches(), is(expected));
     }
 }
@@ -50,7 +50,12 @@ public class FsSettingsParserTest extends AbstractFSCrawlerTestCase {/*
 	private static final Elasticsearch ELASTICSEARCH_EMPTY = Elasticsearch.builder().build();
 	private static final Elasticsearch ELASTICSEARCH_FULL = Elasticsearch.builder()
 			.addNode(new Node("http://127.0.0.1")).setUsername("elastic").setPassword("changeme").setBulkSize(1000)
-			.setFlushInterval(TimeValue.timeValueSeconds(5)).setIndex("docs").setPipeline("pipeline-id-if-any").build();
+			.setFlushInterval(TimeValue.timeValueSeconds(5)).setIndex("docs").setPipeline("pipeline-id-if-any")
+			.setMaxInFlightBytes(new ByteSizeValue(20, ByteSizeUnit.MB)).setBulkMaxRetries(10)
+			.setBulkRetryDelay(TimeValue.timeValueMillis(100)).setConcurrentRequests(2).setMaxConnectionsPerNode(20)
+			.setSniff(true).setSniffInterval(TimeValue.timeValueMinutes(1)).setCompression(true)
+			.setCompressionMinSize(new ByteSizeValue(10, ByteSizeUnit.KB)).setKeepAlive(TimeValue.timeValueSeconds(30))
+			.setIoThreads(4).build();
 	private static final Server SERVER_EMPTY = Server.builder().build();
 	private static final Server SERVER_FULL = Server.builder().setHostname("127.0.0.1").setUsername("dadoonet")
 			.setPassword("WhATDidYOUexPECt?").setPort(22).setProtocol("SSH").setPemPath("/path/to/pemfile").build();
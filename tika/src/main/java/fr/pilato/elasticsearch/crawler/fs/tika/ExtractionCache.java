@@ -0,0 +1,268 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.metadata.Metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static fr.pilato.elasticsearch.crawler.fs.framework.MetaParser.mapper;
+
+/**
+ * Keeps on disk the text and the metadata extracted from a content, so the same content found under another
+ * path or touched without being modified is not extracted again. Entries are identified by a SHA-256 hash of
+ * the content and of the settings used to extract it, and are stored compressed in
+ * {@code ~/.fscrawler/{job_name}/_extraction_cache}.
+ * When the cache is bigger than its maximum size, the least recently used entries are removed.
+ */
+public class ExtractionCache {
+
+    private static final Logger logger = LogManager.getLogger(ExtractionCache.class);
+
+    public static final String DIRNAME = "_extraction_cache";
+    private static final String EXTENSION = ".json.gz";
+    private static final String CONTENT = "content";
+    private static final String METADATA = "metadata";
+
+    private final Path dir;
+    private final long maxSize;
+    // Entries in access order, with their size on disk
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Open the cache of a job. Existing entries are loaded from the most recently used one.
+     * @param jobDir  the job directory
+     * @param maxSize the maximum size of the cache on disk
+     * @throws IOException if the cache directory can not be read
+     */
+    public ExtractionCache(Path jobDir, ByteSizeValue maxSize) throws IOException {
+        this.dir = jobDir.resolve(DIRNAME);
+        this.maxSize = maxSize.getBytes();
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> existing = files
+                    .filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparing(ExtractionCache::lastModified))
+                    .collect(Collectors.toList());
+            for (Path file : existing) {
+                String name = file.getFileName().toString();
+                long fileSize = Files.size(file);
+                entries.put(name.substring(0, name.length() - EXTENSION.length()), fileSize);
+                size += fileSize;
+            }
+        }
+        logger.debug("Extraction cache [{}] opened with [{}] entries ([{}])", dir, entries.size(), new ByteSizeValue(size));
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Compute the key of a content
+     * @param content   the content
+     * @param variant   what else changes the extracted text, like the extraction settings
+     * @return the key
+     * @throws IOException if the content can not be read
+     */
+    public static String key(InputStream content, String variant) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is always available", e);
+        }
+        md.update(variant.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return SignTool.toHex(md.digest());
+    }
+
+    /**
+     * Read what has been extracted from a content
+     * @param key       the key of the content
+     * @param metadata  where to copy the extracted metadata
+     * @return the extracted text or null if we don't know this content. When nothing was extracted from
+     * the content, an empty string is returned.
+     */
+    @SuppressWarnings("unchecked")
+    public String get(String key, Metadata metadata) {
+        synchronized (entries) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        Path file = file(key);
+        try {
+            Map<String, Object> entry;
+            try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+                entry = mapper.readValue(is, Map.class);
+            }
+            // So the entry is still the most recently used one after a restart
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            Map<String, List<String>> values = (Map<String, List<String>>) entry.get(METADATA);
+            if (values != null) {
+                values.forEach((name, list) -> list.forEach(value -> metadata.add(name, value)));
+            }
+            hits.incrementAndGet();
+            String content = (String) entry.get(CONTENT);
+            return content == null ? "" : content;
+        } catch (IOException e) {
+            logger.debug("Can not read [{}] from the extraction cache. Removing it: {}", key, e.getMessage());
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Keep what has been extracted from a content
+     * @param key       the key of the content
+     * @param content   the extracted text, which can be null
+     * @param metadata  the extracted metadata
+     */
+    public void put(String key, String content, Metadata metadata) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(CONTENT, content);
+        Map<String, List<String>> values = new HashMap<>();
+        for (String name : metadata.names()) {
+            values.put(name, new ArrayList<>(Arrays.asList(metadata.getValues(name))));
+        }
+        entry.put(METADATA, values);
+
+        Path file = file(key);
+        try {
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                mapper.writeValue(os, entry);
+            }
+            long fileSize = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (entries) {
+                Long previous = entries.put(key, fileSize);
+                size += fileSize - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Can not write [{}] in the extraction cache: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits in its maximum size
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            try {
+                Files.deleteIfExists(file(eldest.getKey()));
+            } catch (IOException e) {
+                logger.debug("Can not remove [{}] from the extraction cache: {}", eldest.getKey(), e.getMessage());
+            }
+            logger.trace("Removed [{}] from the extraction cache", eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Long fileSize = entries.remove(key);
+            if (fileSize != null) {
+                size -= fileSize;
+            }
+        }
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException ignored) {
+            // We will try again to write it
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + EXTENSION);
+    }
+
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    public int getEntries() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + getEntries() +
+                ", size=" + new ByteSizeValue(getSize()) +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettingsParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static fr.pilato.elasticsearch.crawler.fs.tika.ForkedTikaWorker.STATUS_OK;
+import static fr.pilato.elasticsearch.crawler.fs.tika.ForkedTikaWorker.readString;
+import static fr.pilato.elasticsearch.crawler.fs.tika.ForkedTikaWorker.writeString;
+
+/**
+ * A pool of child JVMs running {@link ForkedTikaWorker}. A document which makes Tika run for too long
+ * or exhaust its memory only kills the child JVM which is then restarted for the next document.
+ * Each child extracts one document at a time so the throughput grows with the size of the pool.
+ */
+class ForkedTikaPool implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ForkedTikaPool.class);
+
+    /**
+     * How long we wait for a child JVM to start and connect back to us
+     */
+    private static final int START_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(60);
+
+    private final FsSettings fsSettings;
+    private final String settings;
+    private final List<Worker> workers = new ArrayList<>();
+    private final BlockingQueue<Worker> available;
+    private volatile boolean closed;
+
+    ForkedTikaPool(FsSettings fsSettings, int size) throws IOException {
+        this.fsSettings = fsSettings;
+        this.settings = FsSettingsParser.toJson(fsSettings);
+        this.available = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            // Child JVMs are only started when they are needed
+            Worker worker = new Worker(i + 1);
+            workers.add(worker);
+            available.add(worker);
+        }
+        logger.debug("Tika fork pool created with [{}] workers, [{}] of heap and a timeout of [{}]", size,
+                fsSettings.getFs().getTikaForkHeapSize(), fsSettings.getFs().getTikaForkTimeout());
+    }
+
+    /**
+     * Extract the text and the metadata of a local file in a child JVM. This call blocks until a child is available.
+     * @param file the file to extract
+     * @param filename the file name
+     * @param indexedChars the maximum number of characters to extract
+     * @param metadata metadata which are filled by the extraction
+     * @return the extracted text
+     * @throws IOException if the child JVM crashed or timed out
+     * @throws TikaException if Tika failed to extract the document
+     */
+    String extractText(Path file, String filename, int indexedChars, Metadata metadata) throws IOException, TikaException {
+        Worker worker;
+        try {
+            worker = available.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a tika worker", e);
+        }
+        try {
+            return worker.extractText(file, filename, indexedChars, metadata);
+        } finally {
+            available.add(worker);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    private class Worker {
+        private final int id;
+        private Process process;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        private Worker(int id) {
+            this.id = id;
+        }
+
+        private String extractText(Path file, String filename, int indexedChars, Metadata metadata) throws IOException, TikaException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+
+            String content;
+            try {
+                writeString(out, file.toString());
+                writeString(out, filename);
+                out.writeInt(indexedChars);
+                out.flush();
+
+                if (in.readByte() != STATUS_OK) {
+                    throw new TikaException(readString(in));
+                }
+                content = readString(in);
+                int names = in.readInt();
+                for (int i = 0; i < names; i++) {
+                    String name = readString(in);
+                    int values = in.readInt();
+                    for (int j = 0; j < values; j++) {
+                        String value = readString(in);
+                        if (!Metadata.RESOURCE_NAME_KEY.equals(name)) {
+                            metadata.add(name, value);
+                        }
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                logger.warn("Extracting [{}] took more than [{}]. Restarting tika worker [{}]", file,
+                        fsSettings.getFs().getTikaForkTimeout(), id);
+                stop();
+                throw new IOException("Extraction of [" + file + "] timed out", e);
+            } catch (IOException e) {
+                // Most likely the child JVM died (OutOfMemoryError...)
+                logger.warn("Tika worker [{}] crashed while extracting [{}]. It will be restarted.", id, file);
+                stop();
+                throw e;
+            }
+            return content;
+        }
+
+        private void start() throws IOException {
+            if (closed) {
+                throw new IOException("The tika fork pool is closed");
+            }
+            String token = UUID.randomUUID().toString();
+            try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                serverSocket.setSoTimeout(START_TIMEOUT_MILLIS);
+
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.add("-Xmx" + fsSettings.getFs().getTikaForkHeapSize().getMb() + "m");
+                command.add("-XX:+ExitOnOutOfMemoryError");
+                command.add("-Djava.awt.headless=true");
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ForkedTikaWorker.class.getName());
+                command.add(Integer.toString(serverSocket.getLocalPort()));
+                command.add(token);
+
+                logger.debug("Starting tika worker [{}]", id);
+                process = new ProcessBuilder(command).inheritIO().redirectInput(ProcessBuilder.Redirect.PIPE).start();
+
+                socket = serverSocket.accept();
+                socket.setSoTimeout(START_TIMEOUT_MILLIS);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (!token.equals(readString(in))) {
+                    throw new IOException("Tika worker [" + id + "] did not identify itself");
+                }
+                writeString(out, settings);
+                out.flush();
+                socket.setSoTimeout((int) fsSettings.getFs().getTikaForkTimeout().millis());
+            } catch (IOException e) {
+                stop();
+                throw new IOException("Can not start tika worker [" + id + "]", e);
+            }
+            logger.debug("Tika worker [{}] started", id);
+        }
+
+        private void stop() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.debug("Failed to close the connection to tika worker [{}]", id, e);
+                }
+                socket = null;
+            }
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettingsParser;
+import org.apache.tika.metadata.Metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Entry point of a child JVM started by {@link ForkedTikaPool}. It connects back to the crawler on a local
+ * socket, receives the settings and then extracts the files it is asked for, one at a time.
+ * The JVM stops as soon as the crawler closes the connection.
+ */
+public class ForkedTikaWorker {
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    /**
+     * @param args the port to connect to and the token which identifies this worker
+     */
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        String token = args[1];
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeString(out, token);
+            out.flush();
+
+            FsSettings fsSettings = FsSettingsParser.fromJson(readString(in));
+
+            while (true) {
+                String path;
+                try {
+                    path = readString(in);
+                } catch (EOFException e) {
+                    // The crawler does not need us anymore
+                    return;
+                }
+                String filename = readString(in);
+                int indexedChars = in.readInt();
+
+                Metadata metadata = new Metadata();
+                metadata.set(Metadata.RESOURCE_NAME_KEY, filename);
+                String content;
+                try {
+                    content = TikaInstance.extractText(fsSettings, indexedChars, Files.newInputStream(Paths.get(path)), metadata);
+                } catch (Exception e) {
+                    out.writeByte(STATUS_ERROR);
+                    writeString(out, e.toString());
+                    out.flush();
+                    continue;
+                }
+
+                out.writeByte(STATUS_OK);
+                writeString(out, content);
+                String[] names = metadata.names();
+                out.writeInt(names.length);
+                for (String name : names) {
+                    writeString(out, name);
+                    String[] values = metadata.getValues(name);
+                    out.writeInt(values.length);
+                    for (String value : values) {
+                        writeString(out, value);
+                    }
+                }
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Write a string of any size (unlike {@link DataOutputStream#writeUTF(String)})
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -21,13 +21,16 @@ package fr.pilato.elasticsearch.crawler.fs.tika;
 
 import static fr.pilato.elasticsearch.crawler.fs.framework.StreamsUtil.copy;
 import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.extractText;
+import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.extractTextForked;
 import static fr.pilato.elasticsearch.crawler.fs.tika.TikaInstance.langDetector;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -35,15 +38,24 @@ import java.util.Base64;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.tika.Tika;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.language.detect.LanguageResult;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.Property;
 import org.apache.tika.metadata.TikaCoreProperties;
 import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.beans.DocParser;
+import fr.pilato.elasticsearch.crawler.fs.framework.ContentFilter;
 import fr.pilato.elasticsearch.crawler.fs.framework.FsCrawlerUtil;
+import fr.pilato.elasticsearch.crawler.fs.framework.GlobMatcher;
+import fr.pilato.elasticsearch.crawler.fs.framework.JsonBuffer;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
 import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
 import fr.pilato.elasticsearch.crawler.fs.tika.customparser.CustomOCRFactory;
 import fr.pilato.elasticsearch.crawler.fs.tika.customparser.CustomOCRParser;
@@ -55,12 +67,65 @@ import fr.pilato.elasticsearch.crawler.fs.tika.customparser.OCRResponseModel;
  */
 public class TikaDocParser {
 
-	private static CustomOCRParser customOCRParser;
-
 	private final static Logger logger = LogManager.getLogger(TikaDocParser.class);
 
+	/**
+	 * We only need the beginning of a document to detect its language
+	 */
+	private static final int LANG_DETECT_MAX_CHARS = 100000;
+
+	/**
+	 * A new version of Tika might extract another text so it is part of the extraction cache keys
+	 */
+	private static final String TIKA_VERSION = String.valueOf(Tika.class.getPackage().getImplementationVersion());
+
 	public static void generate(FsSettings fsSettings, InputStream inputStream, String filename, Doc doc,
 			MessageDigest messageDigest, long filesize) throws IOException {
+		generate(fsSettings, inputStream, filename, doc, messageDigest, filesize, null, ContentFilter.compile(null));
+	}
+
+	/**
+	 * Generate a document. If a JSON buffer is given, the extracted text is not set on the document but
+	 * written directly in the buffer as the escaped content of the JSON document. The buffer is then either
+	 * empty (no content) or holds the beginning of the JSON document and must be completed with
+	 * {@link DocParser#toJson(Doc, JsonBuffer)}.
+	 * <p>
+	 * The content filters are checked while the text is extracted so we don't need the content as a String.
+	 *
+	 * @return false if the content does not match the content filters, so the document must not be indexed
+	 */
+	public static boolean generate(FsSettings fsSettings, InputStream inputStream, String filename, Doc doc,
+			MessageDigest messageDigest, long filesize, JsonBuffer json, ContentFilter filters) throws IOException {
+		return generate(fsSettings, inputStream, filename, doc, messageDigest, filesize, json, filters, null);
+	}
+
+	/**
+	 * Generate a document. When an extraction cache is given, the text and the metadata are read from the cache
+	 * if the same content has already been extracted with the same settings. The text is then not streamed to
+	 * the JSON buffer as we need it to fill the cache.
+	 * <p>
+	 * The input stream is read once. Give a {@link TikaInputStream} on the file when it is a local file, so the
+	 * parsers which need random access and the readers which need the content again can use the file directly.
+	 * Otherwise the content is copied to a temporary file when it must be read more than once.
+	 *
+	 * @see #generate(FsSettings, InputStream, String, Doc, MessageDigest, long, JsonBuffer, ContentFilter)
+	 */
+	public static boolean generate(FsSettings fsSettings, InputStream inputStream, String filename, Doc doc,
+			MessageDigest messageDigest, long filesize, JsonBuffer json, ContentFilter filters,
+			ExtractionCache cache) throws IOException {
+		return generate(fsSettings, inputStream, filename, doc, messageDigest, filesize, json, filters, cache, null);
+	}
+
+	/**
+	 * Generate a document with the custom OCR includes compiled once by the caller with
+	 * {@link GlobMatcher#compile(List)}. When they are null, they are compiled from the settings if the custom OCR
+	 * is enabled.
+	 *
+	 * @see #generate(FsSettings, InputStream, String, Doc, MessageDigest, long, JsonBuffer, ContentFilter, ExtractionCache)
+	 */
+	public static boolean generate(FsSettings fsSettings, InputStream inputStream, String filename, Doc doc,
+			MessageDigest messageDigest, long filesize, JsonBuffer json, ContentFilter filters,
+			ExtractionCache cache, GlobMatcher customOcrIncludes) throws IOException {
 		logger.trace("Generating document [{}]", filename);
 
 		// Extracting content with Tika
@@ -81,48 +146,70 @@ public class TikaDocParser {
 		metadata.set(Metadata.RESOURCE_NAME_KEY, filename);
 
 		String parsedContent = null;
+		// When we stream the content, we keep its beginning if we need to detect the language
+		StringBuilder langDetectContent = null;
+		// When we stream the content, the filters are checked while it is written
+		ContentFilter.StreamingFilter streamingFilter = null;
+		boolean indexable = true;
 
-		// create new stream to use with default OCR if custom OCR fails
+		// The custom OCR includes are checked against the full path of the file
 		String fullFileName = doc.getFile().getUrl().replace("file://", "");
-		File file = new File(fullFileName);
-		InputStream in = new FileInputStream(file);
-
-		if (messageDigest != null) {
-			logger.trace("Generating hash with [{}]", messageDigest.getAlgorithm());
-			inputStream = new DigestInputStream(inputStream, messageDigest);
-		}
+		boolean indexContent = fsSettings.getFs().isIndexContent();
+		boolean customOcr = indexContent && useCustomOcr(fsSettings, fullFileName, customOcrIncludes);
+		boolean useCache = indexContent && cache != null;
+		boolean storeSource = fsSettings.getFs().isStoreSource();
+		// The checksum is only added when we index the content
+		MessageDigest digest = indexContent ? messageDigest : null;
+		ByteArrayOutputStream bos = storeSource ? new ByteArrayOutputStream() : null;
 
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		if (fsSettings.getFs().isStoreSource()) {
-			logger.debug("Using a TeeInputStream as we need to store the source");
-			bos = new ByteArrayOutputStream();
-			inputStream = new TeeInputStream(inputStream, bos);
-		}
+		String cacheKey = null;
+		boolean extract = indexContent;
+		boolean fork = indexContent && fsSettings.getFs().isTikaFork();
+		// The stream is not opened when we neither index the content nor store the source
+		try (SharedInput input = inputStream == null ? null :
+				new SharedInput(inputStream, useCache || customOcr || fork, digest, bos)) {
+			// The checksum and the source are computed by the first reader of the content. We only read it before
+			// the extraction when we need to know if we already extracted the same content, when the child JVM
+			// reads the file by itself or when we do not extract anything.
+			if (useCache || ((digest != null || storeSource) && (fork || !indexContent))) {
+				try (InputStream content = input.open(!indexContent)) {
+					if (useCache) {
+						cacheKey = ExtractionCache.key(content, cacheVariant(fsSettings, indexedChars, customOcr));
+					} else {
+						copy(content, NullOutputStream.NULL_OUTPUT_STREAM);
+					}
+				}
+				if (useCache) {
+					String cachedContent = cache.get(cacheKey, metadata);
+					// The cached metadata come from another file
+					metadata.set(Metadata.RESOURCE_NAME_KEY, filename);
+					if (cachedContent != null) {
+						logger.debug("[{}] has already been extracted. Using the extraction cache.", filename);
+						parsedContent = cachedContent.isEmpty() ? null : cachedContent;
+						// Nothing to put in the cache
+						cacheKey = null;
+						extract = false;
+					}
+				}
+			}
 
-		// If custom OCR fails to extract text and the original inputStream will close
-		// automatically...
-		if (fsSettings.getFs().isIndexContent()) {
-			try {
-				boolean useDefault = true;
-				// Set the maximum length of strings returned by the parseToString method, -1
-				// sets no limit
-				logger.trace("Beginning Custom Tika extraction");
-				if (fsSettings.getFs().customOcrEnabled()) {
-
-					useDefault = CustomOcrUtil.isCustomOcrIncludes(fullFileName,
-							fsSettings.getFs().getCustomOcrIncludes()) ? false : true;
-					logger.debug("custom ocr includes : {}", fsSettings.getFs().getCustomOcrIncludes());
-					if (!useDefault && !fsSettings.getFs().getCustomOcrSubscriptionKey().isEmpty()
-							&& fsSettings.getFs().getCustomOcrSubscriptionKey() != null) {
-						
+			if (extract) {
+				try {
+					boolean useDefault = true;
+					logger.trace("Beginning Custom Tika extraction");
+					if (customOcr) {
 						logger.debug("Getting custom OCR from factory : {}", fsSettings.getFs().getCustomOcrProviderName());
-						customOCRParser = CustomOCRFactory.getCustomOCR(fsSettings.getFs().getCustomOcrProviderName());
+						CustomOCRParser customOCRParser = CustomOCRFactory.getCustomOCR(fsSettings.getFs().getCustomOcrProviderName());
 						logger.debug("Started extraction with custom OCR : {}, Url : {}",
 								fsSettings.getFs().getCustomOcrProviderName(),
 								fsSettings.getFs().getCustomOcrProviderUrl());
-						OCRResponseModel response = customOCRParser.extractText(inputStream,
-								fsSettings.getFs().getCustomOcrSubscriptionKey(),
-								fsSettings.getFs().getCustomOcrProviderUrl());
+						OCRResponseModel response;
+						// The default parser reads the content again if the custom OCR can not process it
+						try (InputStream content = input.open(false)) {
+							response = customOCRParser.extractText(content,
+									fsSettings.getFs().getCustomOcrSubscriptionKey(),
+									fsSettings.getFs().getCustomOcrProviderUrl());
+						}
 
 						if (!response.isUseDefaultParser()) {
 							// On if Custom parser is capable of processing parsing request case - skip
@@ -131,26 +218,66 @@ public class TikaDocParser {
 							logger.debug("Getting final response from custom Ocr parser..");
 							parsedContent = response.getExtractedTextResponse();
 						}
-					} else {
-						useDefault = true;
 					}
-				}
 
-				if (useDefault) {
-					// check if originalInputStream close?
-					try {
-						inputStream.available();
-					} catch (IOException e) {
-						logger.debug("The stream has been closed, creating same stream again");
-						inputStream = getDigestInputStream(in, messageDigest, fsSettings);
+					if (useDefault) {
+						if (fork) {
+							// The child JVM reads the file by itself
+							logger.debug("Started extraction with a forked parser");
+							parsedContent = extractTextForked(fsSettings, indexedChars, input.file(), filename, metadata);
+						} else if (json != null && cacheKey == null) {
+							// proceed with default parser writing directly to the json document
+							logger.debug("Started streaming extraction with default parser");
+							DocParser.writeContentStart(json);
+							Writer writer = json;
+							if (fsSettings.getFs().isLangDetect()) {
+								langDetectContent = new StringBuilder();
+								writer = new LangDetectWriter(json, langDetectContent);
+							}
+							if (!filters.isEmpty()) {
+								streamingFilter = filters.writer(writer);
+								writer = streamingFilter;
+							}
+							extractText(fsSettings, indexedChars, input.open(true), metadata, writer);
+						} else {
+							// proceed with default parser
+							logger.debug("Started extraction with default parser");
+							parsedContent = extractText(fsSettings, indexedChars, input.open(true), metadata);
+						}
+					}
+					logger.trace("End of Tika extraction");
+					if (cacheKey != null) {
+						cache.put(cacheKey, parsedContent, metadata);
+					}
+				} catch (Throwable e) {
+					logger.debug("Failed to extract [" + indexedChars + "] characters of text for [" + filename + "]", e);
+					if (json != null) {
+						// We don't keep what has been partially extracted
+						json.truncate(0);
+						langDetectContent = null;
+						streamingFilter = null;
 					}
-					// proceed with default parser
-					logger.debug("Started extraction with default parser");
-					parsedContent = extractText(fsSettings, indexedChars, inputStream, metadata);
 				}
-				logger.trace("End of Tika extraction");
-			} catch (Throwable e) {
-				logger.debug("Failed to extract [" + indexedChars + "] characters of text for [" + filename + "]", e);
+			}
+			if (input != null) {
+				input.readToEnd();
+			}
+		}
+
+		if (indexContent) {
+			if (streamingFilter != null) {
+				indexable = streamingFilter.matches();
+			} else {
+				indexable = FsCrawlerUtil.isIndexable(parsedContent, filters);
+			}
+
+			if (json != null) {
+				if (parsedContent != null) {
+					// Extracted by a custom OCR or a forked parser
+					DocParser.writeContentStart(json);
+					json.write(parsedContent);
+				}
+				DocParser.writeContentEnd(json);
 			}
 
 			// Adding what we found to the document we want to index
@@ -169,13 +296,7 @@ public class TikaDocParser {
 				}
 			}
 			if (messageDigest != null) {
-				byte[] digest = messageDigest.digest();
-				StringBuilder result = new StringBuilder();
-				// Convert to Hexa
-				for (byte aDigest : digest) {
-					result.append(Integer.toString((aDigest & 0xff) + 0x100, 16).substring(1));
-				}
-				doc.getFile().setChecksum(result.toString());
+				doc.getFile().setChecksum(SignTool.toHex(messageDigest.digest()));
 			}
 			// File
 
@@ -195,7 +316,8 @@ public class TikaDocParser {
 			setMeta(filename, metadata, TikaCoreProperties.MODIFIER, doc.getMeta()::setModifier, Function.identity());
 			setMeta(filename, metadata, TikaCoreProperties.CREATOR_TOOL, doc.getMeta()::setCreatorTool,
 					Function.identity());
-			String finalParsedContent = parsedContent;
+			String finalParsedContent = parsedContent != null ? parsedContent :
+					(langDetectContent != null ? langDetectContent.toString() : null);
 			setMeta(filename, metadata, TikaCoreProperties.LANGUAGE, doc.getMeta()::setLanguage, (lang) -> {
 				if (lang != null) {
 					return lang;
@@ -248,35 +370,199 @@ public class TikaDocParser {
 			}
 			// Meta
 			// Doc content
-			doc.setContent(parsedContent);
-		} else if (fsSettings.getFs().isStoreSource()) {
-			// We don't extract content but just store the binary file
-			// We need to create the ByteArrayOutputStream which has not been created then
-			copy(inputStream, bos);
+			if (json == null) {
+				doc.setContent(parsedContent);
+			}
 		}
 
 		// Doc as binary attachment
-		if (fsSettings.getFs().isStoreSource()) {
-			// noinspection ConstantConditions
+		if (storeSource) {
 			doc.setAttachment(Base64.getEncoder().encodeToString(bos.toByteArray()));
 		}
 		logger.trace("End document generation");
 		// End of our document
+		return indexable;
 	}
 
-	private static InputStream getDigestInputStream(InputStream inputStream, MessageDigest messageDigest,
-			FsSettings fsSettings) {
+	/**
+	 * Write the content to the JSON document and keep its beginning to detect the language
+	 */
+	private static class LangDetectWriter extends Writer {
+		private final Writer json;
+		private final StringBuilder content;
+
+		private LangDetectWriter(Writer json, StringBuilder content) {
+			this.json = json;
+			this.content = content;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			json.write(cbuf, off, len);
+			if (content.length() < LANG_DETECT_MAX_CHARS) {
+				content.append(cbuf, off, Math.min(len, LANG_DETECT_MAX_CHARS - content.length()));
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			json.flush();
+		}
+
+		@Override
+		public void close() {
+			// The json document is not complete yet
+		}
+	}
+
+	/**
+	 * Everything but the content which changes the extracted text and metadata
+	 */
+	private static String cacheVariant(FsSettings fsSettings, int indexedChars, boolean customOcr) {
+		return "tika=" + TIKA_VERSION +
+				",indexed_chars=" + indexedChars +
+				",ocr=" + fsSettings.getFs().getOcr() +
+				",custom_ocr=" + (customOcr ? fsSettings.getFs().getCustomOcrProviderName() : null);
+	}
+
+	private static boolean useCustomOcr(FsSettings fsSettings, String fullFileName, GlobMatcher customOcrIncludes) {
+		if (!fsSettings.getFs().customOcrEnabled()) {
+			return false;
+		}
+		logger.debug("custom ocr includes : {}", fsSettings.getFs().getCustomOcrIncludes());
+		if (customOcrIncludes == null) {
+			customOcrIncludes = GlobMatcher.compile(fsSettings.getFs().getCustomOcrIncludes());
+		}
+		String subscriptionKey = fsSettings.getFs().getCustomOcrSubscriptionKey();
+		return CustomOcrUtil.isCustomOcrIncludes(fullFileName, customOcrIncludes) &&
+				subscriptionKey != null && !subscriptionKey.isEmpty();
+	}
+
+	private static InputStream digestAndTee(InputStream inputStream, MessageDigest messageDigest,
+			ByteArrayOutputStream bos) {
 		if (messageDigest != null) {
+			logger.trace("Generating hash with [{}]", messageDigest.getAlgorithm());
 			inputStream = new DigestInputStream(inputStream, messageDigest);
 		}
-
-		if (fsSettings.getFs().isStoreSource()) {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		if (bos != null) {
+			logger.debug("Using a TeeInputStream as we need to store the source");
 			inputStream = new TeeInputStream(inputStream, bos);
 		}
 		return inputStream;
 	}
 
+	/**
+	 * The content of a document, opened once. The first reader gets the stream we have been given. When the
+	 * content must be read more than once, the next readers read the local file behind this stream: the file
+	 * itself when we have been given a {@link TikaInputStream} on a file, or a temporary copy of a remote or
+	 * uploaded content which is removed when we close the input.
+	 * <p>
+	 * The first reader also computes the checksum and copies the source, so the content is read only once when
+	 * nothing else needs it. As the checksum and the source hide the file from Tika, the parsers which need a
+	 * file then get a temporary copy made by Tika.
+	 */
+	private static class SharedInput implements Closeable {
+		private final TikaInputStream stream;
+		private final Path file;
+		private final MessageDigest digest;
+		private final ByteArrayOutputStream source;
+		private boolean read;
+		private boolean copied;
+
+		private SharedInput(InputStream inputStream, boolean readMoreThanOnce, MessageDigest digest,
+				ByteArrayOutputStream source) throws IOException {
+			this.stream = TikaInputStream.get(inputStream);
+			// If the stream is not backed by a file, its content is copied to a temporary file
+			this.file = stream.hasFile() || readMoreThanOnce ? stream.getPath() : null;
+			this.digest = digest;
+			this.source = source;
+			this.copied = digest == null && source == null;
+		}
+
+		/**
+		 * @return the local file with the content or null if the content can be read only once
+		 */
+		private Path file() {
+			return file;
+		}
+
+		/**
+		 * Read the content. The caller must close the returned stream.
+		 * @param last true if nobody will read the content after this reader
+		 */
+		private InputStream open(boolean last) throws IOException {
+			InputStream content;
+			if (!read && (last || file == null)) {
+				read = true;
+				content = stream;
+			} else if (file == null) {
+				throw new IOException("The content has already been read");
+			} else {
+				content = TikaInputStream.get(file);
+			}
+			if (!copied) {
+				copied = true;
+				content = new ReadFullyInputStream(digestAndTee(content, digest, source));
+			}
+			return content;
+		}
+
+		/**
+		 * Compute the checksum and copy the source if no reader did it
+		 */
+		private void readToEnd() throws IOException {
+			if (!copied) {
+				try (InputStream content = open(true)) {
+					copy(content, NullOutputStream.NULL_OUTPUT_STREAM);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Makes sure the checksum and the source get the whole content once, even if the reader skips a part of it or
+	 * does not read it until the end. Mark and reset are not supported so Tika does not read the same bytes twice
+	 * through the checksum when it detects the content type.
+	 */
+	private static class ReadFullyInputStream extends FilterInputStream {
+		private ReadFullyInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			return IOUtils.skip(in, n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) {
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			throw new IOException("mark/reset not supported");
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+			} finally {
+				super.close();
+			}
+		}
+	}
+
 	private static <T> void setMeta(String filename, Metadata metadata, Property property, Consumer<T> setter,
 			Function<String, T> transformer) {
 		String sMeta = metadata.get(property);
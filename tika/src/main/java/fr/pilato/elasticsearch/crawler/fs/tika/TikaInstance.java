@@ -43,94 +43,175 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.Collections;
 
 import static org.apache.tika.langdetect.OptimaizeLangDetector.getDefaultLanguageDetector;
 
 /**
- *
+ * Extract text with Tika. The parser and the OCR configuration are built once and shared as they are thread safe.
+ * Each thread gets its own {@link ParseContext}, output buffer and language detector so concurrent extractions
+ * (crawler workers and REST uploads) don't need any synchronization.
  */
 public class TikaInstance {
 
     private static final Logger logger = LogManager.getLogger(TikaInstance.class);
 
-    private static Parser parser;
-    private static ParseContext context;
-    private static LanguageDetector detector;
+    /**
+     * Output buffers bigger than that are not kept for the next extraction
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static volatile Parser parser;
+    private static volatile TesseractOCRConfig ocrConfig;
+
+    private static final ThreadLocal<ExtractionContext> contexts = new ThreadLocal<>();
+
+    private static ForkedTikaPool forkedPool;
+
+    /**
+     * What a thread needs to run an extraction. It is created for a given parser and
+     * is renewed if the parser changes.
+     */
+    private static class ExtractionContext {
+        private final Parser parser;
+        private final ParseContext context;
+        private StringWriter writer = new StringWriter();
+        private LanguageDetector detector;
+
+        private ExtractionContext(Parser parser, TesseractOCRConfig ocrConfig) {
+            this.parser = parser;
+            this.context = new ParseContext();
+            this.context.set(Parser.class, parser);
+            if (ocrConfig != null) {
+                this.context.set(TesseractOCRConfig.class, ocrConfig);
+            }
+        }
+
+        private StringWriter writer() {
+            if (writer.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                writer = new StringWriter();
+            } else {
+                writer.getBuffer().setLength(0);
+            }
+            return writer;
+        }
+    }
 
     /* For tests only */
-    public static void reloadTika() {
+    public static synchronized void reloadTika() {
         parser = null;
-        context = null;
+        ocrConfig = null;
+        close();
     }
 
     /**
-     * This initialize if needed a parser and a parse context for tika
-     * @param fs fs settings
+     * Stop the child JVMs if any
      */
-    private static void initTika(Fs fs) {
-        initParser(fs);
-        initContext(fs);
+    public static synchronized void close() {
+        if (forkedPool != null) {
+            forkedPool.close();
+            forkedPool = null;
+        }
     }
 
-    private static void initParser(Fs fs) {
+    /**
+     * This initialize if needed a parser and an OCR configuration for tika
+     * @param fs fs settings
+     */
+    private static void initTika(Fs fs) {
         if (parser == null) {
-            PDFParser pdfParser = new PDFParser();
-            DefaultParser defaultParser;
-
-            if (fs.isPdfOcr()) {
-                logger.debug("OCR is activated for PDF documents");
-                if (ExternalParser.check("tesseract")) {
-                    pdfParser.setOcrStrategy("ocr_and_text");
-                } else {
-                    logger.debug("But Tesseract is not installed so we won't run OCR.");
+            synchronized (TikaInstance.class) {
+                if (parser == null) {
+                    ocrConfig = initOcrConfig(fs);
+                    parser = initParser(fs);
                 }
-                defaultParser = new DefaultParser();
-            } else {
-                logger.debug("OCR is disabled. Even though it's detected, it must be disabled explicitly");
-                defaultParser = new DefaultParser(
-                        MediaTypeRegistry.getDefaultRegistry(),
-                        new ServiceLoader(),
-                        Collections.singletonList(TesseractOCRParser.class));
             }
+        }
+    }
 
-            Parser PARSERS[] = new Parser[2];
-            PARSERS[0] = defaultParser;
-            PARSERS[1] = pdfParser;
+    private static Parser initParser(Fs fs) {
+        PDFParser pdfParser = new PDFParser();
+        DefaultParser defaultParser;
 
-            parser = new AutoDetectParser(PARSERS);
+        if (fs.isPdfOcr()) {
+            logger.debug("OCR is activated for PDF documents");
+            if (ExternalParser.check("tesseract")) {
+                pdfParser.setOcrStrategy("ocr_and_text");
+            } else {
+                logger.debug("But Tesseract is not installed so we won't run OCR.");
+            }
+            defaultParser = new DefaultParser();
+        } else {
+            logger.debug("OCR is disabled. Even though it's detected, it must be disabled explicitly");
+            defaultParser = new DefaultParser(
+                    MediaTypeRegistry.getDefaultRegistry(),
+                    new ServiceLoader(),
+                    Collections.singletonList(TesseractOCRParser.class));
         }
 
+        Parser PARSERS[] = new Parser[2];
+        PARSERS[0] = defaultParser;
+        PARSERS[1] = pdfParser;
+
+        return new AutoDetectParser(PARSERS);
     }
 
-    private static void initContext(Fs fs) {
-        if (context == null) {
-            context = new ParseContext();
-            context.set(Parser.class, parser);
-            if (fs.isPdfOcr()) {
-                logger.debug("OCR is activated");
-                TesseractOCRConfig config = new TesseractOCRConfig();
-                if (fs.getOcr().getPath() != null) {
-                    config.setTesseractPath(fs.getOcr().getPath());
-                }
-                if (fs.getOcr().getDataPath() != null) {
-                    config.setTessdataPath(fs.getOcr().getDataPath());
-                }
-                config.setLanguage(fs.getOcr().getLanguage());
-                if (fs.getOcr().getOutputType() != null) {
-                    config.setOutputType(fs.getOcr().getOutputType());
-                }
-                context.set(TesseractOCRConfig.class, config);
-            }
+    private static TesseractOCRConfig initOcrConfig(Fs fs) {
+        if (!fs.isPdfOcr()) {
+            return null;
+        }
+        logger.debug("OCR is activated");
+        TesseractOCRConfig config = new TesseractOCRConfig();
+        if (fs.getOcr().getPath() != null) {
+            config.setTesseractPath(fs.getOcr().getPath());
+        }
+        if (fs.getOcr().getDataPath() != null) {
+            config.setTessdataPath(fs.getOcr().getDataPath());
+        }
+        config.setLanguage(fs.getOcr().getLanguage());
+        if (fs.getOcr().getOutputType() != null) {
+            config.setOutputType(fs.getOcr().getOutputType());
+        }
+        return config;
+    }
+
+    /**
+     * Get the extraction context of the current thread
+     */
+    private static ExtractionContext context(Fs fs) {
+        initTika(fs);
+        Parser current = parser;
+        ExtractionContext context = contexts.get();
+        if (context == null || context.parser != current) {
+            logger.trace("Creating a new extraction context for thread [{}]", Thread.currentThread().getName());
+            LanguageDetector detector = context != null ? context.detector : null;
+            context = new ExtractionContext(current, ocrConfig);
+            context.detector = detector;
+            contexts.set(context);
         }
+        return context;
     }
 
     static String extractText(FsSettings fsSettings, int indexedChars, InputStream stream, Metadata metadata) throws IOException,
             TikaException {
-        initTika(fsSettings.getFs());
-        WriteOutContentHandler handler = new WriteOutContentHandler(indexedChars);
+        Writer writer = context(fsSettings.getFs()).writer();
+        extractText(fsSettings, indexedChars, stream, metadata, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Extract the text and write it as it comes
+     * @param writer where to write the text. Up to indexedChars characters are written.
+     */
+    static void extractText(FsSettings fsSettings, int indexedChars, InputStream stream, Metadata metadata, Writer writer)
+            throws IOException, TikaException {
+        ExtractionContext context = context(fsSettings.getFs());
+        WriteOutContentHandler handler = new WriteOutContentHandler(writer, indexedChars);
         try {
-            parser.parse(stream, new BodyContentHandler(handler), metadata, context);
+            context.parser.parse(stream, new BodyContentHandler(handler), metadata, context.context);
         } catch (SAXException e) {
             if (!handler.isWriteLimitReached(e)) {
                 // This should never happen with BodyContentHandler...
@@ -139,18 +220,43 @@ public class TikaInstance {
         } finally {
             stream.close();
         }
-        return handler.toString();
     }
 
+    /**
+     * Extract the text of a local file in a child JVM. See {@link ForkedTikaPool}.
+     */
+    static String extractTextForked(FsSettings fsSettings, int indexedChars, Path file, String filename, Metadata metadata)
+            throws IOException, TikaException {
+        ForkedTikaPool pool;
+        synchronized (TikaInstance.class) {
+            if (forkedPool == null) {
+                // One child JVM per extraction thread
+                forkedPool = new ForkedTikaPool(fsSettings, fsSettings.getFs().getExtractionThreads());
+            }
+            pool = forkedPool;
+        }
+        return pool.extractText(file, filename, indexedChars, metadata);
+    }
+
+    /**
+     * Get the language detector of the current thread as detectors are not thread safe
+     */
     static LanguageDetector langDetector() {
-        if (detector == null) {
+        ExtractionContext context = contexts.get();
+        if (context == null) {
+            // We did not extract anything yet with this thread
+            context = new ExtractionContext(null, null);
+            contexts.set(context);
+        }
+        if (context.detector == null) {
             try {
-                detector = getDefaultLanguageDetector();
+                LanguageDetector detector = getDefaultLanguageDetector();
                 detector.loadModels();
+                context.detector = detector;
             } catch (IOException e) {
                 logger.warn("Can not load lang detector models", e);
             }
         }
-        return detector;
+        return context.detector;
     }
 }
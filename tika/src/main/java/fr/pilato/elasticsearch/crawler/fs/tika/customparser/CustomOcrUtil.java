@@ -8,6 +8,7 @@ import org.apache.logging.log4j.Logger;
 import com.github.openjson.JSONArray;
 import com.github.openjson.JSONObject;
 
+import fr.pilato.elasticsearch.crawler.fs.framework.GlobMatcher;
 import fr.pilato.elasticsearch.crawler.fs.tika.TikaDocParser;
 
 public class CustomOcrUtil {
@@ -45,27 +46,22 @@ public class CustomOcrUtil {
      * @param filename file name to find eligibility
      * @param customOcrIncludes eligible includes
      * @return boolean. whether the custom ocr can process the file type or not
+     * @deprecated the rules are compiled for every call. Compile them once with {@link GlobMatcher#compile(List)}
+     * and use {@link #isCustomOcrIncludes(String, GlobMatcher)}.
      */
+    @Deprecated
     public static boolean isCustomOcrIncludes(String filename, List<String> customOcrIncludes) {
+        return isCustomOcrIncludes(filename, GlobMatcher.compile(customOcrIncludes));
+    }
 
-        logger.debug("filename = [{}], custom ocr includes = [{}]", filename, customOcrIncludes);
+    /**
+     * @param filename file name to find eligibility
+     * @param customOcrIncludes compiled eligible includes
+     * @return boolean. whether the custom ocr can process the file type or not
+     */
+    public static boolean isCustomOcrIncludes(String filename, GlobMatcher customOcrIncludes) {
         // No rules ? Fine, we index everything
-        if (customOcrIncludes == null || customOcrIncludes.isEmpty()) {
-            logger.trace("no include rules");
-            return true;
-        }
-
-        for (String include : customOcrIncludes) {
-            String regex = include.toLowerCase().replace("?", ".?").replace("*", ".*?");
-            logger.trace("regex is [{}]", regex);
-            if (filename.toLowerCase().matches(regex)) {
-                logger.trace("does match include regex");
-                return true;
-            }
-        }
-
-        logger.trace("does not match any include pattern");
-        return false;
+        return customOcrIncludes.isEmpty() || customOcrIncludes.matches(filename);
     }
     
 }
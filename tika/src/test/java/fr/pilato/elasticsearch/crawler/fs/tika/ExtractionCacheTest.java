@@ -0,0 +1,114 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeUnit;
+import fr.pilato.elasticsearch.crawler.fs.framework.ByteSizeValue;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.tika.metadata.Metadata;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.carrotsearch.randomizedtesting.RandomizedTest.randomAsciiLettersOfLength;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ExtractionCacheTest extends AbstractFSCrawlerTestCase {
+
+    private static String key(String content, String variant) throws IOException {
+        return ExtractionCache.key(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), variant);
+    }
+
+    @Test
+    public void testKey() throws IOException {
+        assertThat(key("foo", "v1"), is(key("foo", "v1")));
+        assertThat(key("foo", "v1"), not(key("bar", "v1")));
+        assertThat(key("foo", "v1"), not(key("foo", "v2")));
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+        ExtractionCache cache = new ExtractionCache(jobDir, new ByteSizeValue(1, ByteSizeUnit.MB));
+        String key = key("foo", "v1");
+
+        assertThat(cache.get(key, new Metadata()), nullValue());
+        assertThat(cache.getMisses(), is(1L));
+
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, "text/plain");
+        metadata.add("keywords", "foo");
+        metadata.add("keywords", "bar");
+        cache.put(key, "This is the extracted text", metadata);
+
+        Metadata cached = new Metadata();
+        assertThat(cache.get(key, cached), is("This is the extracted text"));
+        assertThat(cached.get(Metadata.CONTENT_TYPE), is("text/plain"));
+        assertThat(cached.getValues("keywords"), arrayContaining("foo", "bar"));
+        assertThat(cache.getHits(), is(1L));
+
+        // Nothing has been extracted
+        String empty = key("", "v1");
+        cache.put(empty, null, new Metadata());
+        assertThat(cache.get(empty, new Metadata()), is(""));
+
+        // Entries are kept across runs
+        cache = new ExtractionCache(jobDir, new ByteSizeValue(1, ByteSizeUnit.MB));
+        assertThat(cache.getEntries(), is(2));
+        assertThat(cache.get(key, new Metadata()), is("This is the extracted text"));
+
+        // A corrupted entry is removed
+        Files.write(jobDir.resolve(ExtractionCache.DIRNAME).resolve(key + ".json.gz"), "foo".getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(key, new Metadata()), nullValue());
+        assertThat(cache.getEntries(), is(1));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        Path jobDir = rootTmpDir.resolve("job-" + getCurrentTestName());
+        ExtractionCache cache = new ExtractionCache(jobDir, new ByteSizeValue(1, ByteSizeUnit.KB));
+        Metadata metadata = new Metadata();
+
+        // Random text does not compress well so each entry takes about 300 bytes on disk
+        String first = key("first", "v1");
+        cache.put(first, randomAsciiLettersOfLength(400), metadata);
+        String second = key("second", "v1");
+        cache.put(second, randomAsciiLettersOfLength(400), metadata);
+        assertThat(cache.get(first, new Metadata()), not(nullValue()));
+
+        for (int i = 0; i < 3; i++) {
+            cache.put(key("other" + i, "v1"), randomAsciiLettersOfLength(400), metadata);
+        }
+
+        assertThat(cache.getSize(), lessThanOrEqualTo(1024L));
+        // The second entry has not been used since it was added
+        assertThat(cache.get(second, new Metadata()), nullValue());
+        assertThat(Files.exists(jobDir.resolve(ExtractionCache.DIRNAME).resolve(second + ".json.gz")), is(false));
+    }
+}
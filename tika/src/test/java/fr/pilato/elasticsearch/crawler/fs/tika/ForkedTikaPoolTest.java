@@ -0,0 +1,89 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.framework.TimeValue;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+
+public class ForkedTikaPoolTest extends AbstractFSCrawlerTestCase {
+
+    @Test
+    public void testExtraction() throws Exception {
+        Path file = rootTmpDir.resolve(getCurrentTestName() + ".txt");
+        Files.write(file, Collections.singletonList("Extracted in a child JVM"), StandardCharsets.UTF_8);
+        Path missing = rootTmpDir.resolve(getCurrentTestName() + "-missing.txt");
+
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setTikaFork(true).build())
+                .build();
+        try (ForkedTikaPool pool = new ForkedTikaPool(fsSettings, 1)) {
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.RESOURCE_NAME_KEY, "test.txt");
+            String content = pool.extractText(file, "test.txt", 100000, metadata);
+            assertThat(content.trim(), is("Extracted in a child JVM"));
+            assertThat(metadata.get(Metadata.CONTENT_TYPE), startsWith("text/plain"));
+
+            // A failure does not break the worker
+            try {
+                pool.extractText(missing, "missing.txt", 100000, new Metadata());
+                fail("We should have caught the extraction failure");
+            } catch (TikaException e) {
+                assertThat(e.getMessage(), containsString("NoSuchFileException"));
+            }
+            assertThat(pool.extractText(file, "test.txt", 10, new Metadata()), is("Extracted "));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Path file = rootTmpDir.resolve(getCurrentTestName() + ".txt");
+        Files.write(file, Collections.singletonList("Too slow"), StandardCharsets.UTF_8);
+
+        // Starting tika in the child JVM takes much more than that
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setTikaFork(true).setTikaForkTimeout(TimeValue.timeValueMillis(1)).build())
+                .build();
+        try (ForkedTikaPool pool = new ForkedTikaPool(fsSettings, 1)) {
+            try {
+                pool.extractText(file, "test.txt", 100000, new Metadata());
+                fail("We should have caught the timeout");
+            } catch (IOException e) {
+                assertThat(e.getMessage(), containsString("timed out"));
+            }
+        }
+    }
+}
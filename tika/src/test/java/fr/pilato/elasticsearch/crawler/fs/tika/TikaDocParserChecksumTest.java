@@ -0,0 +1,77 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import fr.pilato.elasticsearch.crawler.fs.beans.Doc;
+import fr.pilato.elasticsearch.crawler.fs.framework.SignTool;
+import fr.pilato.elasticsearch.crawler.fs.settings.Fs;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.tika.io.TikaInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TikaDocParserChecksumTest extends AbstractFSCrawlerTestCase {
+
+    /**
+     * Tika stops reading a text file once it extracted the indexed chars. The checksum and the source are
+     * computed while Tika reads the content, so they must still get all of it.
+     */
+    @Test
+    public void testChecksumAndSourceWhenTikaStopsEarly() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1_000_000) {
+            text.append("This file contains some words.\n");
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        String checksum = SignTool.toHex(MessageDigest.getInstance("MD5").digest(content));
+        String source = Base64.getEncoder().encodeToString(content);
+
+        Doc doc = generate(new ByteArrayInputStream(content));
+        assertThat(doc.getFile().getChecksum(), is(checksum));
+        assertThat(doc.getAttachment(), is(source));
+
+        Path file = rootTmpDir.resolve("test.txt");
+        Files.write(file, content);
+        doc = generate(TikaInputStream.get(file));
+        assertThat(doc.getFile().getChecksum(), is(checksum));
+        assertThat(doc.getAttachment(), is(source));
+    }
+
+    private Doc generate(InputStream content) throws Exception {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName())
+                .setFs(Fs.builder().setStoreSource(true).setChecksum("MD5").build())
+                .build();
+        Doc doc = new Doc();
+        doc.getFile().setUrl("file:///test.txt");
+        TikaDocParser.generate(fsSettings, content, "test.txt", doc, MessageDigest.getInstance("MD5"), 0);
+        return doc;
+    }
+}
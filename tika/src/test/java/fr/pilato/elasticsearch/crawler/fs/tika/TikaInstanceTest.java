@@ -0,0 +1,76 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.crawler.fs.tika;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import fr.pilato.elasticsearch.crawler.fs.settings.FsSettings;
+import fr.pilato.elasticsearch.crawler.fs.test.framework.AbstractFSCrawlerTestCase;
+import org.apache.tika.metadata.Metadata;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TikaInstanceTest extends AbstractFSCrawlerTestCase {
+
+    private static String extract(FsSettings fsSettings, String text, int indexedChars) throws Exception {
+        return TikaInstance.extractText(fsSettings, indexedChars,
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), new Metadata()).trim();
+    }
+
+    @Test
+    public void testWriteLimit() throws Exception {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName()).build();
+        TikaInstance.reloadTika();
+        assertThat(extract(fsSettings, "This is a long enough text", 9), is("This is a"));
+        // The buffer of the previous extraction must not leak in the next one
+        assertThat(extract(fsSettings, "Short", 100), is("Short"));
+    }
+
+    @Test
+    @ThreadLeakLingering(linger = 5000) // The pool threads might take some time to disappear once terminated
+    public void testConcurrentExtractions() throws Exception {
+        FsSettings fsSettings = FsSettings.builder(getCurrentTestName()).build();
+        TikaInstance.reloadTika();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String text = "Document number " + i;
+                results.add(executor.submit(() -> extract(fsSettings, text, 100000)));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertThat(results.get(i).get(), is("Document number " + i));
+            }
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+}